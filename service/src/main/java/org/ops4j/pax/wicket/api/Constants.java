@@ -46,4 +46,96 @@ public interface Constants {
      */
     String PAGE_ID = "pax.wicket.pageid";
 
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) to let the pax wicket serializer write class descriptors as ids
+     * of a per application class dictionary, which is persisted next to the page store; <code>true</code> or
+     * <code>false</code> (default). The ids are only known to the node which wrote them, so the dictionary is not used
+     * if {@link #SESSION_REPLICATED} is set.
+     */
+    String SERIALIZER_CLASS_DICTIONARY = "pax.wicket.serializer.classdictionary";
+
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) to tell pax wicket that sessions (and the pages stored in them)
+     * are replicated to other nodes of a cluster; <code>true</code> or <code>false</code> (default). Serialized pages
+     * then only contain full class descriptors.
+     */
+    String SESSION_REPLICATED = "pax.wicket.session.replicated";
+
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) to deflate serialized pages before they are stored;
+     * <code>true</code> or <code>false</code> (default). Pages stored with and without compression can be read either
+     * way.
+     */
+    String SERIALIZER_COMPRESSION = "pax.wicket.serializer.compression";
+
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) for the deflate level (0-9) used if
+     * {@link #SERIALIZER_COMPRESSION} is enabled; defaults to 1 (best speed).
+     */
+    String SERIALIZER_COMPRESSION_LEVEL = "pax.wicket.serializer.compression.level";
+
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) for the size in bytes below which serialized pages are stored
+     * uncompressed if {@link #SERIALIZER_COMPRESSION} is enabled; defaults to 1024.
+     */
+    String SERIALIZER_COMPRESSION_THRESHOLD = "pax.wicket.serializer.compression.threshold";
+
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) for the largest serialization buffer in bytes which is kept for
+     * the next page; defaults to 262144, <code>0</code> allocates a new buffer for every page.
+     */
+    String SERIALIZER_BUFFER_SIZE = "pax.wicket.serializer.buffersize";
+
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) for the minimum time in seconds between two analyses of the
+     * object graph of the same page class which failed to serialize; defaults to 60.
+     */
+    String SERIALIZER_CHECKER_INTERVAL = "pax.wicket.serializer.checker.interval";
+
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) to analyze pages which failed to serialize on a background thread
+     * and only log the result; <code>true</code> or <code>false</code> (default). Only honored in development mode.
+     */
+    String SERIALIZER_CHECKER_ASYNC = "pax.wicket.serializer.checker.async";
+
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) for the sampling rate of the per page class serialization
+     * statistics: <code>0</code> disables them (default), <code>1</code> records every page, n every n-th page. The
+     * rate can be changed at runtime through the PageSerialization MBean of the application.
+     */
+    String SERIALIZER_STATISTICS = "pax.wicket.serializer.statistics";
+
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) selecting the page store: <code>mapped</code> keeps the pages of
+     * all sessions in a few memory mapped segment files, anything else (default) uses the file per session store of
+     * wicket.
+     */
+    String PAGE_STORE = "pax.wicket.pagestore";
+
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) for the number of segment files of the <code>mapped</code>
+     * {@link #PAGE_STORE}; defaults to 8.
+     */
+    String PAGE_STORE_SEGMENTS = "pax.wicket.pagestore.segments";
+
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) for the size in megabytes of each segment file of the
+     * <code>mapped</code> {@link #PAGE_STORE}; defaults to 32.
+     */
+    String PAGE_STORE_SEGMENT_SIZE = "pax.wicket.pagestore.segmentsize";
+
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) to measure the time each request spends in the super filters,
+     * each filter of a {@link FilterFactory} and wicket itself; <code>true</code> or <code>false</code> (default). The
+     * latencies are exposed as request stages of the Runtime MBean of the application.
+     */
+    String REQUEST_TIMING = "pax.wicket.requesttiming";
+
+    /**
+     * Context parameter (see {@link #CONTEXT_PARAMS}) to add the measured times of {@link #REQUEST_TIMING} as
+     * <code>Server-Timing</code> header to each response, for debugging; <code>true</code> or <code>false</code>
+     * (default).
+     */
+    String REQUEST_TIMING_HEADER = "pax.wicket.requesttiming.header";
+
 }
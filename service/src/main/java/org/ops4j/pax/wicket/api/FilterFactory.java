@@ -35,6 +35,13 @@ public interface FilterFactory {
      */
     String MAINTAIN_LIFECYCLE = "pax.wicket.filter.maintainlifecycle";
 
+    /**
+     * Service property name for the configuration whether requests reaching a {@link Filter} of a factory which is
+     * being unregistered skip the filter (<code>true</code>) or are rejected as temporarily unavailable (defaults to
+     * <code>false</code>); only filters which don't guard anything (e.g. no authentication) should be skipped
+     */
+    String SKIP_WHEN_DISPOSED = "pax.wicket.filter.skipwhendisposed";
+
     /**
      * Service property name for the configuration to which {@link WebApplicationFactory} this filter belongs to
      */
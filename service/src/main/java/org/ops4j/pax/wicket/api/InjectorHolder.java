@@ -15,25 +15,40 @@
  */
 package org.ops4j.pax.wicket.api;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.wicket.Application;
+import org.apache.wicket.MetaDataKey;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A simple singleton class storing and retrieving {@link org.ops4j.pax.wicket.api.PaxWicketInjector}s. The {@link #getInjector()} method only
  * works in an PaxWicket-Enabled integration context.
+ * <p>
+ * Lookups never lock: the injectors are kept in a concurrent map and the injector of an application is additionally
+ * cached in its metadata. Each registration invalidates these caches.
+ * </p>
  *
  * @author nmw
  * @version $Id: $Id
  */
 public final class InjectorHolder {
     private static final Logger LOGGER = LoggerFactory.getLogger(InjectorHolder.class);
-    private static final InjectorHolder instance = new InjectorHolder();
 
-    private Map<String, PaxWicketInjector> injectorMap = new HashMap<String, PaxWicketInjector>();
+    private static final MetaDataKey<CachedInjector> INJECTOR_KEY = new MetaDataKey<CachedInjector>() {
+        private static final long serialVersionUID = 1L;
+    };
+
+    private static final ConcurrentMap<String, PaxWicketInjector> INJECTORS =
+        new ConcurrentHashMap<String, PaxWicketInjector>();
+
+    /**
+     * Incremented after each registration, cached injectors of an older generation are looked up again.
+     */
+    private static final AtomicInteger GENERATION = new AtomicInteger();
 
     private InjectorHolder() {
     }
@@ -45,15 +60,28 @@ public final class InjectorHolder {
      * @return Injector
      */
     public static PaxWicketInjector getInjector() {
-        String applicationName = Application.get().getApplicationKey();
-        PaxWicketInjector injector = null;
-        synchronized (instance.injectorMap) {
-            injector = instance.injectorMap.get(applicationName);
+        return getInjector(Application.get());
+    }
+
+    /**
+     * Retrieves the injector responsible for the given application; unlike {@link #getInjector()} this does not need
+     * an active Wicket context.
+     *
+     * @param application a {@link org.apache.wicket.Application} object.
+     * @return Injector
+     */
+    public static PaxWicketInjector getInjector(Application application) {
+        int current = GENERATION.get();
+        CachedInjector cached = application.getMetaData(INJECTOR_KEY);
+        if (cached != null && cached.generation == current) {
+            return cached.injector;
         }
+        PaxWicketInjector injector = INJECTORS.get(application.getApplicationKey());
         if (injector == null) {
             throw new IllegalStateException(String.format("No Injector is set for application %s",
-                Application.get().getApplicationKey()));
+                application.getApplicationKey()));
         }
+        application.setMetaData(INJECTOR_KEY, new CachedInjector(injector, current));
         return injector;
     }
 
@@ -64,10 +92,21 @@ public final class InjectorHolder {
      * @param newInjector a {@link org.ops4j.pax.wicket.api.PaxWicketInjector} object.
      */
     public static void setInjector(String applicationName, PaxWicketInjector newInjector) {
-        synchronized (instance.injectorMap) {
-            instance.injectorMap.put(applicationName, newInjector);
-        }
+        INJECTORS.put(applicationName, newInjector);
+        GENERATION.incrementAndGet();
         LOGGER.debug("registered Injector for application {}", applicationName);
     }
 
+    private static final class CachedInjector {
+
+        private final PaxWicketInjector injector;
+        private final int generation;
+
+        private CachedInjector(PaxWicketInjector injector, int generation) {
+            this.injector = injector;
+            this.generation = generation;
+        }
+
+    }
+
 }
@@ -0,0 +1,118 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.api;
+
+import java.util.concurrent.Future;
+
+/**
+ * The type to inject a service asynchronously: a field of this type (or of type {@link java.util.concurrent.Future})
+ * annotated with {@link javax.inject.Inject} gets a future which completes as soon as a matching service is
+ * registered, without blocking the injecting thread. A page can therefore render immediately and, for example, poll
+ * {@link #isDone()} from an ajax timer to show a panel once an optional service shows up.
+ * <p>
+ * Callbacks run on the thread completing the future, for services this is the thread registering the service; they
+ * have to be short and must not block. Callbacks are not serialized with the future, a deserialized future starts
+ * waiting for the service again. An injected future does not keep the service, it is looked up each time the result
+ * is handed out and is <code>null</code> if the service is gone again.
+ * </p>
+ *
+ * @param <T> the type of the result.
+ * @author nmw
+ * @version $Id: $Id
+ */
+public interface ServiceFuture<T> extends Future<T> {
+
+    /**
+     * Returns the result without blocking.
+     *
+     * @param valueIfAbsent the value to return if the future is not yet done.
+     * @return the result or <code>valueIfAbsent</code>.
+     * @throws java.util.concurrent.CancellationException if the future was cancelled.
+     * @throws java.lang.IllegalStateException if the future failed; the cause is the failure.
+     */
+    T getNow(T valueIfAbsent);
+
+    /**
+     * Calls <code>callback</code> once the future is done; immediately (on the calling thread) if it is done already.
+     *
+     * @param callback a {@link org.ops4j.pax.wicket.api.ServiceFuture.Callback} object.
+     * @return this future.
+     */
+    ServiceFuture<T> onComplete(Callback<? super T> callback);
+
+    /**
+     * <p>thenApply.</p>
+     *
+     * @param function applied to the result of this future.
+     * @param <U> the type of the result of the function.
+     * @return a future completed with the result of <code>function</code> or failed if this future or the function
+     *         fails.
+     */
+    <U> ServiceFuture<U> thenApply(Function<? super T, ? extends U> function);
+
+    /**
+     * <p>thenCompose.</p>
+     *
+     * @param function applied to the result of this future, returning the next future.
+     * @param <U> the type of the result of the next future.
+     * @return a future completed like the future returned by <code>function</code>.
+     */
+    <U> ServiceFuture<U> thenCompose(Function<? super T, ? extends ServiceFuture<U>> function);
+
+    /**
+     * Receives the outcome of a {@link ServiceFuture}.
+     *
+     * @param <T> the type of the result.
+     */
+    interface Callback<T> {
+
+        /**
+         * <p>onSuccess.</p>
+         *
+         * @param value the result of the future.
+         */
+        void onSuccess(T value);
+
+        /**
+         * <p>onFailure.</p>
+         *
+         * @param failure why the future failed, a {@link java.util.concurrent.CancellationException} if it was
+         *            cancelled.
+         */
+        void onFailure(Throwable failure);
+
+    }
+
+    /**
+     * A function to compose {@link ServiceFuture}s.
+     *
+     * @param <T> the type of the argument.
+     * @param <R> the type of the result.
+     */
+    interface Function<T, R> {
+
+        /**
+         * <p>apply.</p>
+         *
+         * @param value a T object.
+         * @return a R object.
+         * @throws java.lang.Exception fails the composed future.
+         */
+        R apply(T value) throws Exception;
+
+    }
+
+}
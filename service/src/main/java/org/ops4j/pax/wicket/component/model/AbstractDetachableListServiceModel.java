@@ -17,12 +17,18 @@
 package org.ops4j.pax.wicket.component.model;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import org.apache.wicket.model.LoadableDetachableModel;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleReference;
+import org.osgi.framework.Constants;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.slf4j.Logger;
@@ -31,7 +37,16 @@ import org.slf4j.LoggerFactory;
 /**
  * This model makes it easier to work with OSGi services in Wicket. It is a LoadableDetachableModel that loads data via Services retrieved
  * from the Service Registry. The model takes a Service Type and, when load is called, calls {@code doLoad} on each service. The list returned
- * from load will contain the output of every service that did not return exceptions.
+ * from load will contain the output of every service that did not return exceptions, ordered by service ranking.
+ * <p>
+ * By default the services are called one after another. If {@link #getExecutor()} returns an executor, {@code doLoad}
+ * is called concurrently on it, each call is given at most {@link #getCallTimeout()} milliseconds from when the
+ * executor starts it, and the whole load at most {@link #getLoadTimeout()} milliseconds from its start; services
+ * which did not answer in time are left out. {@code doLoad} then
+ * runs on threads of the executor, so it must be thread safe and can't rely on Wickets thread locals (like the
+ * current {@code Application} or {@code Session}). The time spent in each service is passed to
+ * {@link #serviceLoaded(ServiceReference, long, Throwable)}.
+ * </p>
  *
  * @author Martin Nybo Nielsen
  * @param <T> The type of service to poll for populating the model.
@@ -41,10 +56,18 @@ import org.slf4j.LoggerFactory;
  */
 public abstract class AbstractDetachableListServiceModel<T extends Object, E extends Object> extends LoadableDetachableModel<List<E>>{
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractDetachableListServiceModel.class);
+
+    /** Default milliseconds a single service is given if services are called concurrently. */
+    public static final long DEFAULT_CALL_TIMEOUT = 5000;
+    /** Default milliseconds all services are given together if they are called concurrently. */
+    public static final long DEFAULT_LOAD_TIMEOUT = 10000;
     
     private final Class<T> serviceType;
     private transient BundleContext context;
     private final String filter;
+    private transient SharedServiceTracker<T> tracker;
+    private long callTimeout = DEFAULT_CALL_TIMEOUT;
+    private long loadTimeout = DEFAULT_LOAD_TIMEOUT;
     
     /**
      * Takes the type of the service to retrieve data from. When the {@code load} method is called, all valid services of
@@ -118,30 +141,204 @@ public abstract class AbstractDetachableListServiceModel<T extends Object, E ext
      */
     protected abstract E doLoad(T source) throws Exception;
     
+    /**
+     * Returns the executor to call the services concurrently on; the default implementation returns <code>null</code>
+     * so the services are called one after another on the request thread. The executor is not part of the model
+     * state as models are serialized with their page, so it is typically a shared one kept somewhere else.
+     *
+     * @return a {@link java.util.concurrent.Executor} object, or <code>null</code> to call the services sequentially.
+     */
+    protected Executor getExecutor() {
+	return null;
+    }
+
+    /**
+     * <p>Getter for the field <code>callTimeout</code>.</p>
+     *
+     * @return the milliseconds a single service is given if services are called concurrently.
+     */
+    public long getCallTimeout() {
+	return callTimeout;
+    }
+
+    /**
+     * <p>Getter for the field <code>loadTimeout</code>.</p>
+     *
+     * @return the milliseconds all services are given together if services are called concurrently.
+     */
+    public long getLoadTimeout() {
+	return loadTimeout;
+    }
+
+    /**
+     * Sets the timeouts used if the services are called concurrently.
+     *
+     * @param callTimeout the milliseconds a single service is given.
+     * @param loadTimeout the milliseconds all services are given together.
+     */
+    public void setTimeouts(long callTimeout, long loadTimeout) {
+	if(callTimeout <= 0 || loadTimeout <= 0){
+	    throw new IllegalArgumentException("Timeouts must be positive, were "+callTimeout+" and "+loadTimeout);
+	}
+	this.callTimeout = callTimeout;
+	this.loadTimeout = loadTimeout;
+    }
+
+    /**
+     * Called for each service after {@code doLoad} returned, failed or timed out; the default implementation logs the
+     * time spent in the service on debug level. Override it to collect the latencies of the services.
+     *
+     * @param reference the {@link org.osgi.framework.ServiceReference} of the called service.
+     * @param nanos the nanoseconds spent in the service, or waited for it if it timed out.
+     * @param failure the exception thrown by {@code doLoad}, a {@link java.util.concurrent.TimeoutException} if the
+     *            service did not answer in time or <code>null</code> if it succeeded.
+     */
+    protected void serviceLoaded(ServiceReference<T> reference, long nanos, Throwable failure) {
+	if(LOGGER.isDebugEnabled()){
+	    LOGGER.debug("Service "+reference.getProperty(Constants.SERVICE_ID)+" of bundle "
+		    +reference.getBundle()+" took "+TimeUnit.NANOSECONDS.toMicros(nanos)+" us"+(failure == null ? "" : " and failed"));
+	}
+    }
+    
     /** {@inheritDoc} */
     @Override
     protected List<E> load() {
-	context = BundleReference.class.cast(serviceType.getClassLoader()).getBundle().getBundleContext();
-	List<E> returnValues = new ArrayList<E>();
-	Collection<ServiceReference<T>> refs = Collections.EMPTY_LIST;
+	ServiceReference<T>[] refs;
 	try{
-	refs = context.getServiceReferences(serviceType, filter);
+	    if(tracker == null){
+		if(context == null){
+		    context = BundleReference.class.cast(serviceType.getClassLoader()).getBundle().getBundleContext();
+		}
+		tracker = SharedServiceTracker.acquire(context, serviceType, filter);
+	    }
+	    refs = tracker.getSortedServiceReferences();
 	}catch(InvalidSyntaxException e){
 	    LOGGER.error("Could not load object from service. There was a problem with the filter syntax. "
 		    + "Returning null. Service called: "+serviceType+" from bundle "+context.getBundle().getSymbolicName(), e);
 	    return null;
 	}
+	Executor executor = getExecutor();
+	if(executor != null && refs.length > 1){
+	    return loadConcurrently(refs, executor);
+	}
+	List<E> returnValues = new ArrayList<E>(refs.length);
 	for(ServiceReference<T> ref : refs){
+	    T service = tracker.getService(ref);
+	    if(service == null){
+		// unregistered meanwhile
+		continue;
+	    }
+	    long start = System.nanoTime();
 	    try{
-	    T service = context.getService(ref);
-	    returnValues.add(doLoad(service));
+		returnValues.add(doLoad(service));
+		serviceLoaded(ref, System.nanoTime() - start, null);
 	    }catch(Exception e){
 		LOGGER.error("Could not load object from service. Trying next service. Service called: "+serviceType+" from bundle "+context.getBundle().getSymbolicName(), e);
-	    }finally{
-		context.ungetService(ref);
+		serviceLoaded(ref, System.nanoTime() - start, e);
 	    }
 	}
 	return returnValues;
     }
+
+    private List<E> loadConcurrently(ServiceReference<T>[] refs, Executor executor) {
+	long start = System.nanoTime();
+	List<ServiceCall> calls = new ArrayList<ServiceCall>(refs.length);
+	for(ServiceReference<T> ref : refs){
+	    T service = tracker.getService(ref);
+	    if(service == null){
+		continue;
+	    }
+	    ServiceCall call = new ServiceCall(ref, service);
+	    calls.add(call);
+	    try{
+		executor.execute(call.task);
+	    }catch(RejectedExecutionException e){
+		// the executor is saturated, the request thread does the work itself
+		call.task.run();
+	    }
+	}
+	long callTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(callTimeout);
+	long loadDeadline = start + TimeUnit.MILLISECONDS.toNanos(loadTimeout);
+	List<E> returnValues = new ArrayList<E>(calls.size());
+	for(ServiceCall call : calls){
+	    try{
+		returnValues.add(call.await(callTimeoutNanos, loadDeadline));
+		serviceLoaded(call.reference, call.nanos, null);
+	    }catch(TimeoutException e){
+		call.task.cancel(true);
+		LOGGER.warn("Service "+call.reference.getProperty(Constants.SERVICE_ID)+" of type "+serviceType
+			+" from bundle "+call.reference.getBundle()+" did not answer in time, it is left out");
+		serviceLoaded(call.reference, System.nanoTime() - (call.started ? call.startNanos : start), e);
+	    }catch(ExecutionException e){
+		LOGGER.error("Could not load object from service. Trying next service. Service called: "+serviceType+" from bundle "+context.getBundle().getSymbolicName(), e.getCause());
+		serviceLoaded(call.reference, call.nanos, e.getCause());
+	    }catch(InterruptedException e){
+		Thread.currentThread().interrupt();
+		for(ServiceCall pending : calls){
+		    pending.task.cancel(true);
+		}
+		break;
+	    }
+	}
+	return returnValues;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void onDetach() {
+	if(tracker != null){
+	    tracker.release();
+	    tracker = null;
+	}
+    }
+
+    private final class ServiceCall implements Callable<E> {
+	private final ServiceReference<T> reference;
+	private final T service;
+	private final FutureTask<E> task;
+	private volatile long nanos;
+	/** Set by the executor thread once the call runs; {@link #startNanos} is written before. */
+	private volatile boolean started;
+	private long startNanos;
+
+	private ServiceCall(ServiceReference<T> reference, T service) {
+	    this.reference = reference;
+	    this.service = service;
+	    task = new FutureTask<E>(this);
+	}
+
+	public E call() throws Exception {
+	    long start = System.nanoTime();
+	    startNanos = start;
+	    started = true;
+	    try{
+		return doLoad(service);
+	    }finally{
+		nanos = System.nanoTime() - start;
+	    }
+	}
+
+	/**
+	 * Waits for the result until the call timeout, counted from when the executor started the call, or the deadline
+	 * of the whole load passed, whichever comes first.
+	 */
+	private E await(long callTimeoutNanos, long loadDeadline) throws InterruptedException, ExecutionException,
+		TimeoutException {
+	    while(true){
+		long now = System.nanoTime();
+		// a call still queued in the executor may start any moment and then gets the full call timeout
+		long callRemaining = started ? startNanos + callTimeoutNanos - now : callTimeoutNanos;
+		long remaining = Math.min(callRemaining, loadDeadline - now);
+		if(remaining <= 0){
+		    throw new TimeoutException();
+		}
+		try{
+		    return task.get(remaining, TimeUnit.NANOSECONDS);
+		}catch(TimeoutException e){
+		    // the call might have started meanwhile, which moves its deadline
+		}
+	    }
+	}
+    }
     
 }
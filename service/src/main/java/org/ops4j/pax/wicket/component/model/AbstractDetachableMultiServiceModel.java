@@ -16,12 +16,9 @@
 
 package org.ops4j.pax.wicket.component.model;
 
-import java.util.HashMap;
-import java.util.Map;
 import org.apache.wicket.model.LoadableDetachableModel;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleReference;
-import org.osgi.framework.ServiceReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,7 +27,9 @@ import org.slf4j.LoggerFactory;
  * from the Service Registry. The model has an abstract method {@code doLoad) which must be implemented with the logic to return the model
  * object. The model also contains another method [@code getService}, which allows the implementer to retrieve any service type from the
  * service registry. This Class should be used when a model object is created based of several services, these can be polled by [@code getService}
- * inside the [@code doLoad} method. When the doLoad method returns, all service references opened by [@code getService} will be closed automatically.
+ * inside the [@code doLoad} method. Within a request all models share the services they got, so a service used by several models is only got
+ * once; all service references opened by [@code getService} will be closed automatically when the request cycle is detached. Outside of
+ * a request they are closed when the doLoad method returns.
  *
  * @author Martin Nybo Nielsen
  * @param <T> The models return type.
@@ -41,7 +40,7 @@ public abstract class AbstractDetachableMultiServiceModel<T extends Object> exte
     /** Constant <code>LOGGER</code> */
     public static final Logger LOGGER = LoggerFactory.getLogger(AbstractDetachableMultiServiceModel.class);
     private Class owningBundleClass;
-    private transient Map<Class, ServiceReference> references;
+    private transient ServiceLease lease;
     private transient BundleContext context;
 
     /**
@@ -73,15 +72,24 @@ public abstract class AbstractDetachableMultiServiceModel<T extends Object> exte
     /** {@inheritDoc} */
     @Override
     protected T load() {
-	context = BundleReference.class.cast(owningBundleClass.getClassLoader()).getBundle().getBundleContext();
-	references = new HashMap<Class, ServiceReference>();
+	if(context == null){
+	    context = BundleReference.class.cast(owningBundleClass.getClassLoader()).getBundle().getBundleContext();
+	}
+	lease = ServiceLease.get();
+	boolean local = lease == null;
+	if(local){
+	    lease = new ServiceLease();
+	}
 	try{
 	    return doLoad();
 	}catch(Exception ex){
 	    LOGGER.error("Caught exception when loading model, returning null", ex);
 	    return null;
 	}finally{
-	    closeAll();
+	    if(local){
+		lease.releaseAll();
+	    }
+	    lease = null;
 	}
 	
     }
@@ -99,40 +107,18 @@ public abstract class AbstractDetachableMultiServiceModel<T extends Object> exte
     protected abstract T doLoad() throws Exception;
 
     /**
-     * This method will retrieve a service from the service registry, and remember the reference, so it can be closed after {@code doLoad returns}.
+     * This method will retrieve a service from the service registry, and remember the reference, so it can be closed after the request
+     * (or {@code doLoad} outside of requests) ends. Services already retrieved during the current request are reused.
      *
      * @param <E>
      * @param serviceType The service type for which to retrieve an instance.
-     * @return A service of the type defined by {@code serviceType}
+     * @return A service of the type defined by {@code serviceType}, or null if none is registered.
      */
     protected final <E extends Object> E getService(Class<E> serviceType){
-	ServiceReference<E> ref = getServiceReference(serviceType);
-	if(ref == null){
-	    ref = context.getServiceReference(serviceType);
-	    references.put(serviceType, ref);
-	}
-	return context.getService(ref);
-    }
-    
-    private <E extends Object> ServiceReference<E> getServiceReference(Class<E> clazz){
-	ServiceReference ref = references.get(clazz);
-	if(ref != null){
-	    return (ServiceReference<E>)ref;
-	}
-	return null;
-    }
-    
-    private void closeAll(){
-	for(ServiceReference ref : references.values()){
-	    try{
-		if(ref != null){
-		    context.ungetService(ref);
-		}
-	    }catch(Exception ex){
-		LOGGER.debug("Could not close service reference "+ref+".", ex);
-		//Nothing more we can do, continue to next reference
-	    }
+	if(lease == null){
+	    throw new IllegalStateException("getService can only be called from within doLoad");
 	}
+	return lease.getService(context, serviceType);
     }
     
 }
@@ -19,13 +19,17 @@ package org.ops4j.pax.wicket.component.model;
 import org.apache.wicket.model.LoadableDetachableModel;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleReference;
-import org.osgi.framework.ServiceReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * This model makes it easier to work with OSGi services in Wicket. It is a LoadableDetachableModel that loads data via a Service accuired
  * from the Service Registry.
+ * <p>
+ * All models for the same service type and filter used by one bundle share a {@link SharedServiceTracker}, which keeps
+ * track of the highest ranked service; so loading a model does not go through the service registry. Subclasses
+ * overriding {@link #onDetach()} have to call the super implementation to give the tracker back.
+ * </p>
  *
  * @author Martin Nybo Nielsen
  * @param <T> The type of service to poll for populating the model.
@@ -37,7 +41,9 @@ public abstract class AbstractDetachableServiceModel<T extends Object, E extends
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractDetachableServiceModel.class);
     
     private final Class<T> serviceType;
+    private final String filter;
     private transient BundleContext context;
+    private transient SharedServiceTracker<T> tracker;
 	
     /**
      * Takes the type of the service to retrieve data from. When the {@code load} method is called, the first valid service of
@@ -50,6 +56,18 @@ public abstract class AbstractDetachableServiceModel<T extends Object, E extends
     public AbstractDetachableServiceModel(Class<T> serviceType, Object owningBundleObject) {
 	this(serviceType, owningBundleObject.getClass());
     }
+
+    /**
+     * Takes the type of the service to retrieve data from. When the {@code load} method is called, the highest ranked
+     * service of {@code serviceType} matching {@code filter} will be polled for data.
+     *
+     * @param serviceType The type of the service to retrieve model data from
+     * @param owningBundleObject Any object which resides in the bundle which uses this model.
+     * @param filter An LDAP filter to use to narrow the search for registered services.
+     */
+    public AbstractDetachableServiceModel(Class<T> serviceType, Object owningBundleObject, String filter) {
+	this(serviceType, owningBundleObject.getClass(), filter);
+    }
     
     /**
      * Takes the type of the service to retrieve data from. When the {@code load} method is called, the first valid service of
@@ -60,7 +78,20 @@ public abstract class AbstractDetachableServiceModel<T extends Object, E extends
      * @param owningBundleClass Any class which resides in the bundle which uses this model.
      */
     public AbstractDetachableServiceModel(Class<T> serviceType, Class owningBundleClass) {
+	this(serviceType, owningBundleClass, null);
+    }
+
+    /**
+     * Takes the type of the service to retrieve data from. When the {@code load} method is called, the highest ranked
+     * service of {@code serviceType} matching {@code filter} will be polled for data.
+     *
+     * @param serviceType The type of the service to retrieve model data from
+     * @param owningBundleClass Any class which resides in the bundle which uses this model.
+     * @param filter An LDAP filter to use to narrow the search for registered services.
+     */
+    public AbstractDetachableServiceModel(Class<T> serviceType, Class owningBundleClass, String filter) {
 	this.serviceType = serviceType;
+	this.filter = filter;
         
         /* TODO reimplent, currently not working*/
 //	if(!BundleReference.class.isAssignableFrom(owningBundleClass.getClassLoader().getClass())){
@@ -87,23 +118,37 @@ public abstract class AbstractDetachableServiceModel<T extends Object, E extends
     /** {@inheritDoc} */
     @Override
     protected E load() {
-	context = BundleReference.class.cast(serviceType.getClassLoader()).getBundle().getBundleContext();
-	ServiceReference<T> ref = context.getServiceReference(serviceType);
+	T service;
 	try{
-	if(ref == null){
+	    if(tracker == null){
+		if(context == null){
+		    context = BundleReference.class.cast(serviceType.getClassLoader()).getBundle().getBundleContext();
+		}
+		tracker = SharedServiceTracker.acquire(context, serviceType, filter);
+	    }
+	    service = tracker.getService();
+	}catch(Exception e){
+	    LOGGER.error("Could not track service. Returning null. Service called: "+serviceType+" with filter "+filter, e);
 	    return null;
 	}
-	T service = context.getService(ref);
-	return doLoad(service);
-	
+	if(service == null){
+	    return null;
+	}
+	try{
+	    return doLoad(service);
 	}catch(Exception e){
 	    LOGGER.error("Could not load object from service. Returning null. Service called: "+serviceType+" from bundle "+context.getBundle().getSymbolicName(), e);
 	    return null;
-	}finally{
-	    if(ref != null)
-	    context.ungetService(ref);
 	}
-	
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void onDetach() {
+	if(tracker != null){
+	    tracker.release();
+	    tracker = null;
+	}
     }
     
 }
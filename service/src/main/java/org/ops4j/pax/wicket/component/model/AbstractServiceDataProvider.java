@@ -0,0 +1,198 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.component.model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.wicket.markup.repeater.data.IDataProvider;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleReference;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link IDataProvider} over the services of a type registered in the Service Registry, to show them in a pageable
+ * {@code DataView} or {@code DataTable}. The references of the services are tracked and kept sorted by service ranking
+ * (highest first) so {@code size} is cheap, and only the services in the window asked for by
+ * {@code iterator(first, count)} are got from the registry and passed to {@code doLoad}. The snapshot of references is
+ * kept until the provider is detached, so all calls of one request see the same services.
+ * <p>
+ * A service of the snapshot might be unregistered before its window is shown, or its {@code doLoad} might fail. Such
+ * services are left out by default, so the window is shorter than the {@code count} asked for while {@code size} still
+ * counts them; override {@link #unavailable(ServiceReference, Exception)} to show a placeholder instead.
+ * </p>
+ *
+ * @author nmw
+ * @param <T> The type of the listed services.
+ * @param <E> The type of the elements provided for each service.
+ * @version $Id: $Id
+ */
+public abstract class AbstractServiceDataProvider<T extends Object, E extends Object> implements IDataProvider<E> {
+    private static final long serialVersionUID = 1L;
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractServiceDataProvider.class);
+
+    private final Class<T> serviceType;
+    private final Class owningBundleClass;
+    private final String filter;
+    private transient BundleContext context;
+    private transient SharedServiceTracker<T> tracker;
+    private transient ServiceReference<T>[] references;
+
+    /**
+     * Takes the type of the services to provide data for. {@code owningBundleClass} is used to properly define the
+     * BundleContext which the provider should use for getting the services; using the class containing the provider is
+     * usually sufficient.
+     *
+     * @param serviceType The type of the services to provide data for.
+     * @param owningBundleClass Any class which resides in the bundle which uses this provider.
+     * @param filter An LDAP filter to use to narrow the search for registered services, might be <code>null</code>.
+     */
+    public AbstractServiceDataProvider(Class<T> serviceType, Class owningBundleClass, String filter) {
+	if(!serviceType.isInterface()){
+	    throw new IllegalArgumentException("The serviceType must be an interface, was: "+serviceType.getCanonicalName());
+	}
+	this.serviceType = serviceType;
+	this.owningBundleClass = owningBundleClass;
+	this.filter = filter;
+    }
+
+    /**
+     * <p>Constructor for AbstractServiceDataProvider.</p>
+     *
+     * @param serviceType The type of the services to provide data for.
+     * @param owningBundleClass Any class which resides in the bundle which uses this provider.
+     */
+    public AbstractServiceDataProvider(Class<T> serviceType, Class owningBundleClass) {
+	this(serviceType, owningBundleClass, null);
+    }
+
+    /**
+     * <p>Constructor for AbstractServiceDataProvider.</p>
+     *
+     * @param serviceType The type of the services to provide data for.
+     * @param owningBundleObject Any object which resides in the bundle which uses this provider.
+     * @param filter An LDAP filter to use to narrow the search for registered services, might be <code>null</code>.
+     */
+    public AbstractServiceDataProvider(Class<T> serviceType, Object owningBundleObject, String filter) {
+	this(serviceType, owningBundleObject.getClass(), filter);
+    }
+
+    /**
+     * <p>Constructor for AbstractServiceDataProvider.</p>
+     *
+     * @param serviceType The type of the services to provide data for.
+     * @param owningBundleObject Any object which resides in the bundle which uses this provider.
+     */
+    public AbstractServiceDataProvider(Class<T> serviceType, Object owningBundleObject) {
+	this(serviceType, owningBundleObject.getClass(), null);
+    }
+
+    /**
+     * Implement this method to map a service to the element shown for it.
+     *
+     * @param reference the {@link org.osgi.framework.ServiceReference} of the service, e.g. to show its properties.
+     * @param source the service.
+     * @return the element for the service.
+     * @throws java.lang.Exception Any exception thrown from this method will be logged as an error, and the service
+     *             will be left out of the window.
+     */
+    protected abstract E doLoad(ServiceReference<T> reference, T source) throws Exception;
+
+    /**
+     * Called instead of {@code doLoad} for a service of the window which is gone meanwhile or whose {@code doLoad}
+     * failed. The default implementation returns <code>null</code>, which leaves the service out of the window.
+     *
+     * @param reference the {@link org.osgi.framework.ServiceReference} of the service.
+     * @param failure the exception thrown by {@code doLoad}, or <code>null</code> if the service is gone.
+     * @return the element shown for the service, or <code>null</code> to leave it out.
+     */
+    protected E unavailable(ServiceReference<T> reference, Exception failure) {
+	return null;
+    }
+
+    /** {@inheritDoc} */
+    public Iterator<? extends E> iterator(long first, long count) {
+	ServiceReference<T>[] refs = getServiceReferences();
+	int from = (int) Math.max(0, Math.min(first, refs.length));
+	int to = (int) Math.min(refs.length, from + Math.max(0, count));
+	List<E> window = new ArrayList<E>(to - from);
+	for(int i = from; i < to; i++){
+	    T service;
+	    try{
+		service = context.getService(refs[i]);
+	    }catch(IllegalStateException e){
+		LOGGER.debug("Could not get service "+refs[i]+", the bundle context is no longer valid", e);
+		service = null;
+	    }
+	    E element;
+	    if(service == null){
+		// unregistered meanwhile
+		element = unavailable(refs[i], null);
+	    }else{
+		try{
+		    element = doLoad(refs[i], service);
+		}catch(Exception e){
+		    LOGGER.error("Could not load object from service. Trying next service. Service called: "+serviceType+" from bundle "+context.getBundle().getSymbolicName(), e);
+		    element = unavailable(refs[i], e);
+		}finally{
+		    context.ungetService(refs[i]);
+		}
+	    }
+	    if(element != null){
+		window.add(element);
+	    }
+	}
+	return window.iterator();
+    }
+
+    /** {@inheritDoc} */
+    public long size() {
+	return getServiceReferences().length;
+    }
+
+    /** {@inheritDoc} */
+    public void detach() {
+	references = null;
+	if(tracker != null){
+	    tracker.release();
+	    tracker = null;
+	}
+    }
+
+    private ServiceReference<T>[] getServiceReferences() {
+	if(references == null){
+	    try{
+		if(tracker == null){
+		    if(context == null){
+			context = BundleReference.class.cast(owningBundleClass.getClassLoader()).getBundle().getBundleContext();
+		    }
+		    tracker = SharedServiceTracker.acquireReferences(context, serviceType, filter);
+		}
+		references = tracker.getSortedServiceReferences();
+	    }catch(InvalidSyntaxException e){
+		LOGGER.error("Could not list services. There was a problem with the filter syntax. Service called: "+serviceType
+			+" with filter "+filter, e);
+		references = SharedServiceTracker.noReferences();
+	    }
+	}
+	return references;
+    }
+
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.component.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.wicket.MetaDataKey;
+import org.apache.wicket.request.cycle.AbstractRequestCycleListener;
+import org.apache.wicket.request.cycle.RequestCycle;
+import org.ops4j.pax.wicket.util.metrics.RuntimeMetrics;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The services got by {@link AbstractDetachableMultiServiceModel}s during one request. All models of a request share
+ * the lease of the current {@link RequestCycle}, so a service needed by several models is only looked up and got once;
+ * everything is given back when the request cycle is detached. Leases are only used by the request thread and thus
+ * not synchronized. Services got and reused are counted in the {@link RuntimeMetrics} of the application.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+final class ServiceLease {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceLease.class);
+
+    private static final MetaDataKey<ServiceLease> LEASE_KEY = new MetaDataKey<ServiceLease>() {
+        private static final long serialVersionUID = 1L;
+    };
+
+    private final Map<Key, ServiceReference<?>> references = new HashMap<Key, ServiceReference<?>>();
+    private final Map<Key, Object> services = new HashMap<Key, Object>();
+
+    ServiceLease() {
+    }
+
+    /**
+     * Returns the lease of the current request cycle, creating it on first use.
+     *
+     * @return the lease or <code>null</code> if there is no current request cycle.
+     */
+    static ServiceLease get() {
+        RequestCycle cycle = RequestCycle.get();
+        if (cycle == null) {
+            return null;
+        }
+        ServiceLease lease = cycle.getMetaData(LEASE_KEY);
+        if (lease == null) {
+            final ServiceLease created = new ServiceLease();
+            cycle.setMetaData(LEASE_KEY, created);
+            cycle.getListeners().add(new AbstractRequestCycleListener() {
+                @Override
+                public void onDetach(RequestCycle detached) {
+                    created.releaseAll();
+                }
+            });
+            lease = created;
+        }
+        return lease;
+    }
+
+    /**
+     * Returns the highest ranked service of the given type, getting it from the registry only if it was not got
+     * before within this lease.
+     *
+     * @param context the {@link org.osgi.framework.BundleContext} to get the service with.
+     * @param serviceType the type of the service.
+     * @param <E> the type of the service.
+     * @return the service or <code>null</code> if none is registered.
+     */
+    @SuppressWarnings("unchecked")
+    <E> E getService(BundleContext context, Class<E> serviceType) {
+        Key key = new Key(context, serviceType);
+        boolean reused = references.containsKey(key);
+        RuntimeMetrics metrics = RuntimeMetrics.current();
+        if (metrics != null) {
+            metrics.recordServiceLease(reused);
+        }
+        if (reused) {
+            return (E) services.get(key);
+        }
+        ServiceReference<E> reference = context.getServiceReference(serviceType);
+        E service = reference == null ? null : context.getService(reference);
+        references.put(key, service == null ? null : reference);
+        services.put(key, service);
+        return service;
+    }
+
+    /**
+     * Gives back all services got by this lease; the lease can be used again afterwards.
+     */
+    void releaseAll() {
+        for (Map.Entry<Key, ServiceReference<?>> entry : references.entrySet()) {
+            ServiceReference<?> reference = entry.getValue();
+            if (reference == null) {
+                continue;
+            }
+            try {
+                entry.getKey().context.ungetService(reference);
+            } catch (Exception ex) {
+                LOGGER.debug("Could not close service reference " + reference + ".", ex);
+                // Nothing more we can do, continue to next reference
+            }
+        }
+        references.clear();
+        services.clear();
+    }
+
+    private static final class Key {
+
+        private final BundleContext context;
+        private final Class<?> serviceType;
+
+        private Key(BundleContext context, Class<?> serviceType) {
+            this.context = context;
+            this.serviceType = serviceType;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) other;
+            return context == that.context && serviceType == that.serviceType;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(context) + serviceType.hashCode();
+        }
+
+    }
+
+}
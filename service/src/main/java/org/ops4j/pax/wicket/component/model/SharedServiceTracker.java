@@ -0,0 +1,460 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.component.model;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ServiceTracker} shared by all service models which look up the same service type with the same filter
+ * from the same bundle. Models {@link #acquire(BundleContext, Class, String) acquire} the tracker when they are
+ * loaded and {@link #release() release} it when they are detached; the tracker is opened on first use and closed
+ * once it was not acquired for {@link #IDLE_TIMEOUT} milliseconds, or once the bundle context became invalid, so
+ * pages full of service models no longer go through the service registry for every single model.
+ * <p>
+ * A tracker only gets the services which are used: the highest ranked one and those asked for by
+ * {@link #getService(ServiceReference)}. Trackers obtained by {@link #acquireReferences(BundleContext, Class, String)}
+ * don't get any service, their users get just the services they actually call from the bundle context; e.g. the
+ * visible page of a long list.
+ * </p>
+ *
+ * @author nmw
+ * @param <T> the type of the tracked service.
+ * @version $Id: $Id
+ */
+public final class SharedServiceTracker<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedServiceTracker.class);
+
+    /**
+     * Milliseconds an unused tracker stays open before it is closed.
+     */
+    public static final long IDLE_TIMEOUT = 60000;
+
+    private static final ConcurrentMap<Key, SharedServiceTracker<?>> TRACKERS =
+        new ConcurrentHashMap<Key, SharedServiceTracker<?>>();
+
+    private static final AtomicLong NEXT_SWEEP = new AtomicLong();
+
+    private static final ServiceReference<?>[] NO_REFERENCES = new ServiceReference<?>[0];
+
+    private final Key key;
+    private final Tracker tracker;
+
+    private volatile Snapshot<T> snapshot;
+
+    /**
+     * Number of models holding this tracker, -1 once it is closed; a closed tracker is never reopened.
+     */
+    private final AtomicInteger references = new AtomicInteger();
+
+    private volatile long idleSince;
+    private volatile boolean opened;
+
+    private SharedServiceTracker(Key key, BundleContext context, Class<T> serviceType, String filter)
+        throws InvalidSyntaxException {
+        this.key = key;
+        Filter trackerFilter;
+        if (filter == null) {
+            trackerFilter = context.createFilter("(" + Constants.OBJECTCLASS + "=" + serviceType.getName() + ")");
+        } else {
+            trackerFilter = context.createFilter("(&(" + Constants.OBJECTCLASS + "=" + serviceType.getName() + ")"
+                    + filter + ")");
+        }
+        tracker = new Tracker(context, trackerFilter, key.referencesOnly);
+    }
+
+    /**
+     * Returns the shared tracker for the given arguments, creating and opening it if required. Each call must be
+     * paired with a {@link #release()}.
+     *
+     * @param context the {@link org.osgi.framework.BundleContext} of the bundle using the service.
+     * @param serviceType the type of the service.
+     * @param filter an additional LDAP filter, might be <code>null</code>.
+     * @param <T> the type of the service.
+     * @return the acquired tracker.
+     * @throws org.osgi.framework.InvalidSyntaxException if the filter is not valid.
+     */
+    static <T> SharedServiceTracker<T> acquire(BundleContext context, Class<T> serviceType, String filter)
+        throws InvalidSyntaxException {
+        return acquire(new Key(context, serviceType, filter, false), context, serviceType, filter);
+    }
+
+    /**
+     * Like {@link #acquire(BundleContext, Class, String)}, but the returned tracker only tracks the service
+     * references; the services have to be got from the bundle context.
+     *
+     * @param context the {@link org.osgi.framework.BundleContext} of the bundle using the service.
+     * @param serviceType the type of the service.
+     * @param filter an additional LDAP filter, might be <code>null</code>.
+     * @param <T> the type of the service.
+     * @return the acquired tracker.
+     * @throws org.osgi.framework.InvalidSyntaxException if the filter is not valid.
+     */
+    static <T> SharedServiceTracker<T> acquireReferences(BundleContext context, Class<T> serviceType, String filter)
+        throws InvalidSyntaxException {
+        return acquire(new Key(context, serviceType, filter, true), context, serviceType, filter);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> SharedServiceTracker<T> acquire(Key key, BundleContext context, Class<T> serviceType,
+            String filter) throws InvalidSyntaxException {
+        sweep();
+        while (true) {
+            SharedServiceTracker<T> shared = (SharedServiceTracker<T>) TRACKERS.get(key);
+            if (shared == null) {
+                SharedServiceTracker<T> created = new SharedServiceTracker<T>(key, context, serviceType, filter);
+                shared = (SharedServiceTracker<T>) TRACKERS.putIfAbsent(key, created);
+                if (shared == null) {
+                    shared = created;
+                }
+            }
+            if (shared.retain()) {
+                shared.open();
+                return shared;
+            }
+            // closed by a concurrent sweep
+            TRACKERS.remove(key, shared);
+        }
+    }
+
+    /**
+     * Closes all trackers, regardless whether they are still in use; models holding one will acquire a new tracker
+     * on their next load.
+     */
+    public static void closeAll() {
+        for (Iterator<SharedServiceTracker<?>> iterator = TRACKERS.values().iterator(); iterator.hasNext();) {
+            SharedServiceTracker<?> shared = iterator.next();
+            iterator.remove();
+            shared.references.set(-1);
+            shared.close();
+        }
+    }
+
+    /**
+     * Closes trackers which were idle for longer than {@link #IDLE_TIMEOUT} and those of bundle contexts which are no
+     * longer valid; runs at most once per timeout, on acquire as well as on release.
+     */
+    private static void sweep() {
+        long now = System.currentTimeMillis();
+        long next = NEXT_SWEEP.get();
+        if (now < next || !NEXT_SWEEP.compareAndSet(next, now + IDLE_TIMEOUT)) {
+            return;
+        }
+        for (SharedServiceTracker<?> shared : TRACKERS.values()) {
+            if (!isValid(shared.key.context)) {
+                // the bundle is stopped, models still holding the tracker only see no services
+                shared.references.set(-1);
+                TRACKERS.remove(shared.key, shared);
+                shared.close();
+            } else if (now - shared.idleSince > IDLE_TIMEOUT && shared.references.compareAndSet(0, -1)) {
+                TRACKERS.remove(shared.key, shared);
+                shared.close();
+            }
+        }
+    }
+
+    private static boolean isValid(BundleContext context) {
+        try {
+            context.getBundle();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the highest ranked service, it is updated by service events so the call never hits the service
+     * registry.
+     *
+     * @return the service or <code>null</code> if none is available.
+     */
+    T getService() {
+        TrackedService<T> best = tracker.best;
+        return best == null ? null : best.get();
+    }
+
+    /**
+     * Returns the references of all tracked services, highest ranking first. The array is shared until the tracked
+     * services change and must not be modified.
+     *
+     * @return the references, never <code>null</code>.
+     */
+    ServiceReference<T>[] getSortedServiceReferences() {
+        Snapshot<T> current = snapshot;
+        int trackingCount = tracker.getTrackingCount();
+        if (current != null && current.trackingCount == trackingCount) {
+            return current.references;
+        }
+        ServiceReference<T>[] references = getServiceReferences();
+        Arrays.sort(references, Collections.reverseOrder());
+        snapshot = new Snapshot<T>(trackingCount, references);
+        return references;
+    }
+
+    /**
+     * Returns the references of all tracked services.
+     *
+     * @return the references, never <code>null</code>.
+     */
+    ServiceReference<T>[] getServiceReferences() {
+        ServiceReference<T>[] references = tracker.getServiceReferences();
+        return references == null ? SharedServiceTracker.<T> noReferences() : references;
+    }
+
+    /**
+     * Returns an empty reference array for any service type; it is shared as it can't be modified anyway.
+     *
+     * @param <T> the type of the service.
+     * @return an empty array.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> ServiceReference<T>[] noReferences() {
+        return (ServiceReference<T>[]) NO_REFERENCES;
+    }
+
+    /**
+     * Returns the service object the tracker holds for the given reference, getting it on first use; not available
+     * for trackers which only track references.
+     *
+     * @param reference a {@link org.osgi.framework.ServiceReference} object.
+     * @return the service or <code>null</code> if it is no longer tracked.
+     */
+    T getService(ServiceReference<T> reference) {
+        if (key.referencesOnly) {
+            throw new UnsupportedOperationException("The tracker for " + key + " only tracks references");
+        }
+        TrackedService<T> tracked = tracker.getService(reference);
+        return tracked == null ? null : tracked.get();
+    }
+
+    /**
+     * Gives back a tracker obtained from {@link #acquire(BundleContext, Class, String)}.
+     */
+    void release() {
+        while (true) {
+            int count = references.get();
+            if (count <= 0) {
+                // closed meanwhile
+                return;
+            }
+            if (references.compareAndSet(count, count - 1)) {
+                if (count == 1) {
+                    idleSince = System.currentTimeMillis();
+                    sweep();
+                }
+                return;
+            }
+        }
+    }
+
+    private boolean retain() {
+        while (true) {
+            int count = references.get();
+            if (count < 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void open() {
+        if (!opened) {
+            synchronized (this) {
+                if (!opened) {
+                    tracker.open();
+                    opened = true;
+                }
+            }
+        }
+    }
+
+    private synchronized void close() {
+        try {
+            tracker.close();
+        } catch (IllegalStateException e) {
+            // the bundle context is no longer valid, its services are gone anyway
+            LOGGER.debug("Could not close tracker for {}", key, e);
+        }
+        opened = false;
+    }
+
+    /**
+     * Keeps the highest ranked service in a volatile field; services are only got when they are asked for, so opening
+     * the tracker does not get every service which is ranked best for a moment.
+     */
+    private final class Tracker extends ServiceTracker<T, TrackedService<T>> {
+
+        private final boolean referencesOnly;
+        private volatile TrackedService<T> best;
+
+        private Tracker(BundleContext context, Filter filter, boolean referencesOnly) {
+            super(context, filter, null);
+            this.referencesOnly = referencesOnly;
+        }
+
+        @Override
+        public TrackedService<T> addingService(ServiceReference<T> reference) {
+            TrackedService<T> tracked = new TrackedService<T>(context, reference);
+            if (!referencesOnly) {
+                synchronized (this) {
+                    // the reference is not yet tracked, so it is compared with the current best one
+                    if (best == null || reference.compareTo(best.reference) > 0) {
+                        best = tracked;
+                    }
+                }
+            }
+            return tracked;
+        }
+
+        @Override
+        public void modifiedService(ServiceReference<T> reference, TrackedService<T> tracked) {
+            if (!referencesOnly) {
+                updateBest();
+            }
+        }
+
+        @Override
+        public void removedService(ServiceReference<T> reference, TrackedService<T> tracked) {
+            if (!referencesOnly) {
+                updateBest();
+            }
+            tracked.dispose();
+        }
+
+        private synchronized void updateBest() {
+            ServiceReference<T> reference = getServiceReference();
+            best = reference == null ? null : getService(reference);
+        }
+
+    }
+
+    /**
+     * A tracked reference and its service, which is got from the bundle context on first use and given back when the
+     * reference is no longer tracked.
+     */
+    private static final class TrackedService<T> {
+
+        private final BundleContext context;
+        private final ServiceReference<T> reference;
+        /** Guarded by this. */
+        private T service;
+        /** Guarded by this. */
+        private boolean got;
+        /** Guarded by this. */
+        private boolean disposed;
+
+        private TrackedService(BundleContext context, ServiceReference<T> reference) {
+            this.context = context;
+            this.reference = reference;
+        }
+
+        private synchronized T get() {
+            if (!got && !disposed) {
+                service = context.getService(reference);
+                got = true;
+            }
+            return service;
+        }
+
+        private synchronized void dispose() {
+            disposed = true;
+            if (service != null) {
+                service = null;
+                try {
+                    context.ungetService(reference);
+                } catch (IllegalStateException e) {
+                    // the bundle context is no longer valid, the service has been released with it
+                }
+            }
+        }
+
+    }
+
+    private static final class Snapshot<T> {
+
+        private final int trackingCount;
+        private final ServiceReference<T>[] references;
+
+        private Snapshot(int trackingCount, ServiceReference<T>[] references) {
+            this.trackingCount = trackingCount;
+            this.references = references;
+        }
+
+    }
+
+    private static final class Key {
+
+        private final BundleContext context;
+        private final Class<?> serviceType;
+        private final String filter;
+        private final boolean referencesOnly;
+        private final int hashCode;
+
+        private Key(BundleContext context, Class<?> serviceType, String filter, boolean referencesOnly) {
+            this.context = context;
+            this.serviceType = serviceType;
+            this.filter = filter;
+            this.referencesOnly = referencesOnly;
+            int hash = System.identityHashCode(context);
+            hash = 31 * hash + serviceType.hashCode();
+            hash = 31 * hash + (filter == null ? 0 : filter.hashCode());
+            hash = 31 * hash + (referencesOnly ? 1 : 0);
+            hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) other;
+            return context == that.context && serviceType == that.serviceType && referencesOnly == that.referencesOnly
+                    && (filter == null ? that.filter == null : filter.equals(that.filter));
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return serviceType.getName() + (filter == null ? "" : " " + filter);
+        }
+
+    }
+
+}
@@ -19,11 +19,21 @@
  */
 package org.ops4j.pax.wicket.internal;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.ObjectName;
+
 import org.ops4j.pax.wicket.api.WebApplicationFactory;
+import org.ops4j.pax.wicket.component.model.SharedServiceTracker;
 import org.ops4j.pax.wicket.internal.util.BundleTrackerAggregator;
+import org.ops4j.pax.wicket.internal.util.PlatformMBeans;
+import org.ops4j.pax.wicket.util.metrics.StartupTrace;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 public final class Activator implements BundleActivator {
@@ -38,15 +48,40 @@ public final class Activator implements BundleActivator {
 
     private static BundleContext bundleContext;
 
+    /**
+     * Contexts of started bundles by bundle id, used to resolve bundle contexts in deserialized pages; entries are
+     * removed as soon as the bundle stops, which invalidates its context.
+     */
+    private static final ConcurrentMap<Long, BundleContext> BUNDLE_CONTEXTS =
+        new ConcurrentHashMap<Long, BundleContext>();
+
+    private SynchronousBundleListener bundleContextInvalidator;
+
     private BundleTrackerAggregator<WebApplicationFactory<?>> bundleTrackerAggregator;
 
+    private ObjectName startupTraceMBean;
+
     /** {@inheritDoc} */
     @SuppressWarnings("unchecked")
     public final void start(BundleContext context) throws Exception {
+        StartupTrace trace = StartupTrace.get();
+        trace.reset();
+        trace.setReportFile(context.getDataFile("startup-trace.json"));
+        startupTraceMBean = PlatformMBeans.register(trace, "StartupTrace");
+        long start = System.nanoTime();
         LOGGER
             .info("Pax Wicket makes uses of Decarative Services starting with this release. Make sure a suitable implementation (e.g. Felix SCR or Equinox DS) is present and started in your framework!");
         LOGGER.debug("Initializing [{}] bundle.", context.getBundle().getSymbolicName());
         bundleContext = context;
+        bundleContextInvalidator = new SynchronousBundleListener() {
+            public void bundleChanged(BundleEvent event) {
+                int type = event.getType();
+                if (type == BundleEvent.STOPPED || type == BundleEvent.UNINSTALLED) {
+                    BUNDLE_CONTEXTS.remove(event.getBundle().getBundleId());
+                }
+            }
+        };
+        context.addBundleListener(bundleContextInvalidator);
 
         httpTracker = new HttpTracker(context);
         httpTracker.open();
@@ -57,6 +92,8 @@ public final class Activator implements BundleActivator {
             new BundleTrackerAggregator<WebApplicationFactory<?>>(context, WebApplicationFactory.class.getName(), null,
                 applicationFactoryTracker);
         bundleTrackerAggregator.open(true);
+        trace.record(StartupTrace.ACTIVATOR_START, context.getBundle().getSymbolicName(), start);
+        trace.writeReport();
     }
 
     /**
@@ -75,18 +112,37 @@ public final class Activator implements BundleActivator {
      * @return a {@link org.osgi.framework.BundleContext} object.
      */
     public static BundleContext getBundleContextByBundleId(long bundleId) {
+        BundleContext cached = BUNDLE_CONTEXTS.get(bundleId);
+        if (cached != null) {
+            return cached;
+        }
         Bundle bundle = bundleContext.getBundle(bundleId);
-        if (bundle != null) {
-            return bundle.getBundleContext();
-        } else {
+        if (bundle == null) {
             return null;
         }
+        BundleContext context = bundle.getBundleContext();
+        if (context != null) {
+            BUNDLE_CONTEXTS.put(bundleId, context);
+            if ((bundle.getState() & (Bundle.STARTING | Bundle.ACTIVE | Bundle.STOPPING)) == 0) {
+                // stopped meanwhile, the listener might have missed the entry
+                BUNDLE_CONTEXTS.remove(bundleId, context);
+            }
+        }
+        return context;
     }
 
     /** {@inheritDoc} */
     public final void stop(BundleContext context) throws Exception {
         bundleTrackerAggregator.close();
         httpTracker.close();
+        context.removeBundleListener(bundleContextInvalidator);
+        BUNDLE_CONTEXTS.clear();
+        SharedServiceTracker.closeAll();
+        // by now the trace contains everything done while the framework ran
+        StartupTrace trace = StartupTrace.get();
+        trace.stopScheduledReports();
+        trace.writeReport();
+        PlatformMBeans.unregister(startupTraceMBean);
         bundleContext = null;
         LOGGER.debug("Stopped [{}] bundle.", context.getBundle().getSymbolicName());
     }
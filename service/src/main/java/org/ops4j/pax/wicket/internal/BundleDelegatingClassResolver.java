@@ -29,6 +29,7 @@ import java.util.Map;
 import org.apache.wicket.application.IClassResolver;
 import org.ops4j.pax.wicket.api.Constants;
 import org.ops4j.pax.wicket.internal.extender.ExtendedBundle;
+import org.ops4j.pax.wicket.util.metrics.RuntimeMetrics;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
@@ -49,6 +50,7 @@ public class BundleDelegatingClassResolver implements IClassResolver, InternalBu
     private final String applicationName;
     private final BundleContext paxWicketBundleContext;
     private final Map<String, Bundle> bundles = new HashMap<String, Bundle>();
+    private final RuntimeMetrics metrics;
     private ServiceRegistration<IClassResolver> classResolverRegistration;
 
     /**
@@ -60,6 +62,7 @@ public class BundleDelegatingClassResolver implements IClassResolver, InternalBu
     public BundleDelegatingClassResolver(BundleContext paxWicketBundleContext, String applicationName) {
         this.paxWicketBundleContext = paxWicketBundleContext;
         this.applicationName = applicationName;
+        metrics = RuntimeMetrics.forApplication(applicationName);
     }
 
     /**
@@ -134,6 +137,7 @@ public class BundleDelegatingClassResolver implements IClassResolver, InternalBu
                     LOGGER.trace("Trying to load class {} from bundle {}", classname, bundle.getSymbolicName());
                     Class<?> loadedClass = bundle.loadClass(classname);
                     LOGGER.debug("Loaded class {} from bundle {}", classname, bundle.getSymbolicName());
+                    metrics.recordBundleClassResolution(true);
                     return loadedClass;
                 } catch (ClassNotFoundException e) {
                     LOGGER.trace("Could not load class {} from bundle {} because bundle does not contain the class",
@@ -145,6 +149,7 @@ public class BundleDelegatingClassResolver implements IClassResolver, InternalBu
                 }
             }
         }
+        metrics.recordBundleClassResolution(false);
         throw new ClassNotFoundException("Class [" + classname + "] can't be resolved.");
     }
 
@@ -31,6 +31,7 @@ import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.wicket.application.IClassResolver;
+import org.ops4j.pax.wicket.util.metrics.RuntimeMetrics;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
 import org.osgi.framework.InvalidSyntaxException;
@@ -45,6 +46,7 @@ public final class DelegatingClassResolver implements IClassResolver {
     private final BundleContext context;
     private final String applicationName;
     private final List<IClassResolver> resolvers = new CopyOnWriteArrayList<IClassResolver>();
+    private final RuntimeMetrics metrics;
 
     private ClassResolverTracker tracker;
 
@@ -60,6 +62,7 @@ public final class DelegatingClassResolver implements IClassResolver {
         validateNotEmpty(applicationName, "applicationName");
         this.context = context;
         this.applicationName = applicationName;
+        metrics = RuntimeMetrics.forApplication(applicationName);
     }
 
     /**
@@ -112,6 +115,7 @@ public final class DelegatingClassResolver implements IClassResolver {
             try {
                 Class<?> candidate = resolver.resolveClass(classname);
                 if (candidate != null) {
+                    metrics.recordClassResolution(true);
                     return candidate;
                 }
             } catch (ClassNotFoundException e) {
@@ -120,6 +124,7 @@ public final class DelegatingClassResolver implements IClassResolver {
                 LOGGER.warn("ClassResolver {} threw an unexpected exception.", resolver, e);
             }
         }
+        metrics.recordClassResolution(false);
         throw new ClassNotFoundException(String.format("Class [%s] can't be resolved.", classname));
     }
 
@@ -23,12 +23,18 @@ import static javax.activation.FileTypeMap.getDefaultFileTypeMap;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.activation.MimetypesFileTypeMap;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
 import org.osgi.service.http.HttpContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,10 +42,42 @@ public class GenericContext implements HttpContext {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GenericContext.class);
 
+    /**
+     * Upper bound of the cached names without a resource, as these come from the requests.
+     */
+    private static final int MAX_MISSING_RESOURCES = 1024;
+
+    private static final CachedResource MISSING = new CachedResource(null);
+
     private final String mountPoint;
     private final MimetypesFileTypeMap typeMap;
     private final Bundle bundle;
 
+    /**
+     * Resolved resources by name, {@link #MISSING} for names the bundle has no resource for. Cleared when the bundle is
+     * resolved again or updated, as a fragment attached on a refresh might provide other resources.
+     */
+    private final ConcurrentMap<String, CachedResource> resources = new ConcurrentHashMap<String, CachedResource>();
+
+    private final AtomicInteger missingResources = new AtomicInteger();
+
+    private final BundleListener invalidator = new BundleListener() {
+        public void bundleChanged(BundleEvent event) {
+            int type = event.getType();
+            if ((type == BundleEvent.RESOLVED || type == BundleEvent.UPDATED)
+                    && event.getBundle().getBundleId() == bundle.getBundleId()) {
+                clearResources();
+            }
+        }
+    };
+
+    private BundleContext listeningContext;
+
+    /**
+     * {@link Bundle#getLastModified()} when the cache was filled; it changes with every update of the bundle.
+     */
+    private volatile long cachedBundleVersion;
+
     /**
      * <p>Constructor for GenericContext.</p>
      *
@@ -56,6 +94,36 @@ public class GenericContext implements HttpContext {
         typeMap.addMimeTypes("text/css css");
     }
 
+    /**
+     * Starts to watch the bundle for updates, which invalidate the cached resources.
+     *
+     * @param context the {@link org.osgi.framework.BundleContext} to listen with, may be <code>null</code>.
+     */
+    public synchronized void startListening(BundleContext context) {
+        if (context == null || listeningContext != null) {
+            return;
+        }
+        context.addBundleListener(invalidator);
+        listeningContext = context;
+        // the bundle might have changed while nobody was listening
+        clearResources();
+    }
+
+    /**
+     * Stops to watch the bundle, see {@link #startListening(BundleContext)}.
+     */
+    public synchronized void stopListening() {
+        if (listeningContext == null) {
+            return;
+        }
+        try {
+            listeningContext.removeBundleListener(invalidator);
+        } catch (IllegalStateException e) {
+            LOGGER.debug("the context the resource cache of {} listened with is no longer valid", mountPoint);
+        }
+        listeningContext = null;
+    }
+
     /** {@inheritDoc} */
     public boolean handleSecurity(HttpServletRequest request, HttpServletResponse response)
         throws IOException {
@@ -70,11 +138,8 @@ public class GenericContext implements HttpContext {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("getResource( " + resourceName + " )");
         }
-
-        if (resourceName.startsWith(mountPoint)) {
-            resourceName = resourceName.substring(mountPoint.length());
-        }
-        return bundle.getResource(resourceName);
+        CachedResource resource = lookup(resourceName);
+        return resource == null ? null : resource.url;
     }
 
     /** {@inheritDoc} */
@@ -82,22 +147,57 @@ public class GenericContext implements HttpContext {
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("getMimeType( " + resourceName + " )");
         }
-        URL resource = getResource(resourceName);
+        CachedResource resource = lookup(resourceName);
         if (resource == null) {
             return null;
         }
-        String url = resource.toString();
-        if (LOGGER.isDebugEnabled()) {
-            LOGGER.debug("         URL: " + url);
+        String contentType = resource.mimeType;
+        if (contentType == null) {
+            String url = resource.url.toString();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("         URL: " + url);
+            }
+            contentType = typeMap.getContentType(url);
+            resource.mimeType = contentType;
         }
-
-        String contentType = typeMap.getContentType(url);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug(" ContentType: " + contentType);
         }
         return contentType;
     }
 
+    private CachedResource lookup(String resourceName) {
+        long bundleVersion = bundle.getLastModified();
+        if (bundleVersion != cachedBundleVersion) {
+            // the bundle was updated, its resources might have changed
+            clearResources();
+            cachedBundleVersion = bundleVersion;
+        }
+        CachedResource resource = resources.get(resourceName);
+        if (resource != null) {
+            return resource == MISSING ? null : resource;
+        }
+        String name = resourceName;
+        if (name.startsWith(mountPoint)) {
+            name = name.substring(mountPoint.length());
+        }
+        URL url = bundle.getResource(name);
+        if (url == null) {
+            if (missingResources.incrementAndGet() <= MAX_MISSING_RESOURCES) {
+                resources.put(resourceName, MISSING);
+            }
+            return null;
+        }
+        resource = new CachedResource(url);
+        resources.put(resourceName, resource);
+        return resource;
+    }
+
+    private void clearResources() {
+        resources.clear();
+        missingResources.set(0);
+    }
+
     /**
      * <p>normalizeMountPoint.</p>
      *
@@ -110,4 +210,17 @@ public class GenericContext implements HttpContext {
         }
         return mountPoint;
     }
+
+    private static final class CachedResource {
+
+        private final URL url;
+
+        /** Determined on first use; racing threads compute the same value. */
+        private volatile String mimeType;
+
+        private CachedResource(URL url) {
+            this.url = url;
+        }
+
+    }
 }
@@ -22,6 +22,7 @@ import javax.servlet.Servlet;
 import javax.servlet.ServletException;
 
 import org.ops4j.pax.wicket.internal.servlet.ServletDescriptor;
+import org.ops4j.pax.wicket.util.metrics.StartupTrace;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
@@ -93,20 +94,29 @@ final class HttpTracker extends ServiceTracker<HttpService, HttpService> {
      * 
      */
     private void registerServletDescriptor(ServletDescriptor servletDescriptor) {
+        long start = System.nanoTime();
+        String failure = null;
         try {
             servletDescriptor.register(httpService);
         } catch (RuntimeException e) {
             LOG.error(
                 "Registration of ServletDescriptor under mountpoint {} fails with unexpected RuntimeException!",
                 servletDescriptor.getAlias(), e);
+            failure = e.toString();
         } catch (ServletException e) {
             LOG.error(
                 "Unable to mount servlet on mount point '{}', either it was already registered under the same alias or the init method throws an exception",
                 servletDescriptor.getAlias(), e);
+            failure = e.toString();
         } catch (NamespaceException e) {
             LOG.error(
                 "Unable to mount servlet on mount point '{}', another resource is already bound to this alias",
                 servletDescriptor.getAlias(), e);
+            failure = e.toString();
+        } finally {
+            StartupTrace trace = StartupTrace.get();
+            trace.record(StartupTrace.SERVLET_REGISTRATION, servletDescriptor.getAlias(), start, failure);
+            trace.scheduleReport();
         }
     }
 
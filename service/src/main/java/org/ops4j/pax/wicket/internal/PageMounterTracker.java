@@ -36,6 +36,7 @@ import org.apache.wicket.request.Request;
 import org.apache.wicket.request.Url;
 import org.ops4j.pax.wicket.api.MountPointInfo;
 import org.ops4j.pax.wicket.api.PageMounter;
+import org.ops4j.pax.wicket.util.metrics.StartupTrace;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
 import org.osgi.framework.InvalidSyntaxException;
@@ -90,6 +91,7 @@ public final class PageMounterTracker extends ServiceTracker<PageMounter, PageMo
         PageMounter mounter = super.addingService(reference);
         List<MountPointInfo> infos = mounter.getMountPoints();
         for (MountPointInfo info : infos) {
+            long start = System.nanoTime();
             LOGGER.trace("Make sure that path {} is clear before trying to remount", info.getPath());
             Application oldApp = ThreadContext.getApplication();
             ThreadContext.setApplication(application);
@@ -103,6 +105,7 @@ public final class PageMounterTracker extends ServiceTracker<PageMounter, PageMo
             application.mountPage(info.getPath(), info.getPage());
             ThreadContext.setApplication(oldApp);
             LOGGER.info("Mounted {} with {}", info.getPath(), info.getPage().getName());
+            StartupTrace.get().record(StartupTrace.PAGE_MOUNT, info.getPath(), start, info.getPage().getName());
         }
         return mounter;
     }
@@ -26,6 +26,7 @@ import javax.servlet.Servlet;
 import org.ops4j.pax.wicket.api.WebApplicationFactory;
 import org.ops4j.pax.wicket.internal.servlet.PAXWicketServlet;
 import org.ops4j.pax.wicket.internal.util.ServiceTrackerAggregatorReadyChildren;
+import org.ops4j.pax.wicket.util.metrics.StartupTrace;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
@@ -62,9 +63,17 @@ public class PaxWicketAppFactoryTracker implements ServiceTrackerAggregatorReady
      * @param service a {@link org.ops4j.pax.wicket.api.WebApplicationFactory} object.
      */
     public void addingService(ServiceReference<WebApplicationFactory<?>> reference, WebApplicationFactory<?> service) {
-        PaxWicketApplicationFactory internalFactory =
-            PaxWicketApplicationFactory.createPaxWicketApplicationFactory(context, service, reference);
-        addApplication(reference, internalFactory);
+        long start = System.nanoTime();
+        PaxWicketApplicationFactory internalFactory = null;
+        try {
+            internalFactory = PaxWicketApplicationFactory.createPaxWicketApplicationFactory(context, service, reference);
+            addApplication(reference, internalFactory);
+        } finally {
+            StartupTrace trace = StartupTrace.get();
+            trace.record(StartupTrace.APPLICATION_ADD,
+                internalFactory != null ? internalFactory.getApplicationName() : String.valueOf(reference), start);
+            trace.scheduleReport();
+        }
     }
 
     /**
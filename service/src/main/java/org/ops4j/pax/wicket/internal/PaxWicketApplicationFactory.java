@@ -16,34 +16,56 @@
 package org.ops4j.pax.wicket.internal;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 
+import javax.management.ObjectName;
 import javax.servlet.Filter;
 
+import net.sf.cglib.proxy.Callback;
+import net.sf.cglib.proxy.CallbackFilter;
 import net.sf.cglib.proxy.Enhancer;
 import net.sf.cglib.proxy.MethodInterceptor;
 import net.sf.cglib.proxy.MethodProxy;
+import net.sf.cglib.proxy.NoOp;
 
+import org.apache.wicket.DefaultPageManagerProvider;
 import org.apache.wicket.IPageFactory;
+import org.apache.wicket.pageStore.IDataStore;
 import org.apache.wicket.protocol.http.IWebApplicationFactory;
 import org.apache.wicket.protocol.http.WebApplication;
 import org.apache.wicket.protocol.http.WicketFilter;
+import org.apache.wicket.settings.IStoreSettings;
 import org.ops4j.pax.wicket.api.Constants;
 import org.ops4j.pax.wicket.api.SuperFilter;
 import org.ops4j.pax.wicket.api.SuperFilters;
 import org.ops4j.pax.wicket.api.WebApplicationFactory;
 import org.ops4j.pax.wicket.internal.filter.FilterDelegator;
 import org.ops4j.pax.wicket.internal.injection.ComponentInstantiationListenerFacade;
+import org.ops4j.pax.wicket.internal.store.MappedSegmentDataStore;
+import org.ops4j.pax.wicket.internal.util.PlatformMBeans;
 import org.ops4j.pax.wicket.spi.support.DelegatingComponentInstanciationListener;
+import org.ops4j.pax.wicket.util.metrics.RuntimeMetrics;
+import org.ops4j.pax.wicket.util.metrics.RuntimeMetricsMXBean;
+import org.ops4j.pax.wicket.util.serialization.ClassDescriptorDictionary;
+import org.ops4j.pax.wicket.util.serialization.NotSerializableDiagnostics;
+import org.ops4j.pax.wicket.util.serialization.PageCompression;
+import org.ops4j.pax.wicket.util.serialization.PageSerializationStatistics;
+import org.ops4j.pax.wicket.util.serialization.PageSerializationStatisticsMXBean;
 import org.ops4j.pax.wicket.util.serialization.PaxWicketSerializer;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
 import org.osgi.framework.ServiceReference;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.SynchronousBundleListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -213,33 +235,32 @@ public class PaxWicketApplicationFactory implements IWebApplicationFactory {
             }
         });
         e.setSuperclass(applicationClass);
-        e.setCallback(new WebApplicationWrapper());
+        e.setCallbacks(new Callback[]{ NoOp.INSTANCE, new WebApplicationWrapper() });
+        e.setCallbackFilter(LifecycleMethodFilter.INSTANCE);
         @SuppressWarnings("unchecked")
         T instance = (T) e.create();
         factory.onInstantiation(instance);
         return instance;
     }
 
-    private class WebApplicationWrapper implements MethodInterceptor {
+    /**
+     * Routes the lifecycle methods of the application ({@code init}, {@code newPageFactory}, {@code onDestroy} and
+     * {@code finalize}) to the {@link WebApplicationWrapper} and leaves all other methods untouched, so that the
+     * generated subclass does not add any overhead to the methods wicket calls during each request.
+     */
+    private static final class LifecycleMethodFilter implements CallbackFilter {
 
-        private PaxWicketPageFactory pageFactory;
-        private DelegatingClassResolver delegatingClassResolver;
-        private DelegatingComponentInstanciationListener delegatingComponentInstanciationListener;
-        private PageMounterTracker mounterTracker;
+        private static final LifecycleMethodFilter INSTANCE = new LifecycleMethodFilter();
 
-        public Object intercept(Object object, Method method, Object[] args, MethodProxy methodProxy) throws Throwable {
-            if (isFinalizeMethod(method)) {
-                // swallow finalize call
-                return null;
-            } else if (isInitMethod(method)) {
-                handleInit((WebApplication) object);
-            } else if (isNewPageFactory(method)) {
-                return handleNewPageFactory();
-            } else if (isOnDestoryMethod(method)) {
-                handleOnDestroy();
+        private static final int NO_OP = 0;
+        private static final int LIFECYCLE = 1;
+
+        public int accept(Method method) {
+            if (isFinalizeMethod(method) || isInitMethod(method) || isNewPageFactory(method)
+                    || isOnDestoryMethod(method)) {
+                return LIFECYCLE;
             }
-            method.setAccessible(true);
-            return methodProxy.invokeSuper(object, args);
+            return NO_OP;
         }
 
         /**
@@ -251,7 +272,8 @@ public class PaxWicketApplicationFactory implements IWebApplicationFactory {
          * @param parameterTypes Parameters for method.
          * @return True if all criteria matched.
          */
-        private boolean checkSignature(Method method, String name, Class<?> returnType, Class<?>... parameterTypes) {
+        private static boolean checkSignature(Method method, String name, Class<?> returnType,
+                Class<?>... parameterTypes) {
             if (method.getName().equals(name) && method.getReturnType() == returnType) {
                 return Arrays.equals(method.getParameterTypes(), parameterTypes);
             }
@@ -264,24 +286,69 @@ public class PaxWicketApplicationFactory implements IWebApplicationFactory {
          * @param method method being tested
          * @return true if the method is defined from Object.finalize(), false otherwise
          */
-        private boolean isFinalizeMethod(Method method) {
+        private static boolean isFinalizeMethod(Method method) {
             return checkSignature(method, "finalize", void.class);
         }
 
-        private boolean isInitMethod(Method method) {
+        private static boolean isInitMethod(Method method) {
             return checkSignature(method, "init", void.class);
         }
 
-        private boolean isNewPageFactory(Method method) {
+        private static boolean isNewPageFactory(Method method) {
             return checkSignature(method, "newPageFactory", IPageFactory.class);
         }
 
-        private boolean isOnDestoryMethod(Method method) {
+        private static boolean isOnDestoryMethod(Method method) {
             return checkSignature(method, "onDestroy", void.class);
         }
 
+        @Override
+        public boolean equals(Object obj) {
+            // required by cglib to reuse already generated classes
+            return obj instanceof LifecycleMethodFilter;
+        }
+
+        @Override
+        public int hashCode() {
+            return LifecycleMethodFilter.class.hashCode();
+        }
+
+    }
+
+    /**
+     * Only receives the methods selected by {@link LifecycleMethodFilter}.
+     */
+    private class WebApplicationWrapper implements MethodInterceptor {
+
+        private PaxWicketPageFactory pageFactory;
+        private DelegatingClassResolver delegatingClassResolver;
+        private DelegatingComponentInstanciationListener delegatingComponentInstanciationListener;
+        private PageMounterTracker mounterTracker;
+        private ClassDescriptorDictionary classDictionary;
+        private BundleListener resolvedClassInvalidator;
+        private PaxWicketSerializer serializer;
+        private ServiceRegistration<PageSerializationStatisticsMXBean> statisticsRegistration;
+        private ObjectName statisticsMBean;
+        private ServiceRegistration<RuntimeMetricsMXBean> metricsRegistration;
+        private ObjectName metricsMBean;
+
+        public Object intercept(Object object, Method method, Object[] args, MethodProxy methodProxy) throws Throwable {
+            if (LifecycleMethodFilter.isFinalizeMethod(method)) {
+                // swallow finalize call
+                return null;
+            } else if (LifecycleMethodFilter.isInitMethod(method)) {
+                handleInit((WebApplication) object);
+            } else if (LifecycleMethodFilter.isNewPageFactory(method)) {
+                return handleNewPageFactory();
+            } else if (LifecycleMethodFilter.isOnDestoryMethod(method)) {
+                handleOnDestroy();
+            }
+            return methodProxy.invokeSuper(object, args);
+        }
+
         private void handleInit(WebApplication application) {
             // application.initApplication();
+            registerMetrics(application);
             delegatingClassResolver = new DelegatingClassResolver(bundleContext, applicationName);
             delegatingClassResolver.intialize();
 
@@ -289,7 +356,8 @@ public class PaxWicketApplicationFactory implements IWebApplicationFactory {
                     new DelegatingComponentInstanciationListener(bundleContext, applicationName);
             delegatingComponentInstanciationListener.intialize();
 
-            application.getFrameworkSettings().setSerializer(new PaxWicketSerializer(getApplicationName()));
+            initSerializer(application);
+            initPageStore(application);
             application.getComponentInstantiationListeners().add(new ComponentInstantiationListenerFacade(
                     delegatingComponentInstanciationListener));
             application.getApplicationSettings().setClassResolver(delegatingClassResolver);
@@ -298,6 +366,110 @@ public class PaxWicketApplicationFactory implements IWebApplicationFactory {
             filterDelegator.start();
         }
 
+        private void initSerializer(WebApplication application) {
+            if (Boolean.parseBoolean(contextParams.get(Constants.SERIALIZER_CLASS_DICTIONARY))) {
+                if (Boolean.parseBoolean(contextParams.get(Constants.SESSION_REPLICATED))) {
+                    // other nodes can not resolve the ids of this node's dictionary
+                    LOG.warn("Sessions of application {} are replicated, not using a class dictionary",
+                        applicationName);
+                } else {
+                    File dictionaryFile = new File(application.getStoreSettings().getFileStoreFolder(),
+                        applicationName + "-class-dictionary");
+                    LOG.info("Using class dictionary {} for application {}", dictionaryFile, applicationName);
+                    classDictionary = new ClassDescriptorDictionary(dictionaryFile);
+                }
+            }
+            PageCompression compression = null;
+            if (Boolean.parseBoolean(contextParams.get(Constants.SERIALIZER_COMPRESSION))) {
+                int level = parseInt(Constants.SERIALIZER_COMPRESSION_LEVEL, PageCompression.DEFAULT_LEVEL);
+                if (level < 0 || level > 9) {
+                    LOG.warn("Invalid compression level {}, using {}", level, PageCompression.DEFAULT_LEVEL);
+                    level = PageCompression.DEFAULT_LEVEL;
+                }
+                int threshold =
+                    parseInt(Constants.SERIALIZER_COMPRESSION_THRESHOLD, PageCompression.DEFAULT_THRESHOLD);
+                LOG.info("Compressing pages of application {} with level {} from {} bytes on", new Object[]{
+                    applicationName, level, threshold });
+                compression = new PageCompression(level, threshold);
+            }
+            final PaxWicketSerializer serializer =
+                new PaxWicketSerializer(getApplicationName(), classDictionary, compression);
+            serializer.setRetainedBufferSize(parseInt(Constants.SERIALIZER_BUFFER_SIZE,
+                serializer.getRetainedBufferSize()));
+            NotSerializableDiagnostics diagnostics = serializer.getDiagnostics();
+            diagnostics.setAnalysisInterval(1000L * parseInt(Constants.SERIALIZER_CHECKER_INTERVAL,
+                (int) (diagnostics.getAnalysisInterval() / 1000)));
+            diagnostics.setAsynchronous(application.usesDevelopmentConfig()
+                    && Boolean.parseBoolean(contextParams.get(Constants.SERIALIZER_CHECKER_ASYNC)));
+            this.serializer = serializer;
+            registerStatistics(serializer.getStatistics());
+            application.getFrameworkSettings().setSerializer(serializer);
+            resolvedClassInvalidator = new SynchronousBundleListener() {
+                public void bundleChanged(BundleEvent event) {
+                    int type = event.getType();
+                    if (type == BundleEvent.UPDATED || type == BundleEvent.UNRESOLVED
+                            || type == BundleEvent.UNINSTALLED) {
+                        // classes of the bundle might have been replaced
+                        serializer.clearResolvedClasses();
+                    }
+                }
+            };
+            bundleContext.addBundleListener(resolvedClassInvalidator);
+        }
+
+        private void initPageStore(final WebApplication application) {
+            if (!"mapped".equalsIgnoreCase(contextParams.get(Constants.PAGE_STORE))) {
+                return;
+            }
+            final int segments = Math.max(2, parseInt(Constants.PAGE_STORE_SEGMENTS, 8));
+            final int segmentSize = Math.min(1024, Math.max(1, parseInt(Constants.PAGE_STORE_SEGMENT_SIZE, 32)));
+            application.setPageManagerProvider(new DefaultPageManagerProvider(application) {
+                @Override
+                protected IDataStore newDataStore() {
+                    IStoreSettings storeSettings = application.getStoreSettings();
+                    File folder = new File(storeSettings.getFileStoreFolder(), applicationName + "-segments");
+                    try {
+                        return new MappedSegmentDataStore(folder, segments, segmentSize << 20,
+                            storeSettings.getMaxSizePerSession().bytes());
+                    } catch (IOException e) {
+                        LOG.error("Could not create the mapped page store in {}, using the default store", folder, e);
+                        return super.newDataStore();
+                    }
+                }
+            });
+        }
+
+        private void registerStatistics(PageSerializationStatistics statistics) {
+            statistics.setSamplingRate(parseInt(Constants.SERIALIZER_STATISTICS, 0));
+            Hashtable<String, Object> properties = new Hashtable<String, Object>();
+            properties.put(Constants.APPLICATION_NAME, applicationName);
+            statisticsRegistration = bundleContext.registerService(PageSerializationStatisticsMXBean.class,
+                statistics, properties);
+            statisticsMBean = PlatformMBeans.register(statistics, "PageSerialization", applicationName);
+        }
+
+        private void registerMetrics(WebApplication application) {
+            RuntimeMetrics metrics = RuntimeMetrics.forApplication(applicationName);
+            application.setMetaData(RuntimeMetrics.METRICS_KEY, metrics);
+            Hashtable<String, Object> properties = new Hashtable<String, Object>();
+            properties.put(Constants.APPLICATION_NAME, applicationName);
+            metricsRegistration = bundleContext.registerService(RuntimeMetricsMXBean.class, metrics, properties);
+            metricsMBean = PlatformMBeans.register(metrics, "Runtime", applicationName);
+        }
+
+        private int parseInt(String key, int defaultValue) {
+            String value = contextParams.get(key);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOG.warn("Invalid value [{}] for {}, using {}", new Object[]{ value, key, defaultValue });
+                return defaultValue;
+            }
+        }
+
         private IPageFactory handleNewPageFactory() {
             if (pageFactory == null) {
                 pageFactory = new PaxWicketPageFactory(bundleContext, applicationName);
@@ -314,6 +486,16 @@ public class PaxWicketApplicationFactory implements IWebApplicationFactory {
             delegatingComponentInstanciationListener.dispose();
             mounterTracker.close();
             filterDelegator.stop();
+            bundleContext.removeBundleListener(resolvedClassInvalidator);
+            serializer.dispose();
+            statisticsRegistration.unregister();
+            PlatformMBeans.unregister(statisticsMBean);
+            metricsRegistration.unregister();
+            PlatformMBeans.unregister(metricsMBean);
+            if (classDictionary != null) {
+                classDictionary.close();
+                classDictionary = null;
+            }
         }
 
     }
@@ -24,6 +24,7 @@ import org.apache.wicket.request.component.IRequestablePage;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
 import org.apache.wicket.session.DefaultPageFactory;
 import org.ops4j.pax.wicket.api.PageFactory;
+import org.ops4j.pax.wicket.util.metrics.RuntimeMetrics;
 import org.osgi.framework.BundleContext;
 import org.osgi.util.tracker.ServiceTracker;
 
@@ -39,6 +40,7 @@ public final class PaxWicketPageFactory implements IPageFactory {
     private final BundleContext bundleContext;
     private final String applicationName;
     private final HashMap<Class<? extends IRequestablePage>, PageFactory<? extends IRequestablePage>> contents;
+    private final RuntimeMetrics metrics;
 
     private ServiceTracker<PageFactory<? extends IRequestablePage>, PageFactory<? extends IRequestablePage>> m_pageTracker;
 
@@ -55,6 +57,7 @@ public final class PaxWicketPageFactory implements IPageFactory {
         contents = new HashMap<Class<? extends IRequestablePage>, PageFactory<? extends IRequestablePage>>();
         bundleContext = context;
         this.applicationName = applicationName;
+        metrics = RuntimeMetrics.forApplication(applicationName);
     }
 
     /**
@@ -109,6 +112,7 @@ public final class PaxWicketPageFactory implements IPageFactory {
         synchronized (this) {
             content = (PageFactory<C>) contents.get(pageClass);
         }
+        metrics.recordPageFactoryLookup(content != null);
         return content;
     }
 
@@ -27,6 +27,7 @@ import java.util.regex.Pattern;
 
 import org.ops4j.pax.wicket.api.Constants;
 import org.ops4j.pax.wicket.internal.Activator;
+import org.ops4j.pax.wicket.util.metrics.StartupTrace;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
@@ -113,10 +114,17 @@ public class ExtendedBundle {
      *         <code>false</code> otherwhise
      */
     public boolean isRelevantForMountPointAnnotations() {
-        if (isWicket() || isPAXWicket()) {
-            return false;
+        long start = System.nanoTime();
+        boolean relevant = false;
+        try {
+            if (isWicket() || isPAXWicket()) {
+                return false;
+            }
+            relevant = isImportingPAXWicketAPI();
+            return relevant;
+        } finally {
+            StartupTrace.get().record(StartupTrace.BUNDLE_RELEVANCE, getID(), start, "mountPoints=" + relevant);
         }
-        return isImportingPAXWicketAPI();
     }
 
     /**
@@ -125,12 +133,19 @@ public class ExtendedBundle {
      * @return a boolean.
      */
     public boolean isRelevantForImportEnhancements() {
-        if (isWicket() || isPAXWicket()) {
-            return false;
+        long start = System.nanoTime();
+        boolean relevant = false;
+        try {
+            if (isWicket() || isPAXWicket()) {
+                return false;
+            }
+            LOGGER.debug("isCandidateForImport NOT WICKET or PAX WICKET  {}", getID());
+
+            relevant = isImportingPAXWicketAPI() || isImportingWicket();
+            return relevant;
+        } finally {
+            StartupTrace.get().record(StartupTrace.BUNDLE_RELEVANCE, getID(), start, "imports=" + relevant);
         }
-        LOGGER.debug("isCandidateForImport NOT WICKET or PAX WICKET  {}",getID());
-        
-        return isImportingPAXWicketAPI() || isImportingWicket();
     }
 
     /**
@@ -238,6 +253,7 @@ public class ExtendedBundle {
      * @return a Collection of classes contained in this bundle
      */
     public Collection<Class<?>> getAllClasses() {
+        long start = System.nanoTime();
         Set<Class<?>> classList = new HashSet<Class<?>>();
         Collection<String> resources = bundle.adapt(BundleWiring.class).listResources("/", "*.class",
                 BundleWiring.FINDENTRIES_RECURSE | BundleWiring.LISTRESOURCES_LOCAL);
@@ -282,6 +298,7 @@ public class ExtendedBundle {
                 }
             }
         }
+        StartupTrace.get().record(StartupTrace.BUNDLE_SCAN, getID(), start, "classes=" + classList.size());
         return classList;
     }
 
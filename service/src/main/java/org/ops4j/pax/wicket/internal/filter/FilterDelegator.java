@@ -21,20 +21,18 @@ package org.ops4j.pax.wicket.internal.filter;
 
 import static org.ops4j.lang.NullArgumentException.validateNotNull;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.Filter;
-import javax.servlet.FilterChain;
 import javax.servlet.Servlet;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
-import javax.servlet.ServletRequest;
-import javax.servlet.ServletResponse;
 
 import org.ops4j.pax.wicket.api.FilterFactory;
+import org.ops4j.pax.wicket.util.metrics.RuntimeMetrics;
 import org.osgi.framework.BundleContext;
 import org.osgi.util.tracker.ServiceTracker;
 import org.slf4j.Logger;
@@ -42,8 +40,28 @@ import org.slf4j.LoggerFactory;
 public final class FilterDelegator {
     private static final Logger LOGGER = LoggerFactory.getLogger(FilterDelegator.class);
 
+    private static final Filter[] NO_FILTERS = new Filter[0];
+
+    /** First delay before factories which failed to create their filter are tried again by a request. */
+    private static final long MIN_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /** The delay doubles with each failed retry up to this. */
+    private static final long MAX_RETRY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
     private final ServiceTracker<FilterFactory, FilterFactoryReference> filterTracker;
     private final String applicationName;
+    private final RuntimeMetrics metrics;
+
+    /**
+     * All currently tracked factories; only accessed while holding the lock on this list.
+     */
+    private final List<FilterFactoryReference> filterFactories = new ArrayList<FilterFactoryReference>();
+
+    /**
+     * The sorted filters of the current {@link #filterFactories} as seen by requests; rebuild on each tracker event
+     * so the request path never has to touch the tracker or sort anything.
+     */
+    private volatile FilterSnapshot snapshot;
 
     private Servlet servlet;
 
@@ -55,7 +73,8 @@ public final class FilterDelegator {
      */
     public FilterDelegator(BundleContext context, String applicationName) {
         this.applicationName = applicationName;
-        FilterTrackerCustomizer customizer = new FilterTrackerCustomizer(context, applicationName);
+        metrics = RuntimeMetrics.forApplication(applicationName);
+        FilterTrackerCustomizer customizer = new FilterTrackerCustomizer(context, applicationName, this);
         filterTracker =
             new ServiceTracker<FilterFactory, FilterFactoryReference>(context, customizer.createOsgiFilter(),
                 customizer);
@@ -85,43 +104,110 @@ public final class FilterDelegator {
     }
 
     /**
-     * <p>doFilter.</p>
+     * Returns the super filters followed by all filters of the tracked {@link FilterFactory} services, sorted by
+     * their ranking and priority.
      *
-     * @param superFilter an array of {@link javax.servlet.Filter} objects.
-     * @param servletRequest a {@link javax.servlet.ServletRequest} object.
-     * @param servletResponse a {@link javax.servlet.ServletResponse} object.
-     * @throws javax.servlet.ServletException if any.
-     * @throws java.io.IOException if any.
+     * @param superFilter an array of {@link javax.servlet.Filter} objects, might be <code>null</code>
+     * @return the filters to apply, never <code>null</code>; the returned array must not be modified
      */
-    public void doFilter(Filter[] superFilter, ServletRequest servletRequest, ServletResponse servletResponse)
-        throws ServletException, IOException {
+    public Filter[] getFilters(Filter[] superFilter) {
+        ServletConfig servletConfig = servlet.getServletConfig();
+        FilterSnapshot current = snapshot;
+        if (current != null && current.isValidFor(superFilter, servletConfig)) {
+            return current.filters;
+        }
+        synchronized (filterFactories) {
+            current = snapshot;
+            if (current == null || !current.isValidFor(superFilter, servletConfig)) {
+                int failedBuilds = current != null && current.isFor(superFilter, servletConfig)
+                    ? current.failedBuilds : 0;
+                current = createSnapshot(superFilter, servletConfig, failedBuilds);
+                snapshot = current;
+            }
+            return current.filters;
+        }
+    }
+
+    /**
+     * Must be called while holding the lock on {@link #filterFactories}
+     *
+     * @param failedBuilds the number of builds for the same super filters and servlet config which failed in a row.
+     */
+    private FilterSnapshot createSnapshot(Filter[] superFilter, ServletConfig servletConfig, int failedBuilds) {
+        long start = System.nanoTime();
         List<Filter> filters = new ArrayList<Filter>();
         if (superFilter != null && superFilter.length > 0) {
             // First add all superfilter...
             filters.addAll(Arrays.asList(superFilter));
         }
-        List<Filter> filterList = getFiltersSortedWithHighestPriorityAsFirstFilter(filters, servlet.getServletConfig());
-        FilterChain chain = new PAXWicketFilterChain(filterList, servlet);
-        chain.doFilter(servletRequest, servletResponse);
-    }
-
-    private List<Filter> getFiltersSortedWithHighestPriorityAsFirstFilter(List<Filter> filters,
-            ServletConfig servletConfig) {
-        FilterFactoryReference[] factories = filterTracker.getServices(new FilterFactoryReference[0]);
-        if (factories != null && factories.length > 0) {
+        boolean complete = true;
+        FilterFactoryReference[] factories =
+            filterFactories.toArray(new FilterFactoryReference[filterFactories.size()]);
+        if (factories.length > 0) {
             LOGGER.debug("Retrieved {} factories to create filters to apply", factories.length);
             Arrays.sort(factories);
             for (FilterFactoryReference filterFactory : factories) {
                 try {
                     filters.add(filterFactory.getFilter(servletConfig));
                 } catch (ServletException e) {
-                    LOGGER.error("Problem while creating filter: {}", e.getMessage(), e);
+                    logFilterFailure(e, failedBuilds);
+                    complete = false;
                 } catch (RuntimeException e) {
-                    LOGGER.error("Problem while creating filter: {}", e.getMessage(), e);
+                    logFilterFailure(e, failedBuilds);
+                    complete = false;
                 }
             }
         }
-        return filters;
+        Filter[] filterArray = filters.isEmpty() ? NO_FILTERS : filters.toArray(new Filter[filters.size()]);
+        metrics.recordFilterChainBuild(System.nanoTime() - start, complete);
+        if (complete) {
+            return new FilterSnapshot(superFilter, servletConfig, filterArray, 0, 0);
+        }
+        // requests go on with the filters which could be created; a later request tries again after a growing delay
+        long delay = Math.min(MIN_RETRY_NANOS << Math.min(failedBuilds, 16), MAX_RETRY_NANOS);
+        long retryAt = System.nanoTime() + delay;
+        return new FilterSnapshot(superFilter, servletConfig, filterArray, failedBuilds + 1, retryAt);
+    }
+
+    private static void logFilterFailure(Exception e, int failedBuilds) {
+        if (failedBuilds == 0) {
+            LOGGER.error("Problem while creating filter: {}", e.getMessage(), e);
+        } else {
+            // already reported, the factory is retried with a growing delay
+            LOGGER.debug("Problem while creating filter (retry {}): {}", failedBuilds, e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the snapshot for the last known super filters and servlet config, if any requests have been served
+     * already; otherwise the next request will create it.
+     */
+    private void refreshSnapshot() {
+        synchronized (filterFactories) {
+            FilterSnapshot current = snapshot;
+            if (current != null) {
+                // a tracker event is worth an immediate retry of factories which failed before
+                snapshot = createSnapshot(current.superFilter, current.servletConfig, 0);
+            }
+        }
+    }
+
+    void addFilterFactory(FilterFactoryReference factoryReference) {
+        synchronized (filterFactories) {
+            filterFactories.add(factoryReference);
+            refreshSnapshot();
+        }
+    }
+
+    void filterFactoryModified() {
+        refreshSnapshot();
+    }
+
+    void removeFilterFactory(FilterFactoryReference factoryReference) {
+        synchronized (filterFactories) {
+            filterFactories.remove(factoryReference);
+            refreshSnapshot();
+        }
     }
 
     /**
@@ -134,4 +220,36 @@ public final class FilterDelegator {
         this.servlet = servlet;
     }
 
+    /**
+     * Immutable, precomputed view of all filters to apply for a given set of super filters and servlet config.
+     */
+    private static final class FilterSnapshot {
+
+        private final Filter[] superFilter;
+        private final ServletConfig servletConfig;
+        private final Filter[] filters;
+        /** <code>0</code> if all filters were created. */
+        private final int failedBuilds;
+        /** The {@link System#nanoTime()} from which on a request builds the snapshot again, if it is incomplete. */
+        private final long retryAt;
+
+        private FilterSnapshot(Filter[] superFilter, ServletConfig servletConfig, Filter[] filters, int failedBuilds,
+                long retryAt) {
+            this.superFilter = superFilter;
+            this.servletConfig = servletConfig;
+            this.filters = filters;
+            this.failedBuilds = failedBuilds;
+            this.retryAt = retryAt;
+        }
+
+        private boolean isFor(Filter[] superFilter, ServletConfig servletConfig) {
+            return this.superFilter == superFilter && this.servletConfig == servletConfig;
+        }
+
+        private boolean isValidFor(Filter[] superFilter, ServletConfig servletConfig) {
+            return isFor(superFilter, servletConfig) && (failedBuilds == 0 || System.nanoTime() - retryAt < 0);
+        }
+
+    }
+
 }
@@ -15,13 +15,21 @@
  */
 package org.ops4j.pax.wicket.internal.filter;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.UnavailableException;
 
 import org.ops4j.pax.wicket.api.FilterFactory;
 import org.ops4j.pax.wicket.internal.DefaultConfigurableFilterConfig;
@@ -43,10 +51,20 @@ public class FilterFactoryReference implements Comparable<FilterFactoryReference
 
     private final FilterFactory factory;
 
-    private final Map<ServletConfig, Filter> filterCache = new HashMap<ServletConfig, Filter>(1);
+    private final Map<ServletConfig, ManagedFilter> filterCache = new HashMap<ServletConfig, ManagedFilter>(1);
+
+    /**
+     * The most recently requested filter; nearly always there is only one {@link ServletConfig} per application, so
+     * this avoids any locking once the filter has been created.
+     */
+    private volatile CacheEntry lastEntry;
+
+    private boolean disposed;
 
     private boolean maintainLifeCycle;
 
+    private boolean skipWhenDisposed;
+
     private long serviceRanking;
 
     private long priority;
@@ -75,6 +93,8 @@ public class FilterFactoryReference implements Comparable<FilterFactoryReference
             } else {
                 maintainLifeCycle = true;
             }
+            Object skip = reference.getProperty(FilterFactory.SKIP_WHEN_DISPOSED);
+            skipWhenDisposed = skip != null && Boolean.parseBoolean(skip.toString());
             serviceRanking = getInteger(reference.getProperty(Constants.SERVICE_RANKING), 0);
             priority = getInteger(reference.getProperty(FilterFactory.FILTER_PRIORITY), 0);
             serviceID = getInteger(reference.getProperty(Constants.SERVICE_ID), 0);
@@ -102,21 +122,17 @@ public class FilterFactoryReference implements Comparable<FilterFactoryReference
     }
 
     /**
-     * dispose this {@link org.ops4j.pax.wicket.internal.filter.FilterFactoryReference} and free all resources
+     * dispose this {@link org.ops4j.pax.wicket.internal.filter.FilterFactoryReference} and free all resources; filters
+     * still in use by running requests are destroyed as soon as the last of those requests has left them.
      */
     public void dispose() {
         LOGGER.debug("dispose all Filters for FilterFactory {}...", factory.getClass().getName());
         synchronized (filterCache) {
-            if (maintainLifeCycle) {
-                Collection<Filter> values = filterCache.values();
-                for (Filter filter : values) {
-                    try {
-                        filter.destroy();
-                    } catch (RuntimeException e) {
-                        LOGGER.warn("RuntimeException while calling destroy() of filter {}", filter.getClass()
-                            .getName(), e);
-                    }
-                }
+            disposed = true;
+            lastEntry = null;
+            Collection<ManagedFilter> values = filterCache.values();
+            for (ManagedFilter filter : values) {
+                filter.dispose();
             }
             filterCache.clear();
         }
@@ -130,21 +146,41 @@ public class FilterFactoryReference implements Comparable<FilterFactoryReference
      * @throws javax.servlet.ServletException if any.
      */
     public Filter getFilter(ServletConfig servletConfig) throws ServletException {
+        CacheEntry entry = lastEntry;
+        if (entry != null && entry.servletConfig == servletConfig) {
+            return entry.filter;
+        }
         synchronized (filterCache) {
-            Filter f = filterCache.get(servletConfig);
+            if (disposed) {
+                throw new ServletException("FilterFactory " + factory.getClass().getName() + " has been disposed");
+            }
+            ManagedFilter f = filterCache.get(servletConfig);
             if (f == null) {
                 DefaultConfigurableFilterConfig filterConfig = new DefaultConfigurableFilterConfig(servletConfig);
-                f = factory.createFilter(filterConfig);
+                Filter filter = factory.createFilter(filterConfig);
                 if (maintainLifeCycle) {
-                    f.init(filterConfig);
+                    filter.init(filterConfig);
                 }
+                f = new ManagedFilter(filter, maintainLifeCycle, skipWhenDisposed);
                 filterCache.put(servletConfig, f);
             }
+            lastEntry = new CacheEntry(servletConfig, f);
             return f;
         }
 
     }
 
+    /**
+     * Returns the filter created by the factory for a filter returned by {@link #getFilter(ServletConfig)}, e.g. to
+     * name it in statistics.
+     *
+     * @param filter a {@link javax.servlet.Filter} object.
+     * @return the filter of the factory, or <code>filter</code> itself if it is not managed by a reference.
+     */
+    public static Filter unwrap(Filter filter) {
+        return filter instanceof ManagedFilter ? ((ManagedFilter) filter).getDelegate() : filter;
+    }
+
     /**
      * <p>Getter for the field <code>factory</code>.</p>
      *
@@ -183,4 +219,104 @@ public class FilterFactoryReference implements Comparable<FilterFactoryReference
         }
         return 0;
     }
+
+    private static final class CacheEntry {
+
+        private final ServletConfig servletConfig;
+        private final ManagedFilter filter;
+
+        private CacheEntry(ServletConfig servletConfig, ManagedFilter filter) {
+            this.servletConfig = servletConfig;
+            this.filter = filter;
+        }
+
+    }
+
+    /**
+     * Counts the requests currently passing a filter, so that {@link Filter#destroy()} is never called while a request
+     * still uses the filter. Requests that start after the filter was disposed are rejected as temporarily unavailable,
+     * so they never pass unguarded, unless the factory allows to skip the filter with
+     * {@link FilterFactory#SKIP_WHEN_DISPOSED}.
+     */
+    private static final class ManagedFilter implements Filter {
+
+        private final Filter delegate;
+        private final boolean maintainLifeCycle;
+        private final boolean skipWhenDisposed;
+        /**
+         * One for the owning {@link FilterFactoryReference} plus one for each request inside the filter
+         */
+        private final AtomicInteger usages = new AtomicInteger(1);
+        private final AtomicBoolean disposed = new AtomicBoolean();
+
+        private ManagedFilter(Filter delegate, boolean maintainLifeCycle, boolean skipWhenDisposed) {
+            this.delegate = delegate;
+            this.maintainLifeCycle = maintainLifeCycle;
+            this.skipWhenDisposed = skipWhenDisposed;
+        }
+
+        public void init(FilterConfig filterConfig) throws ServletException {
+            // the delegate is initialized by the FilterFactoryReference
+        }
+
+        Filter getDelegate() {
+            return delegate;
+        }
+
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+            if (!acquire()) {
+                if (!skipWhenDisposed) {
+                    throw new UnavailableException("filter " + delegate.getClass().getName()
+                            + " is being removed", 1);
+                }
+                chain.doFilter(request, response);
+                return;
+            }
+            try {
+                delegate.doFilter(request, response, chain);
+            } finally {
+                release();
+            }
+        }
+
+        public void destroy() {
+            // the delegate is destroyed when it is disposed and no longer in use
+        }
+
+        private void dispose() {
+            if (disposed.compareAndSet(false, true)) {
+                release();
+            }
+        }
+
+        private boolean acquire() {
+            while (true) {
+                int current = usages.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (usages.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            if (usages.decrementAndGet() == 0 && maintainLifeCycle) {
+                try {
+                    delegate.destroy();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("RuntimeException while calling destroy() of filter {}", delegate.getClass()
+                        .getName(), e);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+
+    }
 }
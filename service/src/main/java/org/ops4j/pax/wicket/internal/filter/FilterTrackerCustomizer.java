@@ -42,17 +42,23 @@ public final class FilterTrackerCustomizer implements ServiceTrackerCustomizer<F
 
     private final BundleContext bundleContext;
 
+    private final FilterDelegator filterDelegator;
+
     /**
      * <p>Constructor for FilterTrackerCustomizer.</p>
      *
      * @param bundleContext a {@link org.osgi.framework.BundleContext} object.
      * @param applicationName a {@link java.lang.String} object.
+     * @param filterDelegator the {@link org.ops4j.pax.wicket.internal.filter.FilterDelegator} to inform about changes
      */
-    public FilterTrackerCustomizer(BundleContext bundleContext, String applicationName) {
+    public FilterTrackerCustomizer(BundleContext bundleContext, String applicationName,
+            FilterDelegator filterDelegator) {
         validateNotNull(bundleContext, "bundleContext");
         validateNotEmpty(applicationName, "applicationName");
+        validateNotNull(filterDelegator, "filterDelegator");
         this.bundleContext = bundleContext;
         this.applicationName = applicationName;
+        this.filterDelegator = filterDelegator;
     }
 
     /** {@inheritDoc} */
@@ -60,6 +66,8 @@ public final class FilterTrackerCustomizer implements ServiceTrackerCustomizer<F
         FilterFactory filterFactory = bundleContext.getService(reference);
         if (filterFactory != null) {
             FilterFactoryReference factoryReference = new FilterFactoryReference(filterFactory);
+            factoryReference.setProperties(reference);
+            filterDelegator.addFilterFactory(factoryReference);
             LOGGER.debug("added FilterFactory {} for application {}", filterFactory.getClass().getName(),
                 applicationName);
             return factoryReference;
@@ -76,6 +84,7 @@ public final class FilterTrackerCustomizer implements ServiceTrackerCustomizer<F
     public void modifiedService(ServiceReference<FilterFactory> reference, FilterFactoryReference service) {
         if (service != null) {
             service.setProperties(reference);
+            filterDelegator.filterFactoryModified();
             LOGGER.debug("updated FilterFactory {} for application {}", service.getFactory().getClass().getName(),
                 applicationName);
         }
@@ -88,11 +97,12 @@ public final class FilterTrackerCustomizer implements ServiceTrackerCustomizer<F
      * @param service a {@link org.ops4j.pax.wicket.internal.filter.FilterFactoryReference} object.
      */
     public void removedService(ServiceReference<FilterFactory> reference, FilterFactoryReference service) {
-        bundleContext.ungetService(reference);
         if (service != null) {
+            filterDelegator.removeFilterFactory(service);
             service.dispose();
             LOGGER.debug("removed filterFactory for application {}", applicationName);
         }
+        bundleContext.ungetService(reference);
     }
 
     /**
@@ -40,9 +40,10 @@ public class PAXWicketFilterChain implements FilterChain {
     private static final Logger LOGGER = LoggerFactory.getLogger(PAXWicketFilterChain.class);
 
     private int filterIndex = 0;
-    private final List<Filter> filters;
+    private final Filter[] filters;
 
     private final Servlet delegateServlet;
+    private final StageTimings timings;
 
     /**
      * <p>Constructor for PAXWicketFilterChain.</p>
@@ -51,24 +52,64 @@ public class PAXWicketFilterChain implements FilterChain {
      * @param delegateServlet a {@link javax.servlet.Servlet} object.
      */
     public PAXWicketFilterChain(List<Filter> filter, Servlet delegateServlet) {
-        filters = filter;
+        this(filter.toArray(new Filter[filter.size()]), delegateServlet);
+    }
+
+    /**
+     * <p>Constructor for PAXWicketFilterChain.</p>
+     *
+     * @param filters an array of {@link javax.servlet.Filter} objects which is not copied and must not be changed
+     * @param delegateServlet a {@link javax.servlet.Servlet} object.
+     */
+    public PAXWicketFilterChain(Filter[] filters, Servlet delegateServlet) {
+        this(filters, delegateServlet, null);
+    }
+
+    /**
+     * <p>Constructor for PAXWicketFilterChain.</p>
+     *
+     * @param filters an array of {@link javax.servlet.Filter} objects which is not copied and must not be changed
+     * @param delegateServlet a {@link javax.servlet.Servlet} object.
+     * @param timings records the time spent in each filter and the servlet, might be <code>null</code>.
+     */
+    public PAXWicketFilterChain(Filter[] filters, Servlet delegateServlet, StageTimings timings) {
+        this.filters = filters;
         this.delegateServlet = delegateServlet;
+        this.timings = timings;
     }
 
     /** {@inheritDoc} */
     public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
-        int size = filters.size();
+        int size = filters.length;
         if (filterIndex < size) {
-            Filter filter = filters.get(filterIndex);
+            Filter filter = filters[filterIndex];
             if (LOGGER.isDebugEnabled()) {
                 LOGGER.debug("call filter {}/{} of type {} ", new Object[]{ (filterIndex + 1), size,
                     filter.getClass().getName() });
             }
-            filterIndex++;
-            filter.doFilter(request, response, this);
+            int stage = filterIndex++;
+            if (timings == null) {
+                filter.doFilter(request, response, this);
+                return;
+            }
+            timings.enter(stage);
+            try {
+                filter.doFilter(request, response, this);
+            } finally {
+                timings.exit(stage);
+            }
         } else {
             LOGGER.debug("No more filters in chain, delegate to servlet");
-            delegateServlet.service(request, response);
+            if (timings == null) {
+                delegateServlet.service(request, response);
+                return;
+            }
+            timings.enter(size);
+            try {
+                delegateServlet.service(request, response);
+            } finally {
+                timings.exit(size);
+            }
         }
     }
 }
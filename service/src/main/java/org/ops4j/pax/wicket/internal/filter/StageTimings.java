@@ -0,0 +1,86 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal.filter;
+
+/**
+ * The times one request spent in the stages of a {@link PAXWicketFilterChain}: stage <code>i</code> is the
+ * <code>i</code>-th filter, the last stage is the servlet. As the stages are nested, the time of a stage itself is its
+ * inclusive time minus the inclusive time of the next stage. Only used by the request thread.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class StageTimings {
+
+    private final long[] starts;
+    private final long[] inclusiveNanos;
+
+    /**
+     * <p>Constructor for StageTimings.</p>
+     *
+     * @param stages the number of filters plus one for the servlet.
+     */
+    public StageTimings(int stages) {
+        starts = new long[stages];
+        inclusiveNanos = new long[stages];
+    }
+
+    /**
+     * <p>enter.</p>
+     *
+     * @param stage a int.
+     */
+    public void enter(int stage) {
+        starts[stage] = System.nanoTime();
+    }
+
+    /**
+     * <p>exit.</p>
+     *
+     * @param stage a int.
+     */
+    public void exit(int stage) {
+        inclusiveNanos[stage] += System.nanoTime() - starts[stage];
+        starts[stage] = 0;
+    }
+
+    /**
+     * <p>getStages.</p>
+     *
+     * @return the number of stages.
+     */
+    public int getStages() {
+        return starts.length;
+    }
+
+    /**
+     * Returns the time spent in a stage itself; a stage which is still running counts up to <code>now</code>.
+     *
+     * @param stage a int.
+     * @param now the current {@link System#nanoTime()}.
+     * @return a long.
+     */
+    public long getExclusiveNanos(int stage, long now) {
+        long inclusive = getInclusiveNanos(stage, now);
+        return stage + 1 < starts.length ? inclusive - getInclusiveNanos(stage + 1, now) : inclusive;
+    }
+
+    private long getInclusiveNanos(int stage, long now) {
+        long running = starts[stage];
+        return inclusiveNanos[stage] + (running != 0 ? now - running : 0);
+    }
+
+}
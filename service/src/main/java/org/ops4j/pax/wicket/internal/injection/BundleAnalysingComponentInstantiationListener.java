@@ -36,9 +36,11 @@ import net.sf.cglib.proxy.Factory;
 
 import org.ops4j.pax.wicket.api.PaxWicketBeanAllowNull;
 import org.ops4j.pax.wicket.api.PaxWicketBeanInjectionSource;
+import org.ops4j.pax.wicket.api.ServiceFuture;
 import org.ops4j.pax.wicket.spi.OverwriteProxy;
 import org.ops4j.pax.wicket.spi.ProxyTargetLocator;
 import org.ops4j.pax.wicket.spi.ProxyTargetLocatorFactory;
+import org.ops4j.pax.wicket.util.metrics.StartupTrace;
 import org.ops4j.pax.wicket.util.proxy.LazyInitProxyFactory;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -73,18 +75,23 @@ public class BundleAnalysingComponentInstantiationListener extends AbstractPaxWi
         this.bundleContext = bundleContext;
         this.defaultInjectionSource = defaultInjectionSource;
         this.tracker = tracker;
+        long start = System.nanoTime();
+        int classes = 0;
         // TODO use ExtendedBundle instead
         Enumeration<URL> entries = bundleContext.getBundle().findEntries("/", "*.class", true);
-        if (entries == null) {
-            // bundle with no .class files (see PAXWICKET-305)
-            return;
-        }
-        while (entries.hasMoreElements()) {
-            String urlRepresentation =
-                entries.nextElement().toExternalForm().replace("bundle://.+?/", "").replace('/', '.');
-            LOGGER.trace("Found entry {} in bundle {}", urlRepresentation, bundleContext.getBundle().getSymbolicName());
-            bundleResources += urlRepresentation;
+        if (entries != null) {
+            // bundles might have no .class files (see PAXWICKET-305)
+            while (entries.hasMoreElements()) {
+                String urlRepresentation =
+                    entries.nextElement().toExternalForm().replace("bundle://.+?/", "").replace('/', '.');
+                LOGGER.trace("Found entry {} in bundle {}", urlRepresentation,
+                    bundleContext.getBundle().getSymbolicName());
+                bundleResources += urlRepresentation;
+                classes++;
+            }
         }
+        StartupTrace.get().record(StartupTrace.INJECTION_ANALYSIS, bundleContext.getBundle().getSymbolicName(), start,
+            "classes=" + classes);
     }
 
     /**
@@ -138,7 +145,7 @@ public class BundleAnalysingComponentInstantiationListener extends AbstractPaxWi
                 if (field.getType().equals(BundleContext.class)) {
                     // Is this the special BundleContext type?
                     value = injectBundleContext(realClass, field);
-                } else if (field.getType().equals(Future.class)) {
+                } else if (field.getType().equals(Future.class) || field.getType().equals(ServiceFuture.class)) {
                     value = injectFuture(field, realClass, overwrites, injectionSource);
                 } else {
                     ProxyTargetLocator locator =
@@ -169,7 +176,7 @@ public class BundleAnalysingComponentInstantiationListener extends AbstractPaxWi
         }
     }
 
-    private Future<?> injectFuture(Field field, final Class<?> page,
+    private ServiceFuture<?> injectFuture(Field field, final Class<?> page,
             Map<String, String> overwrites,
             String injectionSource) {
         Class<?> realClass = getGenericTypeArgument(field);
@@ -31,6 +31,7 @@ import org.ops4j.pax.wicket.api.PaxWicketInjector;
 import org.ops4j.pax.wicket.internal.InternalBundleDelegationProvider;
 import org.ops4j.pax.wicket.internal.extender.ExtendedBundle;
 import org.ops4j.pax.wicket.spi.ProxyTargetLocatorFactory;
+import org.ops4j.pax.wicket.util.metrics.RuntimeMetrics;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 import org.osgi.util.tracker.ServiceTracker;
@@ -44,6 +45,7 @@ public class BundleDelegatingComponentInstanciationListener implements PaxWicket
 
     private final String applicationName;
     private final BundleContext paxWicketBundleContext;
+    private final RuntimeMetrics metrics;
 
     private final Map<String, BundleAnalysingComponentInstantiationListener> listeners =
         new HashMap<String, BundleAnalysingComponentInstantiationListener>();
@@ -60,6 +62,7 @@ public class BundleDelegatingComponentInstanciationListener implements PaxWicket
     public BundleDelegatingComponentInstanciationListener(BundleContext paxWicketBundleContext, String applicationName) {
         this.paxWicketBundleContext = paxWicketBundleContext;
         this.applicationName = applicationName;
+        metrics = RuntimeMetrics.forApplication(applicationName);
         // TODO replace this by a DS injection, we just keep this for now to allow easier transition
         this.factoryTracker =
             new ServiceTracker<ProxyTargetLocatorFactory, ProxyTargetLocatorFactory>(paxWicketBundleContext,
@@ -102,10 +105,13 @@ public class BundleDelegatingComponentInstanciationListener implements PaxWicket
         if (serviceRegistration == null) {
             throw new IllegalStateException("Cannot add any bundle to listener while not started.");
         }
+        long start = System.nanoTime();
+        BundleAnalysingComponentInstantiationListener analyser = new BundleAnalysingComponentInstantiationListener(
+            bundle.getBundle().getBundleContext(), PaxWicketBeanInjectionSource.INJECTION_SOURCE_SCAN,
+            factoryTracker);
+        metrics.recordBundleScan(bundle.getID(), System.nanoTime() - start);
         synchronized (listeners) {
-            listeners.put(bundle.getBundle().getSymbolicName(), new BundleAnalysingComponentInstantiationListener(
-                    bundle.getBundle().getBundleContext(), PaxWicketBeanInjectionSource.INJECTION_SOURCE_SCAN,
-                    factoryTracker));
+            listeners.put(bundle.getBundle().getSymbolicName(), analyser);
         }
     }
 
@@ -0,0 +1,318 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal.injection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.ops4j.pax.wicket.api.ServiceFuture;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ServiceFuture} completed explicitly by {@link #complete(Object)}, {@link #fail(Throwable)} or
+ * {@link #cancel(boolean)}. Subclasses get a chance to produce the result in {@link #demanded()} whenever someone is
+ * interested in it.
+ *
+ * @param <T> the type of the result.
+ * @author nmw
+ * @version $Id: $Id
+ */
+public class CompletableServiceFuture<T> implements ServiceFuture<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompletableServiceFuture.class);
+
+    private static final int PENDING = 0;
+    private static final int SUCCEEDED = 1;
+    private static final int FAILED = 2;
+    private static final int CANCELLED = 3;
+
+    private final Object lock = new Object();
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /**
+     * Written under the lock after value and failure, so a read of a final state makes them visible.
+     */
+    private volatile int state = PENDING;
+    private T value;
+    private Throwable failure;
+
+    /**
+     * Callbacks waiting for the outcome; guarded by the lock.
+     */
+    private List<Callback<? super T>> callbacks;
+
+    /**
+     * <p>Constructor for CompletableServiceFuture.</p>
+     */
+    public CompletableServiceFuture() {
+    }
+
+    /**
+     * <p>complete.</p>
+     *
+     * @param result a T object.
+     * @return <code>true</code> if this call completed the future, <code>false</code> if it was done before.
+     */
+    public boolean complete(T result) {
+        return finish(SUCCEEDED, result, null);
+    }
+
+    /**
+     * <p>fail.</p>
+     *
+     * @param cause a {@link java.lang.Throwable} object.
+     * @return <code>true</code> if this call completed the future, <code>false</code> if it was done before.
+     */
+    public boolean fail(Throwable cause) {
+        return finish(FAILED, null, cause);
+    }
+
+    /** {@inheritDoc} */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (finish(CANCELLED, null, new CancellationException())) {
+            cancelled();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called whenever someone asks for the result while the future is not yet done; does nothing by default.
+     */
+    protected void demanded() {
+    }
+
+    /**
+     * Returns the value handed out for a successful completion; returns the completed value by default.
+     *
+     * @param completedValue the value the future was completed with.
+     * @return a T object.
+     */
+    protected T resolve(T completedValue) {
+        return completedValue;
+    }
+
+    /**
+     * Called once the future has been cancelled; does nothing by default.
+     */
+    protected void cancelled() {
+    }
+
+    /**
+     * <p>isCompleted.</p>
+     *
+     * @return <code>true</code> if the future is done; unlike {@link #isDone()} this does not call
+     *         {@link #demanded()}.
+     */
+    protected final boolean isCompleted() {
+        return state != PENDING;
+    }
+
+    /** {@inheritDoc} */
+    public boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    /**
+     * Never blocks, but gives {@link #demanded()} the chance to complete the future.
+     *
+     * @return a boolean.
+     */
+    public boolean isDone() {
+        if (state != PENDING) {
+            return true;
+        }
+        demanded();
+        return state != PENDING;
+    }
+
+    /**
+     * <p>get.</p>
+     *
+     * @return a T object.
+     * @throws java.lang.InterruptedException if any.
+     * @throws java.util.concurrent.ExecutionException if any.
+     */
+    public T get() throws InterruptedException, ExecutionException {
+        if (!isDone()) {
+            done.await();
+        }
+        return report();
+    }
+
+    /** {@inheritDoc} */
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!isDone() && !done.await(timeout, unit)) {
+            throw new TimeoutException("not done within " + timeout + " " + unit);
+        }
+        return report();
+    }
+
+    /** {@inheritDoc} */
+    public T getNow(T valueIfAbsent) {
+        if (!isDone()) {
+            return valueIfAbsent;
+        }
+        if (state == FAILED) {
+            throw new IllegalStateException("future failed", failure);
+        }
+        if (state == CANCELLED) {
+            throw (CancellationException) failure;
+        }
+        return resolve(value);
+    }
+
+    /** {@inheritDoc} */
+    public ServiceFuture<T> onComplete(Callback<? super T> callback) {
+        if (!isDone()) {
+            synchronized (lock) {
+                if (state == PENDING) {
+                    if (callbacks == null) {
+                        callbacks = new ArrayList<Callback<? super T>>(2);
+                    }
+                    callbacks.add(callback);
+                    return this;
+                }
+            }
+        }
+        notify(callback);
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    public <U> ServiceFuture<U> thenApply(final Function<? super T, ? extends U> function) {
+        final Dependent<U> result = new Dependent<U>(this);
+        onComplete(new Callback<T>() {
+            public void onSuccess(T value) {
+                try {
+                    result.complete(function.apply(value));
+                } catch (Exception e) {
+                    result.fail(e);
+                }
+            }
+
+            public void onFailure(Throwable failure) {
+                result.fail(failure);
+            }
+        });
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    public <U> ServiceFuture<U> thenCompose(final Function<? super T, ? extends ServiceFuture<U>> function) {
+        final Dependent<U> result = new Dependent<U>(this);
+        onComplete(new Callback<T>() {
+            public void onSuccess(T value) {
+                ServiceFuture<U> next;
+                try {
+                    next = function.apply(value);
+                } catch (Exception e) {
+                    result.fail(e);
+                    return;
+                }
+                if (next == null) {
+                    result.fail(new NullPointerException("function returned no future"));
+                    return;
+                }
+                result.upstream = next;
+                next.onComplete(new Callback<U>() {
+                    public void onSuccess(U nextValue) {
+                        result.complete(nextValue);
+                    }
+
+                    public void onFailure(Throwable failure) {
+                        result.fail(failure);
+                    }
+                });
+            }
+
+            public void onFailure(Throwable failure) {
+                result.fail(failure);
+            }
+        });
+        return result;
+    }
+
+    private boolean finish(int newState, T newValue, Throwable newFailure) {
+        List<Callback<? super T>> toNotify;
+        synchronized (lock) {
+            if (state != PENDING) {
+                return false;
+            }
+            value = newValue;
+            failure = newFailure;
+            state = newState;
+            toNotify = callbacks;
+            callbacks = null;
+        }
+        done.countDown();
+        if (toNotify != null) {
+            for (Callback<? super T> callback : toNotify) {
+                notify(callback);
+            }
+        }
+        return true;
+    }
+
+    private void notify(Callback<? super T> callback) {
+        try {
+            if (state == SUCCEEDED) {
+                callback.onSuccess(resolve(value));
+            } else {
+                callback.onFailure(failure);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("callback {} of future failed", callback, e);
+        }
+    }
+
+    private T report() throws ExecutionException {
+        switch (state) {
+            case SUCCEEDED:
+                return resolve(value);
+            case CANCELLED:
+                throw (CancellationException) failure;
+            default:
+                throw new ExecutionException(failure);
+        }
+    }
+
+    /**
+     * The future of a composition, asking it for the result asks the future it depends on.
+     */
+    private static final class Dependent<U> extends CompletableServiceFuture<U> {
+
+        private volatile Future<?> upstream;
+
+        private Dependent(Future<?> upstream) {
+            this.upstream = upstream;
+        }
+
+        @Override
+        protected void demanded() {
+            upstream.isDone();
+        }
+
+    }
+
+}
@@ -20,106 +20,209 @@
 package org.ops4j.pax.wicket.internal.injection;
 
 import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.ops4j.pax.wicket.spi.FutureProxyTargetLocator;
+import org.ops4j.pax.wicket.spi.NotifyingProxyTargetLocator;
 import org.ops4j.pax.wicket.spi.ProxyTarget;
 import org.ops4j.pax.wicket.spi.ProxyTargetLocator;
 import org.ops4j.pax.wicket.spi.ReleasableProxyTarget;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-public class InjectionFuture<T> implements Future<T>, Serializable {
+
+/**
+ * The future injected into {@link java.util.concurrent.Future} and {@link org.ops4j.pax.wicket.api.ServiceFuture}
+ * fields. If the locator is a {@link NotifyingProxyTargetLocator} the future completes on the service event of a
+ * matching service; it only starts watching once someone asks for the result. Other locators are asked again
+ * whenever the result is asked for. {@link #get()} never blocks but returns <code>null</code> if the target is not
+ * (yet) available, as it always did.
+ * <p>
+ * The future does not hold on to the service: being done means a matching service was available once, the service
+ * itself is looked up again (and released right away) each time the result is handed out, so a long living page
+ * never calls a service which was unregistered or replaced meanwhile but gets <code>null</code> if it is gone.
+ * </p>
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public class InjectionFuture<T> extends CompletableServiceFuture<T> implements Serializable {
 
     private static final Logger LOG = LoggerFactory.getLogger(InjectionFuture.class);
 
     private static final long serialVersionUID = 4845652300720067256L;
+
+    /**
+     * Listeners whose future was collected while they were still watching.
+     */
+    private static final ReferenceQueue<InjectionFuture<?>> COLLECTED = new ReferenceQueue<InjectionFuture<?>>();
+
     private final Class<T> type;
     private final ProxyTargetLocator locator;
 
+    /**
+     * The running watch, guarded by this; not serialized, a deserialized future starts watching again on demand.
+     */
+    private transient NotifyingProxyTargetLocator.Watch watch;
+    private transient boolean registering;
+
     private InjectionFuture(Class<T> type, ProxyTargetLocator locator) {
         this.type = type;
         this.locator = locator;
     }
 
+    /**
+     * Returns the target if it is available, without blocking.
+     *
+     * @return a T object or <code>null</code> if no target is available yet.
+     */
+    @Override
+    public T get() {
+        if (!isDone() && !tryLocate()) {
+            return null;
+        }
+        return getNow(null);
+    }
+
     /** {@inheritDoc} */
-    public boolean cancel(boolean mayInterruptIfRunning) {
-        throw new UnsupportedOperationException();
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (isDone() || tryLocate()) {
+            return getNow(null);
+        }
+        if (locator instanceof NotifyingProxyTargetLocator) {
+            return super.get(timeout, unit);
+        }
+        if (locator instanceof FutureProxyTargetLocator) {
+            Object object = null;
+            try {
+                object = getTarget(((FutureProxyTargetLocator) locator).locateProxyTarget(timeout, unit));
+            } catch (RuntimeException e) {
+                LOG.trace("locating target failed", e);
+            }
+            if (object != null) {
+                complete(null);
+                return type.cast(object);
+            }
+        }
+        throw new TimeoutException("can't locate target in given time frame");
+    }
+
+    @Override
+    protected void demanded() {
+        if (locator instanceof NotifyingProxyTargetLocator) {
+            startWatching();
+        } else {
+            tryLocate();
+        }
     }
 
     /**
-     * <p>isCancelled.</p>
-     *
-     * @return a boolean.
+     * Looks the target up again, the future does not keep it.
      */
-    public boolean isCancelled() {
-        return false;
+    @Override
+    protected T resolve(T completedValue) {
+        try {
+            return type.cast(getTarget(locator.locateProxyTarget()));
+        } catch (RuntimeException e) {
+            LOG.trace("locating target failed, it is gone again", e);
+            return null;
+        }
+    }
+
+    @Override
+    protected synchronized void cancelled() {
+        if (watch != null) {
+            watch.cancel();
+            watch = null;
+        }
+    }
+
+    private synchronized void startWatching() {
+        if (watch != null || registering || isCompleted()) {
+            return;
+        }
+        cancelCollectedWatches();
+        TargetListener listener = new TargetListener(this);
+        NotifyingProxyTargetLocator.Watch started;
+        registering = true;
+        try {
+            started = ((NotifyingProxyTargetLocator) locator).watchTarget(listener);
+        } finally {
+            registering = false;
+        }
+        // a watch which fired already is done
+        listener.watch = started;
+        watch = listener.fired ? null : started;
     }
 
     /**
-     * <p>isDone.</p>
-     *
-     * @return a boolean.
+     * Futures of discarded pages never ask for their target again; their watches are cancelled here, so waiting for a
+     * service which never shows up does not leak listeners.
      */
-    public boolean isDone() {
-        return true;
+    private static void cancelCollectedWatches() {
+        Reference<?> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            NotifyingProxyTargetLocator.Watch stale = ((TargetListener) collected).watch;
+            if (stale != null) {
+                stale.cancel();
+            }
+        }
     }
 
     /**
-     * <p>get.</p>
-     *
-     * @return a T object.
+     * Called by the locator once a target might be available.
      */
-    public T get() {
-        Object object = null;
-        try {
-            ProxyTarget target = locator.locateProxyTarget();
-            if (target != null) {
-                try {
-                    object = target.getTarget();
-                } finally {
-                    if (target instanceof ReleasableProxyTarget) {
-                        // Sadly we don't know much what is done with the target by the caller, so we just release it
-                        // right now
-                        ((ReleasableProxyTarget) target).releaseTarget();
-                    }
-                }
+    private void targetAvailable() {
+        synchronized (this) {
+            watch = null;
+            if (registering) {
+                // reported while the watch was registered by this thread, no need to watch again right now
+                tryLocate();
+                return;
             }
-        } catch (RuntimeException e) {
-            LOG.trace("locating target failed, will return null then", e);
         }
-        return type.cast(object);
+        if (!tryLocate()) {
+            // gone again meanwhile, wait for the next one
+            startWatching();
+        }
     }
 
-    /** {@inheritDoc} */
-    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+    private boolean tryLocate() {
+        if (isCompleted()) {
+            return true;
+        }
         Object object = null;
         try {
-            if (locator instanceof FutureProxyTargetLocator) {
-                FutureProxyTargetLocator futureProxyTargetLocator = (FutureProxyTargetLocator) locator;
-                ProxyTarget target = futureProxyTargetLocator.locateProxyTarget(timeout, unit);
-                try {
-                    object = target.getTarget();
-                } finally {
-                    if (target instanceof ReleasableProxyTarget) {
-                        // Sadly we don't know much what is done with the target by the caller, so we just release it
-                        // right now
-                        ((ReleasableProxyTarget) target).releaseTarget();
-                    }
-                }
-            } else {
-                // We just try to fetch it now...
-                object = get();
-            }
+            object = getTarget(locator.locateProxyTarget());
         } catch (RuntimeException e) {
-            LOG.trace("locating target failed, will return null then", e);
+            LOG.trace("locating target failed, not yet done then", e);
         }
         if (object == null) {
-            throw new TimeoutException("can't locate target in given time frame");
+            return false;
+        }
+        // only the fact that the target was there is kept, see resolve
+        complete(null);
+        return true;
+    }
+
+    private static Object getTarget(ProxyTarget target) {
+        if (target == null) {
+            return null;
+        }
+        try {
+            return target.getTarget();
+        } finally {
+            if (target instanceof ReleasableProxyTarget) {
+                // Sadly we don't know much what is done with the target by the caller, so we just release it
+                // right now
+                ((ReleasableProxyTarget) target).releaseTarget();
+            }
         }
-        return type.cast(object);
     }
 
     /**
@@ -134,4 +237,27 @@ public class InjectionFuture<T> implements Future<T>, Serializable {
         return new InjectionFuture<T>(type, locator);
     }
 
+    /**
+     * References the future weakly, so a watch of a page which is gone does not keep the page alive; once the future is
+     * collected the watch is cancelled by {@link InjectionFuture#cancelCollectedWatches()}.
+     */
+    private static final class TargetListener extends WeakReference<InjectionFuture<?>> implements Runnable {
+
+        private volatile NotifyingProxyTargetLocator.Watch watch;
+        private volatile boolean fired;
+
+        private TargetListener(InjectionFuture<?> future) {
+            super(future, COLLECTED);
+        }
+
+        public void run() {
+            fired = true;
+            InjectionFuture<?> target = get();
+            if (target != null) {
+                target.targetAvailable();
+            }
+        }
+
+    }
+
 }
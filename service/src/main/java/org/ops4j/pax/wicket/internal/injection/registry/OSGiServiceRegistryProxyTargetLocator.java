@@ -20,6 +20,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import org.ops4j.pax.wicket.spi.FutureProxyTargetLocator;
+import org.ops4j.pax.wicket.spi.NotifyingProxyTargetLocator;
 import org.ops4j.pax.wicket.spi.ProxyTarget;
 import org.ops4j.pax.wicket.spi.ReleasableProxyTarget;
 import org.osgi.framework.BundleContext;
@@ -39,7 +40,7 @@ import org.slf4j.LoggerFactory;
  * @author Christoph Läubrich
  * @version $Id: $Id
  */
-public class OSGiServiceRegistryProxyTargetLocator implements FutureProxyTargetLocator {
+public class OSGiServiceRegistryProxyTargetLocator implements FutureProxyTargetLocator, NotifyingProxyTargetLocator {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(OSGiServiceRegistryProxyTargetLocator.class);
 
@@ -192,14 +193,48 @@ public class OSGiServiceRegistryProxyTargetLocator implements FutureProxyTargetL
         return parent;
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+        OSGiServiceRegistryProxyTargetLocator other = (OSGiServiceRegistryProxyTargetLocator) obj;
+        return equal(bundleContext, other.bundleContext) && serviceInterface.equals(other.serviceInterface)
+                && equal(parent, other.parent) && equal(filterString, other.filterString);
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = serviceInterface.hashCode();
+        hash = 31 * hash + (parent == null ? 0 : parent.hashCode());
+        return 31 * hash + (filterString == null ? 0 : filterString.hashCode());
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
     /** {@inheritDoc} */
-    public ProxyTarget locateProxyTarget(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
-        String filter = filterString;
-        if (filter == null) {
-            filter = String.format("(%s=%s)", Constants.OBJECTCLASS, serviceInterface);
-        } else {
-            filter = String.format("(&(%s=%s)%s)", Constants.OBJECTCLASS, serviceInterface, filter);
+    public Watch watchTarget(Runnable listener) {
+        SharedServiceWatch.Registration watch;
+        try {
+            watch = SharedServiceWatch.watch(bundleContext, getServiceFilter(), listener);
+        } catch (InvalidSyntaxException e) {
+            throw new RuntimeException("filter creation failed", e);
+        }
+        // the service might have been registered before the listener was added
+        if (fetchReferences() != null) {
+            watch.fire();
         }
+        return watch;
+    }
+
+    /** {@inheritDoc} */
+    public ProxyTarget locateProxyTarget(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        String filter = getServiceFilter();
         try {
             final ServiceTracker<Object, Object> tracker =
                 new ServiceTracker<Object, Object>(bundleContext, bundleContext.createFilter(filter), null);
@@ -225,4 +260,12 @@ public class OSGiServiceRegistryProxyTargetLocator implements FutureProxyTargetL
         }
 
     }
+
+    private String getServiceFilter() {
+        if (filterString == null) {
+            return String.format("(%s=%s)", Constants.OBJECTCLASS, serviceInterface);
+        }
+        return String.format("(&(%s=%s)%s)", Constants.OBJECTCLASS, serviceInterface, filterString);
+    }
+
 }
@@ -0,0 +1,180 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal.injection.registry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.ops4j.pax.wicket.spi.NotifyingProxyTargetLocator.Watch;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One {@link ServiceListener} per bundle context and filter, shared by all watches waiting for the same service, so
+ * the number of framework listeners does not grow with the number of injected futures. The listener is removed as
+ * soon as no watch is waiting anymore, that is once a matching service was registered or all watches are cancelled.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+final class SharedServiceWatch implements ServiceListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SharedServiceWatch.class);
+
+    /**
+     * The running shared watches; guarded by itself, as are the registrations of each watch.
+     */
+    private static final Map<Key, SharedServiceWatch> WATCHES = new HashMap<Key, SharedServiceWatch>();
+
+    private final Key key;
+    private final Set<Registration> registrations = new LinkedHashSet<Registration>();
+
+    private SharedServiceWatch(Key key) {
+        this.key = key;
+    }
+
+    /**
+     * Runs <code>listener</code> once as soon as a service matching <code>filter</code> is registered or modified.
+     *
+     * @param context the context to listen with.
+     * @param filter a service filter.
+     * @param listener a {@link java.lang.Runnable} object.
+     * @return the watch to cancel.
+     * @throws InvalidSyntaxException if the filter is invalid.
+     */
+    static Registration watch(BundleContext context, String filter, Runnable listener)
+        throws InvalidSyntaxException {
+        Key key = new Key(context, filter);
+        Registration registration;
+        synchronized (WATCHES) {
+            SharedServiceWatch watch = WATCHES.get(key);
+            if (watch == null) {
+                watch = new SharedServiceWatch(key);
+                context.addServiceListener(watch, filter);
+                WATCHES.put(key, watch);
+            }
+            registration = new Registration(watch, listener);
+            watch.registrations.add(registration);
+        }
+        return registration;
+    }
+
+    public void serviceChanged(ServiceEvent event) {
+        if (event.getType() != ServiceEvent.REGISTERED && event.getType() != ServiceEvent.MODIFIED) {
+            return;
+        }
+        List<Registration> toNotify;
+        synchronized (WATCHES) {
+            toNotify = new ArrayList<Registration>(registrations);
+            registrations.clear();
+            close();
+        }
+        for (Registration registration : toNotify) {
+            registration.fire();
+        }
+    }
+
+    /**
+     * Removes the listener; must be called holding the lock of {@link #WATCHES}.
+     */
+    private void close() {
+        if (WATCHES.get(key) == this) {
+            WATCHES.remove(key);
+        }
+        try {
+            key.context.removeServiceListener(this);
+        } catch (IllegalStateException e) {
+            // the context is no longer valid, so are its listeners
+            LOGGER.trace("bundle context is no longer valid", e);
+        }
+    }
+
+    private void remove(Registration registration) {
+        synchronized (WATCHES) {
+            if (registrations.remove(registration) && registrations.isEmpty()) {
+                close();
+            }
+        }
+    }
+
+    /**
+     * One waiting listener.
+     */
+    static final class Registration implements Watch {
+
+        private final SharedServiceWatch watch;
+        private final Runnable listener;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Registration(SharedServiceWatch watch, Runnable listener) {
+            this.watch = watch;
+            this.listener = listener;
+        }
+
+        /**
+         * Runs the listener, unless the registration fired or was cancelled before.
+         */
+        void fire() {
+            if (done.compareAndSet(false, true)) {
+                watch.remove(this);
+                listener.run();
+            }
+        }
+
+        public void cancel() {
+            if (done.compareAndSet(false, true)) {
+                watch.remove(this);
+            }
+        }
+
+    }
+
+    private static final class Key {
+
+        private final BundleContext context;
+        private final String filter;
+
+        private Key(BundleContext context, String filter) {
+            this.context = context;
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return context == other.context && filter.equals(other.filter);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(context) + filter.hashCode();
+        }
+
+    }
+
+}
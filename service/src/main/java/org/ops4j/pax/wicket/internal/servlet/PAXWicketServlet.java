@@ -16,7 +16,6 @@
 package org.ops4j.pax.wicket.internal.servlet;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Enumeration;
 
@@ -30,10 +29,11 @@ import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletResponse;
+import net.sf.cglib.proxy.Callback;
+import net.sf.cglib.proxy.CallbackFilter;
 import net.sf.cglib.proxy.Enhancer;
-
-import net.sf.cglib.proxy.MethodInterceptor;
-import net.sf.cglib.proxy.MethodProxy;
+import net.sf.cglib.proxy.FixedValue;
+import net.sf.cglib.proxy.NoOp;
 
 import org.apache.wicket.protocol.http.IWebApplicationFactory;
 import org.apache.wicket.protocol.http.WicketFilter;
@@ -137,17 +137,7 @@ public final class PAXWicketServlet implements Servlet {
     /** {@inheritDoc} */
     public void service(ServletRequest req, ServletResponse res) throws ServletException, IOException {
         // First delegate to wicket, at last resort serve 404 error
-        wickFilter.doFilter(req, res, new FilterChain() {
-
-            public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
-                if (!response.isCommitted()) {
-                    if (response instanceof HttpServletResponse) {
-                        response.reset();
-                        ((HttpServletResponse) response).sendError(404);
-                    }
-                }
-            }
-        });
+        wickFilter.doFilter(req, res, NotFoundFilterChain.INSTANCE);
     }
 
     /**
@@ -190,7 +180,8 @@ public final class PAXWicketServlet implements Servlet {
         try {
             Enhancer e = new Enhancer();
             e.setSuperclass(applicationFactory.getFilterClass());
-            e.setCallback(new WicketFilterCallback(applicationFactory));
+            e.setCallbacks(new Callback[]{ NoOp.INSTANCE, new WicketFilterCallback(applicationFactory) });
+            e.setCallbackFilter(ApplicationFactoryMethodFilter.INSTANCE);
             setCombinedClassLoader(e, applicationFactory);
 
             PAXWicketServlet delegateServlet = new PAXWicketServlet(applicationFactory, (Filter) e.create());
@@ -219,7 +210,38 @@ public final class PAXWicketServlet implements Servlet {
 
     }
 
-    private static class WicketFilterCallback implements MethodInterceptor {
+    /**
+     * Only {@code getApplicationFactory()} needs to be replaced, all other methods (especially
+     * {@link WicketFilter#doFilter(ServletRequest, ServletResponse, FilterChain)}) are called directly.
+     */
+    private static final class ApplicationFactoryMethodFilter implements CallbackFilter {
+
+        private static final ApplicationFactoryMethodFilter INSTANCE = new ApplicationFactoryMethodFilter();
+
+        private static final int NO_OP = 0;
+        private static final int APPLICATION_FACTORY = 1;
+
+        public int accept(Method method) {
+            if (method.getName().equals("getApplicationFactory") && method.getParameterTypes().length == 0) {
+                return APPLICATION_FACTORY;
+            }
+            return NO_OP;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            // required by cglib to reuse already generated classes
+            return obj instanceof ApplicationFactoryMethodFilter;
+        }
+
+        @Override
+        public int hashCode() {
+            return ApplicationFactoryMethodFilter.class.hashCode();
+        }
+
+    }
+
+    private static class WicketFilterCallback implements FixedValue {
 
         private final IWebApplicationFactory applicationFactory;
 
@@ -227,15 +249,26 @@ public final class PAXWicketServlet implements Servlet {
             this.applicationFactory = applicationFactory;
         }
 
-        public Object intercept(Object object, Method method, Object[] args, MethodProxy methodProxy) throws Throwable {
-            method.setAccessible(true);
-            if (method.getName().equals("getApplicationFactory")) {
-                return applicationFactory;
-            }
-            try {
-                return methodProxy.invokeSuper(object, args);
-            } catch (InvocationTargetException e) {
-                throw e.getTargetException();
+        public Object loadObject() throws Exception {
+            return applicationFactory;
+        }
+
+    }
+
+    /**
+     * Called by wicket if it does not handle the request; as this chain is stateless one instance serves all
+     * requests.
+     */
+    private static final class NotFoundFilterChain implements FilterChain {
+
+        private static final NotFoundFilterChain INSTANCE = new NotFoundFilterChain();
+
+        public void doFilter(ServletRequest request, ServletResponse response) throws IOException, ServletException {
+            if (!response.isCommitted()) {
+                if (response instanceof HttpServletResponse) {
+                    response.reset();
+                    ((HttpServletResponse) response).sendError(404);
+                }
             }
         }
 
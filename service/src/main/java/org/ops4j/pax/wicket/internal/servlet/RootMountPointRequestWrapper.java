@@ -0,0 +1,77 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal.servlet;
+
+import static org.ops4j.lang.NullArgumentException.validateNotNull;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * Adjusts the paths of a request for an application mounted at the root of the http service: wicket expects an
+ * empty context and servlet path and the whole path as path info. All other calls go straight to the wrapped
+ * request.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class RootMountPointRequestWrapper extends HttpServletRequestWrapper {
+
+    /**
+     * <p>Constructor for RootMountPointRequestWrapper.</p>
+     *
+     * @param request a {@link javax.servlet.http.HttpServletRequest} object.
+     * @throws java.lang.IllegalArgumentException if any.
+     */
+    public RootMountPointRequestWrapper(HttpServletRequest request) throws IllegalArgumentException {
+        super(validateRequest(request));
+    }
+
+    private static HttpServletRequest validateRequest(HttpServletRequest request) {
+        validateNotNull(request, "request");
+        return request;
+    }
+
+    /**
+     * Checks if the given mount point denotes the root of the http service.
+     *
+     * @param mountPoint a {@link java.lang.String} object.
+     * @return true if requests for this mount point have to be wrapped.
+     */
+    public static boolean isRootMountPoint(String mountPoint) {
+        validateNotNull(mountPoint, "mountPoint");
+        return mountPoint.length() == 0 || "/".equals(mountPoint);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getContextPath() {
+        return "";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getServletPath() {
+        return "";
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String getPathInfo() {
+        return super.getServletPath();
+    }
+
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.ops4j.pax.wicket.internal.filter.StageTimings;
+
+/**
+ * Adds the <code>Server-Timing</code> header with the times measured by {@link StageTimings} so far right before the
+ * body is written, as headers can't be added once the response is committed. Wicket renders pages into a buffer
+ * before writing them, so the time of the wicket stage is still close to the complete rendering time.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+final class ServerTimingResponse extends HttpServletResponseWrapper {
+
+    static final String SERVER_TIMING = "Server-Timing";
+
+    private final StageTimings timings;
+    private final String[] stageNames;
+    private final int superFilters;
+    private boolean headerAdded;
+
+    /**
+     * @param stageNames the names of the factory filter stages, indexed by stage.
+     */
+    ServerTimingResponse(HttpServletResponse response, StageTimings timings, String[] stageNames, int superFilters) {
+        super(response);
+        this.timings = timings;
+        this.stageNames = stageNames;
+        this.superFilters = superFilters;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        addTimingHeader();
+        return super.getOutputStream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        addTimingHeader();
+        return super.getWriter();
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        addTimingHeader();
+        super.flushBuffer();
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        addTimingHeader();
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        addTimingHeader();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        addTimingHeader();
+        super.sendRedirect(location);
+    }
+
+    /**
+     * Adds the header once, if the response is not yet committed.
+     */
+    void addTimingHeader() {
+        if (headerAdded || isCommitted()) {
+            return;
+        }
+        headerAdded = true;
+        long now = System.nanoTime();
+        StringBuilder header = new StringBuilder();
+        int servlet = timings.getStages() - 1;
+        if (superFilters > 0) {
+            long nanos = 0;
+            for (int i = 0; i < superFilters; i++) {
+                nanos += timings.getExclusiveNanos(i, now);
+            }
+            appendMetric(header, "super", null, nanos);
+        }
+        for (int i = superFilters; i < servlet; i++) {
+            appendMetric(header, "f" + (i - superFilters + 1), stageNames[i], timings.getExclusiveNanos(i, now));
+        }
+        appendMetric(header, "wicket", null, timings.getExclusiveNanos(servlet, now));
+        addHeader(SERVER_TIMING, header.toString());
+    }
+
+    private static void appendMetric(StringBuilder header, String name, String description, long nanos) {
+        if (header.length() > 0) {
+            header.append(", ");
+        }
+        header.append(name);
+        if (description != null) {
+            header.append(";desc=\"").append(description.replace('"', '\'')).append('"');
+        }
+        header.append(";dur=").append(String.format(Locale.ROOT, "%.3f", nanos / 1e6d));
+    }
+
+}
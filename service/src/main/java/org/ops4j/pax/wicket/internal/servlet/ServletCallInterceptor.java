@@ -15,32 +15,33 @@
  */
 package org.ops4j.pax.wicket.internal.servlet;
 
-import static java.lang.reflect.Proxy.newProxyInstance;
-
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Proxy;
-import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
 import javax.servlet.Filter;
-import javax.servlet.FilterChain;
 import javax.servlet.Servlet;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
+import org.ops4j.pax.wicket.api.Constants;
 import org.ops4j.pax.wicket.api.SuperFilter;
 import org.ops4j.pax.wicket.internal.DefaultConfigurableFilterConfig;
+import org.ops4j.pax.wicket.internal.GenericContext;
 import org.ops4j.pax.wicket.internal.PaxWicketApplicationFactory;
 import org.ops4j.pax.wicket.internal.filter.FilterDelegator;
+import org.ops4j.pax.wicket.internal.filter.FilterFactoryReference;
 import org.ops4j.pax.wicket.internal.filter.PAXWicketFilterChain;
+import org.ops4j.pax.wicket.internal.filter.StageTimings;
+import org.ops4j.pax.wicket.util.metrics.RuntimeMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -55,15 +56,21 @@ public class ServletCallInterceptor implements Servlet {
 
     private static final Logger LOG = LoggerFactory.getLogger(ServletCallInterceptor.class);
 
-    private static final Class<?>[] REQUEST_INTERFACES = new Class[]{
-        HttpServletRequest.class
-    };
-
     private final PaxWicketApplicationFactory applicationFactory;
     private final Servlet delegateServlet;
+    private final boolean rootMountPoint;
+    private final boolean requestTiming;
+    private final boolean requestTimingHeader;
+    private final String stagePrefix;
 
     private Filter[] superFilter;
 
+    /**
+     * The stage names of the last filter array; the arrays of the {@link FilterDelegator} only change if filters come
+     * or go, so the names are only built again then.
+     */
+    private volatile StageNames stageNames;
+
     /**
      * <p>Constructor for ServletCallInterceptor.</p>
      *
@@ -73,6 +80,20 @@ public class ServletCallInterceptor implements Servlet {
     public ServletCallInterceptor(PaxWicketApplicationFactory applicationFactory, Servlet delegateServlet) {
         this.applicationFactory = applicationFactory;
         this.delegateServlet = delegateServlet;
+        rootMountPoint = RootMountPointRequestWrapper.isRootMountPoint(applicationFactory.getMountPoint());
+        Map<String, String> contextParams = applicationFactory.getContextParams();
+        requestTiming = contextParams != null && Boolean.parseBoolean(contextParams.get(Constants.REQUEST_TIMING));
+        requestTimingHeader =
+            requestTiming && Boolean.parseBoolean(contextParams.get(Constants.REQUEST_TIMING_HEADER));
+        stagePrefix = stagePrefix(applicationFactory.getMountPoint());
+    }
+
+    /**
+     * Returns the prefix of the stage names of an application, e.g. <code>/app:</code>, or <code>/:</code> if it is
+     * mounted at the root.
+     */
+    static String stagePrefix(String mountPoint) {
+        return GenericContext.normalizeMountPoint(mountPoint) + ":";
     }
 
     /** {@inheritDoc} */
@@ -167,36 +188,85 @@ public class ServletCallInterceptor implements Servlet {
     /** {@inheritDoc} */
     public void service(ServletRequest req, ServletResponse res) throws ServletException, IOException {
         // Check if we should replace this request
-        if (req instanceof HttpServletRequest) {
-            HttpServletRequest httpServletRequest = (HttpServletRequest) req;
-            if (!isProxied(httpServletRequest)) {
-                req = newProxyRequest(httpServletRequest);
-            }
+        if (rootMountPoint && req instanceof HttpServletRequest && !(req instanceof RootMountPointRequestWrapper)) {
+            req = new RootMountPointRequestWrapper((HttpServletRequest) req);
         }
         // Start the filter process...
         FilterDelegator filterDelegator = applicationFactory.getFilterDelegator();
-        if (filterDelegator != null) {
-            filterDelegator.doFilter(superFilter, req, res);
-        } else if (superFilter.length > 0) {
-            FilterChain chain = new PAXWicketFilterChain(Arrays.asList(superFilter), delegateServlet);
-            chain.doFilter(req, res);
+        Filter[] filters = filterDelegator != null ? filterDelegator.getFilters(superFilter) : superFilter;
+        if (requestTiming) {
+            serviceTimed(req, res, filters);
+        } else if (filters.length > 0) {
+            new PAXWicketFilterChain(filters, delegateServlet).doFilter(req, res);
         } else {
+            // fast path: nothing to filter, go straight to wicket
             delegateServlet.service(req, res);
         }
     }
 
     /**
-     * Check if this request is already proxied by pax wicket
-     * 
-     * @param httpServletRequest
-     * @return true if the instance is a proxy and invocationhandler is a {@link ServletRequestInvocationHandler}
+     * Runs the request like {@link #service(ServletRequest, ServletResponse)} does and records the time spent in each
+     * stage of the filter chain.
      */
-    private boolean isProxied(HttpServletRequest httpServletRequest) {
-        if (Proxy.isProxyClass(httpServletRequest.getClass())) {
-            InvocationHandler handler = Proxy.getInvocationHandler(httpServletRequest);
-            return handler instanceof ServletRequestInvocationHandler;
+    private void serviceTimed(ServletRequest req, ServletResponse res, Filter[] filters) throws ServletException,
+        IOException {
+        StageNames names = getStageNames(filters);
+        StageTimings timings = new StageTimings(filters.length + 1);
+        ServerTimingResponse timingResponse = null;
+        if (requestTimingHeader && res instanceof HttpServletResponse) {
+            timingResponse =
+                new ServerTimingResponse((HttpServletResponse) res, timings, names.names, superFilter.length);
+            res = timingResponse;
+        }
+        boolean failed = true;
+        long start = System.nanoTime();
+        try {
+            if (filters.length > 0) {
+                new PAXWicketFilterChain(filters, delegateServlet, timings).doFilter(req, res);
+            } else {
+                timings.enter(0);
+                try {
+                    delegateServlet.service(req, res);
+                } finally {
+                    timings.exit(0);
+                }
+            }
+            if (timingResponse != null) {
+                // nothing was written (e.g. a 304), the header can still be added
+                timingResponse.addTimingHeader();
+            }
+            failed = false;
+        } finally {
+            recordTimings(names, timings, System.nanoTime() - start, failed);
         }
-        return false;
+    }
+
+    private void recordTimings(StageNames names, StageTimings timings, long totalNanos, boolean failed) {
+        RuntimeMetrics metrics = RuntimeMetrics.forApplication(applicationFactory.getApplicationName());
+        long now = System.nanoTime();
+        int servlet = timings.getStages() - 1;
+        int superFilters = Math.min(superFilter.length, servlet);
+        if (superFilters > 0) {
+            long nanos = 0;
+            for (int i = 0; i < superFilters; i++) {
+                nanos += timings.getExclusiveNanos(i, now);
+            }
+            metrics.recordRequestStage(stagePrefix + "superFilters", nanos, failed);
+        }
+        for (int i = superFilters; i < servlet; i++) {
+            metrics.recordRequestStage(names.stages[i], timings.getExclusiveNanos(i, now), failed);
+        }
+        metrics.recordRequestStage(names.stages[servlet], timings.getExclusiveNanos(servlet, now), failed);
+        metrics.recordRequestStage(names.total, totalNanos, failed);
+    }
+
+    private StageNames getStageNames(Filter[] filters) {
+        StageNames names = stageNames;
+        if (names == null || names.filters != filters) {
+            names = new StageNames(filters, stagePrefix);
+            stageNames = names;
+        }
+        return names;
     }
 
     /**
@@ -224,11 +294,31 @@ public class ServletCallInterceptor implements Servlet {
         delegateServlet.destroy();
     }
 
-    private HttpServletRequest newProxyRequest(HttpServletRequest request) {
-        ClassLoader loader = getClass().getClassLoader();
-        ServletRequestInvocationHandler ih =
-                new ServletRequestInvocationHandler(request, applicationFactory.getMountPoint());
-        return (HttpServletRequest) newProxyInstance(loader, REQUEST_INTERFACES, ih);
+    /**
+     * Filters of factories are named after the filter the factory created, not the wrapper managing its life cycle.
+     */
+    static final class StageNames {
+
+        private final Filter[] filters;
+        /** The simple class names of the filters, for the <code>Server-Timing</code> header. */
+        final String[] names;
+        /** The metric names of each stage, the last one is wicket. */
+        final String[] stages;
+        final String total;
+
+        StageNames(Filter[] filters, String prefix) {
+            this.filters = filters;
+            names = new String[filters.length];
+            stages = new String[filters.length + 1];
+            for (int i = 0; i < filters.length; i++) {
+                Class<?> filterClass = FilterFactoryReference.unwrap(filters[i]).getClass();
+                names[i] = filterClass.getSimpleName();
+                stages[i] = prefix + "filter:" + filterClass.getName();
+            }
+            stages[filters.length] = prefix + "wicket";
+            total = prefix + "total";
+        }
+
     }
 
 }
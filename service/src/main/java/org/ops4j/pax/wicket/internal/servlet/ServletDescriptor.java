@@ -21,10 +21,10 @@ import java.util.Map;
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
 
+import org.ops4j.pax.wicket.internal.Activator;
 import org.ops4j.pax.wicket.internal.GenericContext;
 import org.ops4j.pax.wicket.internal.util.MapAsDictionary;
 import org.osgi.framework.Bundle;
-import org.osgi.service.http.HttpContext;
 import org.osgi.service.http.HttpService;
 import org.osgi.service.http.NamespaceException;
 import org.slf4j.Logger;
@@ -41,7 +41,7 @@ public final class ServletDescriptor {
     private static final Logger LOG = LoggerFactory.getLogger(ServletDescriptor.class);
 
     private final Servlet servlet;
-    private final HttpContext httpContext;
+    private final GenericContext httpContext;
     private final Dictionary<?, ?> contextParams;
     private final String alias;
     private HttpService service;
@@ -334,8 +334,15 @@ public final class ServletDescriptor {
             if (this.service == null) {
                 LOG.info("register new servlet on mountpoint {} with contextParams {}", getAlias(),
                         contextParams);
-                service.registerServlet(getAlias(), servlet, contextParams, httpContext);
-                this.service = service;
+                httpContext.startListening(Activator.getBundleContext());
+                try {
+                    service.registerServlet(getAlias(), servlet, contextParams, httpContext);
+                    this.service = service;
+                } finally {
+                    if (this.service == null) {
+                        httpContext.stopListening();
+                    }
+                }
             } else {
                 if (this.service != service) {
                     throw new IllegalStateException("the servlet is already registered with another HttpService");
@@ -351,6 +358,7 @@ public final class ServletDescriptor {
         if (this.service != null) {
             this.service.unregister(getAlias());
             this.service = null;
+            httpContext.stopListening();
         }
     }
 
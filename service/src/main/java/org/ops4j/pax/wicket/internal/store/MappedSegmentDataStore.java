@@ -0,0 +1,423 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal.store;
+
+import static org.ops4j.lang.NullArgumentException.validateNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.wicket.pageStore.IDataStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link IDataStore} keeping the pages of all sessions in a few large memory mapped segment files instead of one
+ * file per session. Pages are appended to the current segment; an in memory index maps (session, page id) to the
+ * segment, offset and length of the page.
+ * <p>
+ * Once all segments are written, the oldest segment is compacted in place: its live pages are moved to the start of
+ * the segment, and if that does not free at least a quarter of it, its least recently stored pages are dropped. As
+ * in the {@link org.apache.wicket.pageStore.DiskDataStore} the pages of a session are limited to a maximum size,
+ * storing beyond it drops the oldest pages of the session.
+ * </p>
+ * <p>
+ * The index only lives in memory, so unlike the disk data store pages don't survive a restart.
+ * </p>
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public class MappedSegmentDataStore implements IDataStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedSegmentDataStore.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private static final int COMPACTION_CHUNK = 64 * 1024;
+
+    private final File folder;
+    private final int segmentSize;
+    private final long maxSizePerSession;
+
+    private final Segment[] segments;
+    private int currentSegment;
+
+    /** Guards the index and the write positions; reads only copy out of the mapped buffers. */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, SessionPages> sessions = new HashMap<String, SessionPages>();
+
+    /**
+     * <p>Constructor for MappedSegmentDataStore.</p>
+     *
+     * @param folder the folder for the segment files; existing segment files are replaced.
+     * @param segmentCount number of segment files.
+     * @param segmentSize size of each segment file in bytes.
+     * @param maxSizePerSession maximum size in bytes of all pages of a session.
+     * @throws java.io.IOException if the segment files can't be created.
+     */
+    public MappedSegmentDataStore(File folder, int segmentCount, int segmentSize, long maxSizePerSession)
+        throws IOException {
+        validateNotNull(folder, "folder");
+        if (segmentCount < 2) {
+            throw new IllegalArgumentException("At least two segments are required");
+        }
+        this.folder = folder;
+        this.segmentSize = segmentSize;
+        this.maxSizePerSession = maxSizePerSession;
+        folder.mkdirs();
+        segments = new Segment[segmentCount];
+        try {
+            for (int i = 0; i < segmentCount; i++) {
+                segments[i] = new Segment(new File(folder, SEGMENT_PREFIX + i), segmentSize);
+            }
+        } catch (IOException e) {
+            destroy();
+            throw e;
+        }
+        LOGGER.info("Storing pages in {} segments of {} bytes in {}", new Object[]{ segmentCount, segmentSize,
+            folder });
+    }
+
+    /** {@inheritDoc} */
+    public byte[] getData(String sessionId, int id) {
+        lock.readLock().lock();
+        try {
+            SessionPages pages = sessions.get(sessionId);
+            if (pages == null) {
+                return null;
+            }
+            Page page = pages.get(id);
+            if (page == null) {
+                return null;
+            }
+            return page.segment.read(page.offset, page.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void storeData(String sessionId, int id, byte[] data) {
+        if (data.length > segmentSize || data.length > maxSizePerSession) {
+            LOGGER.warn("Page {} of session {} has {} bytes and is too large to be stored", new Object[]{ id,
+                sessionId, data.length });
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            SessionPages pages = sessions.get(sessionId);
+            if (pages == null) {
+                pages = new SessionPages(sessionId);
+                sessions.put(sessionId, pages);
+            }
+            pages.remove(id);
+            while (pages.size + data.length > maxSizePerSession) {
+                pages.removeOldest();
+            }
+            Segment segment = reserve(data.length);
+            Page page = new Page(pages, id, segment, segment.writePosition, data.length);
+            segment.write(page, data);
+            pages.put(page);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void removeData(String sessionId, int id) {
+        lock.writeLock().lock();
+        try {
+            SessionPages pages = sessions.get(sessionId);
+            if (pages != null) {
+                pages.remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void removeData(String sessionId) {
+        lock.writeLock().lock();
+        try {
+            SessionPages pages = sessions.remove(sessionId);
+            if (pages != null) {
+                pages.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void destroy() {
+        lock.writeLock().lock();
+        try {
+            sessions.clear();
+            for (Segment segment : segments) {
+                if (segment != null) {
+                    segment.close();
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public boolean isReplicated() {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    public boolean canBeAsynchronous() {
+        return true;
+    }
+
+    /**
+     * <p>Getter for the field <code>folder</code>.</p>
+     *
+     * @return a {@link java.io.File} object.
+     */
+    public File getFolder() {
+        return folder;
+    }
+
+    /**
+     * Finds a segment with room for <code>length</code> bytes, moving on to (and compacting) the oldest segment once
+     * the current one is full. Must be called with the write lock held.
+     */
+    private Segment reserve(int length) {
+        Segment segment = segments[currentSegment];
+        if (segment.remaining() >= length) {
+            return segment;
+        }
+        currentSegment = (currentSegment + 1) % segments.length;
+        segment = segments[currentSegment];
+        segment.compact(Math.max(length, segmentSize / 4));
+        return segment;
+    }
+
+    /**
+     * The pages of one session in the order they were stored.
+     */
+    private static final class SessionPages {
+
+        private final String sessionId;
+        private final LinkedHashMap<Integer, Page> pages = new LinkedHashMap<Integer, Page>();
+        private long size;
+
+        private SessionPages(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        private Page get(int id) {
+            return pages.get(id);
+        }
+
+        private void put(Page page) {
+            pages.put(page.id, page);
+            size += page.length;
+        }
+
+        private void remove(int id) {
+            Page page = pages.remove(id);
+            if (page != null) {
+                size -= page.length;
+                page.segment.release(page);
+            }
+        }
+
+        private void removeOldest() {
+            Iterator<Page> iterator = pages.values().iterator();
+            Page page = iterator.next();
+            iterator.remove();
+            size -= page.length;
+            page.segment.release(page);
+        }
+
+        /** Called by a segment which dropped the page while compacting. */
+        private void dropped(Page page) {
+            if (pages.get(page.id) == page) {
+                pages.remove(page.id);
+                size -= page.length;
+            }
+        }
+
+        private void clear() {
+            for (Page page : pages.values()) {
+                page.segment.release(page);
+            }
+            pages.clear();
+            size = 0;
+        }
+
+        @Override
+        public String toString() {
+            return sessionId;
+        }
+
+    }
+
+    private static final class Page {
+
+        private final SessionPages session;
+        private final int id;
+        private final Segment segment;
+        private final int length;
+        private int offset;
+
+        private Page(SessionPages session, int id, Segment segment, int offset, int length) {
+            this.session = session;
+            this.id = id;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+    }
+
+    private static final class Segment {
+
+        private final File file;
+        private final RandomAccessFile randomAccessFile;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        /** Live pages in offset order (pages are appended, compaction keeps the order). */
+        private final Set<Page> pages = new LinkedHashSet<Page>();
+        private int writePosition;
+
+        private Segment(File file, int size) throws IOException {
+            this.file = file;
+            if (file.exists() && !file.delete()) {
+                LOGGER.debug("Could not delete old segment {}, it is overwritten", file);
+            }
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.setLength(size);
+                channel = randomAccessFile.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException e) {
+                randomAccessFile.close();
+                throw e;
+            }
+        }
+
+        private int remaining() {
+            return buffer.capacity() - writePosition;
+        }
+
+        private void write(Page page, byte[] data) {
+            ByteBuffer target = buffer.duplicate();
+            target.position(page.offset);
+            target.put(data);
+            writePosition += data.length;
+            pages.add(page);
+        }
+
+        private byte[] read(int offset, int length) {
+            ByteBuffer source = buffer.duplicate();
+            source.position(offset);
+            byte[] data = new byte[length];
+            source.get(data);
+            return data;
+        }
+
+        private void release(Page page) {
+            pages.remove(page);
+        }
+
+        /**
+         * Moves the live pages to the start of the segment and drops the oldest ones until at least
+         * <code>required</code> bytes are free.
+         */
+        private void compact(int required) {
+            List<Page> live = new ArrayList<Page>(pages);
+            int liveBytes = 0;
+            for (Page page : live) {
+                liveBytes += page.length;
+            }
+            int dropped = 0;
+            Iterator<Page> iterator = live.iterator();
+            while (buffer.capacity() - liveBytes < required && iterator.hasNext()) {
+                Page page = iterator.next();
+                iterator.remove();
+                pages.remove(page);
+                page.session.dropped(page);
+                liveBytes -= page.length;
+                dropped++;
+            }
+            int position = 0;
+            ByteBuffer source = buffer.duplicate();
+            ByteBuffer target = buffer.duplicate();
+            byte[] chunk = null;
+            for (Page page : live) {
+                if (page.offset != position) {
+                    // chunks are moved towards the start, so a chunk never overwrites one which is not yet moved
+                    if (chunk == null) {
+                        chunk = new byte[COMPACTION_CHUNK];
+                    }
+                    source.position(page.offset);
+                    target.position(position);
+                    for (int moved = 0; moved < page.length; moved += chunk.length) {
+                        int count = Math.min(chunk.length, page.length - moved);
+                        source.get(chunk, 0, count);
+                        target.put(chunk, 0, count);
+                    }
+                    page.offset = position;
+                }
+                position += page.length;
+            }
+            writePosition = position;
+            if (dropped > 0) {
+                LOGGER.debug("Dropped {} pages while compacting {}", dropped, file);
+            }
+        }
+
+        private void close() {
+            pages.clear();
+            try {
+                channel.close();
+                randomAccessFile.close();
+            } catch (IOException e) {
+                LOGGER.debug("Could not close segment {}", file, e);
+            }
+            // the mapping is only released once the buffer is collected, which some platforms require for deleting
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal.util;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registers the per application MBeans of pax wicket with the platform MBean server; failures are logged but never
+ * prevent an application from starting.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class PlatformMBeans {
+
+    /** Constant <code>DOMAIN="org.ops4j.pax.wicket"</code> */
+    public static final String DOMAIN = "org.ops4j.pax.wicket";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PlatformMBeans.class);
+
+    private PlatformMBeans() {
+    }
+
+    /**
+     * Registers <code>mbean</code> as <code>org.ops4j.pax.wicket:type=&lt;type&gt;,application=&lt;name&gt;</code>.
+     *
+     * @param mbean a standard MBean or MXBean.
+     * @param type a {@link java.lang.String} object.
+     * @param applicationName a {@link java.lang.String} object.
+     * @return the name the MBean is registered with or <code>null</code> if the registration failed.
+     */
+    public static ObjectName register(Object mbean, String type, String applicationName) {
+        try {
+            return register(mbean,
+                new ObjectName(DOMAIN + ":type=" + type + ",application=" + ObjectName.quote(applicationName)));
+        } catch (JMException e) {
+            LOGGER.warn("Could not register {} MBean for application {}", new Object[]{ type, applicationName, e });
+            return null;
+        }
+    }
+
+    /**
+     * Registers <code>mbean</code> as <code>org.ops4j.pax.wicket:type=&lt;type&gt;</code>, for MBeans not bound to
+     * one application.
+     *
+     * @param mbean a standard MBean or MXBean.
+     * @param type a {@link java.lang.String} object.
+     * @return the name the MBean is registered with or <code>null</code> if the registration failed.
+     */
+    public static ObjectName register(Object mbean, String type) {
+        try {
+            return register(mbean, new ObjectName(DOMAIN + ":type=" + type));
+        } catch (JMException e) {
+            LOGGER.warn("Could not register {} MBean", type, e);
+            return null;
+        }
+    }
+
+    private static ObjectName register(Object mbean, ObjectName name) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(name)) {
+            // left over by an application or bundle which was not stopped properly
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(mbean, name);
+        return name;
+    }
+
+    /**
+     * <p>unregister.</p>
+     *
+     * @param name the name returned by {@link #register(Object, String, String)}, might be <code>null</code>.
+     */
+    public static void unregister(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Could not unregister MBean {}", name, e);
+        }
+    }
+
+}
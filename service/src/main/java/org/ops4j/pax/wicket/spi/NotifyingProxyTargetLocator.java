@@ -0,0 +1,49 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.spi;
+
+/**
+ * A locator that can tell when a proxy target becomes available, so injected futures complete on the event instead
+ * of blocking a thread until the target shows up.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public interface NotifyingProxyTargetLocator extends ProxyTargetLocator {
+
+    /**
+     * Runs <code>listener</code> once as soon as a target might be located; immediately (on the calling thread) if one
+     * is available already. The listener should call {@link #locateProxyTarget()} and watch again if the target is
+     * gone meanwhile.
+     *
+     * @param listener a {@link java.lang.Runnable} object.
+     * @return the {@link org.ops4j.pax.wicket.spi.NotifyingProxyTargetLocator.Watch} to stop watching.
+     */
+    Watch watchTarget(Runnable listener);
+
+    /**
+     * A running {@link NotifyingProxyTargetLocator#watchTarget(Runnable)}.
+     */
+    interface Watch {
+
+        /**
+         * Stops watching, the listener won't be called afterwards.
+         */
+        void cancel();
+
+    }
+
+}
@@ -140,6 +140,39 @@ public abstract class AbstractProxyTargetLocator<Container> implements ProxyTarg
         return parent;
     }
 
+    /**
+     * Locators are equal if they locate the same bean for the same page, which allows pax wicket to share them (and
+     * their proxies within a page) after deserialization.
+     *
+     * @param obj a {@link java.lang.Object} object.
+     * @return a boolean.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != getClass()) {
+            return false;
+        }
+        AbstractProxyTargetLocator<?> other = (AbstractProxyTargetLocator<?>) obj;
+        return equal(bundleContext, other.bundleContext) && equal(beanName, other.beanName)
+                && equal(beanType, other.beanType) && equal(parent, other.parent)
+                && equal(overwrites, other.overwrites);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode() {
+        int hash = beanName == null ? 0 : beanName.hashCode();
+        hash = 31 * hash + (beanType == null ? 0 : beanType.hashCode());
+        return 31 * hash + (parent == null ? 0 : parent.hashCode());
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
     /**
      * <p>createStrategy.</p>
      *
@@ -50,9 +50,10 @@ public class ComponentProxy implements OverwriteProxy, Serializable {
             // swallow finalize call
             return null;
         } else if (isEqualsMethod(method)) {
-            return equals(args[0]) ? Boolean.TRUE : Boolean.FALSE;
+            // identity of the proxied object, not of this callback
+            return object == args[0] ? Boolean.TRUE : Boolean.FALSE;
         } else if (isHashCodeMethod(method)) {
-            return new Integer(hashCode());
+            return new Integer(System.identityHashCode(object));
         } else if (isToStringMethod(method)) {
             return toString();
         } else if (isGetOverwritesMethod(method)) {
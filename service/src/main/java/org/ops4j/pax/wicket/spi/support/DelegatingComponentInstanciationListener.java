@@ -34,6 +34,7 @@ import net.sf.cglib.proxy.Factory;
 
 import org.ops4j.pax.wicket.api.InjectorHolder;
 import org.ops4j.pax.wicket.api.PaxWicketInjector;
+import org.ops4j.pax.wicket.util.metrics.RuntimeMetrics;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Filter;
 import org.osgi.framework.InvalidSyntaxException;
@@ -48,6 +49,7 @@ public final class DelegatingComponentInstanciationListener extends AbstractPaxW
     private final BundleContext context;
     private final String applicationName;
     private final List<PaxWicketInjector> resolvers;
+    private final RuntimeMetrics metrics;
 
     private ComponentInstanciationListenerTracker tracker;
 
@@ -65,7 +67,9 @@ public final class DelegatingComponentInstanciationListener extends AbstractPaxW
         this.context = context;
         this.applicationName = applicationName;
         resolvers = new ArrayList<PaxWicketInjector>();
+        metrics = RuntimeMetrics.forApplication(applicationName);
 
+        // registered last: the concurrent registry publishes the listener with all fields set, no lock needed
         InjectorHolder.setInjector(applicationName, this);
     }
 
@@ -109,6 +113,17 @@ public final class DelegatingComponentInstanciationListener extends AbstractPaxW
                     .getClass().getName());
             return;
         }
+        long start = System.nanoTime();
+        boolean injected = false;
+        try {
+            injectAnnotatedFields(toInject, toHandle, foundAnnotation);
+            injected = true;
+        } finally {
+            metrics.recordInjection(toInject.getClass(), System.nanoTime() - start, !injected);
+        }
+    }
+
+    private void injectAnnotatedFields(Object toInject, Class<?> toHandle, Set<String> foundAnnotation) {
         Set<String> handledAnnotations = new HashSet<String>();
         synchronized (resolvers) {
             Class<?> currentAnalysingClass = toHandle;
@@ -19,9 +19,15 @@
  */
 package org.ops4j.pax.wicket.spi.support;
 
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
 import java.util.Map;
 
+import net.sf.cglib.proxy.Callback;
 import net.sf.cglib.proxy.Enhancer;
+import net.sf.cglib.proxy.Factory;
 
 import org.apache.wicket.markup.html.WebPage;
 import org.apache.wicket.request.mapper.parameter.PageParameters;
@@ -141,10 +147,26 @@ public class PageFactoryDecorator implements PageFactory<WebPage>, InjectionAwar
 
     private static class InternalPageFactory extends AbstractPageFactory<WebPage> {
 
+        private static final Class<?>[] NO_ARGUMENT_TYPES = new Class<?>[0];
+        private static final Object[] NO_ARGUMENTS = new Object[0];
+        private static final Class<?>[] PAGE_PARAMETERS_ARGUMENT_TYPES = new Class<?>[]{ PageParameters.class };
+
         private final Class<WebPage> pageClass;
         private final Map<String, String> overwrites;
         private final String injectionSource;
 
+        /**
+         * The generated subclass of {@link #pageClass}; created once on the first page request.
+         */
+        private volatile Class<?> proxyClass;
+
+        /**
+         * Any instance of {@link #proxyClass} allows to create further instances via
+         * {@link Factory#newInstance(Class[], Object[], Callback[])} without any reflection. It is referenced weakly to
+         * not keep a page (and all of its components) alive only because it served as template.
+         */
+        private volatile WeakReference<Factory> prototype;
+
         public InternalPageFactory(BundleContext bundleContext, String pageId, String applicationName, String pageName,
                 Class<WebPage> pageClass, Map<String, String> overwrites, String injectionSource)
             throws IllegalArgumentException {
@@ -156,25 +178,73 @@ public class PageFactoryDecorator implements PageFactory<WebPage>, InjectionAwar
 
         public WebPage createPage(PageParameters params) {
             if (params != null && !params.isEmpty()) {
-                try {
-                    Enhancer e = new Enhancer();
-                    e.setClassLoader(PageFactoryDecorator.class.getClassLoader());
-                    e.setSuperclass(pageClass);
-                    e.setCallback(new ComponentProxy(injectionSource, overwrites));
-                    return (WebPage) e.create(new Class[]{ PageParameters.class }, new Object[]{ params });
-                } catch (Exception e) {
-                    throw new RuntimeException(String.format("Creation of %s not possible", pageClass.getName()), e);
-                }
+                return newPage(PAGE_PARAMETERS_ARGUMENT_TYPES, new Object[]{ params });
+            }
+            return newPage(NO_ARGUMENT_TYPES, NO_ARGUMENTS);
+        }
+
+        private WebPage newPage(Class<?>[] argumentTypes, Object[] arguments) {
+            WeakReference<Factory> prototypeReference = prototype;
+            Factory factory = prototypeReference == null ? null : prototypeReference.get();
+            if (factory != null) {
+                return (WebPage) factory.newInstance(argumentTypes, arguments, newCallbacks());
+            }
+            Factory page = instantiateProxyClass(argumentTypes, arguments);
+            prototype = new WeakReference<Factory>(page);
+            return (WebPage) page;
+        }
+
+        private Factory instantiateProxyClass(Class<?>[] argumentTypes, Object[] arguments) {
+            Class<?> enhancedClass = getProxyClass();
+            Constructor<?> constructor;
+            try {
+                constructor = enhancedClass.getConstructor(argumentTypes);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(String.format("Creation of %s not possible; no constructor for %s",
+                    pageClass.getName(), Arrays.toString(argumentTypes)), e);
             }
+            Enhancer.registerCallbacks(enhancedClass, newCallbacks());
             try {
+                return (Factory) constructor.newInstance(arguments);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    // e.g. RestartResponseException thrown by the page constructor has to reach wicket untouched
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(String.format("Creation of %s not possible", pageClass.getName()),
+                    cause);
+            } catch (InstantiationException e) {
+                throw new IllegalStateException(String.format("Creation of %s not possible", pageClass.getName()), e);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(String.format("Creation of %s not possible", pageClass.getName()), e);
+            } finally {
+                Enhancer.registerCallbacks(enhancedClass, null);
+            }
+        }
+
+        /**
+         * Every page gets its own callback; the proxy is serialized with the page and must not be shared between
+         * pages.
+         */
+        private Callback[] newCallbacks() {
+            return new Callback[]{ new ComponentProxy(injectionSource, overwrites) };
+        }
+
+        private Class<?> getProxyClass() {
+            Class<?> enhancedClass = proxyClass;
+            if (enhancedClass == null) {
                 Enhancer e = new Enhancer();
-                e.setSuperclass(pageClass);
                 e.setClassLoader(PageFactoryDecorator.class.getClassLoader());
-                e.setCallback(new ComponentProxy(injectionSource, overwrites));
-                return (WebPage) e.create();
-            } catch (Exception e) {
-                throw new RuntimeException(String.format("Creation of %s not possible", pageClass.getName()), e);
+                e.setSuperclass(pageClass);
+                e.setCallbackType(ComponentProxy.class);
+                enhancedClass = e.createClass();
+                proxyClass = enhancedClass;
             }
+            return enhancedClass;
         }
 
         public Class<WebPage> getPageClass() {
@@ -0,0 +1,111 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter striped over several cells, so threads incrementing it concurrently rarely touch the same cache line; the
+ * value is the sum of the cells. Reads are not atomic with respect to concurrent increments, which is fine for
+ * statistics.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class Counter {
+
+    /** Cells are spread this many longs apart to keep them on different cache lines. */
+    private static final int PADDING = 8;
+
+    private static final int STRIPES = stripes(64);
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Adds one.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * <p>add.</p>
+     *
+     * @param delta a long.
+     */
+    public void add(long delta) {
+        cells.addAndGet(cell(), delta);
+    }
+
+    /**
+     * <p>get.</p>
+     *
+     * @return the current sum.
+     */
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the current sum and resets the counter; increments racing with the call are either part of the
+     * returned sum or remain in the counter.
+     *
+     * @return a long.
+     */
+    public long getAndReset() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.getAndSet(i * PADDING, 0);
+        }
+        return sum;
+    }
+
+    /**
+     * Sets the counter to zero.
+     */
+    public void reset() {
+        getAndReset();
+    }
+
+    private static int cell() {
+        return stripe(STRIPES) * PADDING;
+    }
+
+    /**
+     * Returns the number of stripes to spread concurrent updates over: a power of two, twice the number of processors
+     * but at most <code>max</code>.
+     */
+    static int stripes(int max) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < processors * 2 && stripes < max) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    /**
+     * Returns the stripe the current thread updates.
+     */
+    static int stripe(int stripes) {
+        return (int) (Thread.currentThread().getId() & (stripes - 1));
+    }
+
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram with power of two buckets: bucket <code>i</code> counts the values <code>v</code> with
+ * <code>2^(i-1) &lt;= v &lt; 2^i</code>, bucket 0 counts zeros (and negative values). Cheap enough to record on every
+ * request, precise enough to tell a 10 KB page from a 1 MB one. Like {@link Counter} the sum and the buckets are
+ * striped, so concurrent threads rarely update the same cache line; the count is the sum of the buckets.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class Histogram {
+
+    /** Constant <code>BUCKETS=48</code> */
+    public static final int BUCKETS = 48;
+
+    /** Longs per stripe: the sum followed by the buckets, padded to a multiple of a cache line. */
+    private static final int STRIDE = 56;
+
+    /** Fewer stripes than a {@link Counter}, a histogram is much larger. */
+    private static final int STRIPES = Counter.stripes(8);
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIDE);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * <p>record.</p>
+     *
+     * @param value a long.
+     */
+    public void record(long value) {
+        int stripe = Counter.stripe(STRIPES) * STRIDE;
+        cells.incrementAndGet(stripe + 1 + bucketOf(value));
+        if (value > 0) {
+            cells.addAndGet(stripe, value);
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+    }
+
+    /**
+     * <p>Getter for the field <code>count</code>.</p>
+     *
+     * @return number of recorded values.
+     */
+    public long getCount() {
+        long count = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                count += cells.get(stripe * STRIDE + 1 + i);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * <p>Getter for the field <code>sum</code>.</p>
+     *
+     * @return sum of all recorded values.
+     */
+    public long getSum() {
+        long sum = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            sum += cells.get(stripe * STRIDE);
+        }
+        return sum;
+    }
+
+    /**
+     * <p>Getter for the field <code>max</code>.</p>
+     *
+     * @return largest recorded value.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * <p>getMean.</p>
+     *
+     * @return mean of all recorded values, <code>0</code> if none was recorded.
+     */
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0d : (double) getSum() / n;
+    }
+
+    /**
+     * Estimates a percentile as the upper bound of the bucket it falls into.
+     *
+     * @param percentile between 0 and 100.
+     * @return a long.
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = getBuckets();
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * Math.min(100d, Math.max(0d, percentile)) / 100d);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank && counts[i] != 0) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * <p>getBuckets.</p>
+     *
+     * @return a copy of the bucket counts, see {@link #upperBound(int)} for the bucket limits.
+     */
+    public long[] getBuckets() {
+        long[] copy = new long[BUCKETS];
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            for (int i = 0; i < BUCKETS; i++) {
+                copy[i] += cells.get(stripe * STRIDE + 1 + i);
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Forgets all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    /**
+     * <p>upperBound.</p>
+     *
+     * @param bucket a bucket index.
+     * @return the largest value counted by the bucket.
+     */
+    public static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : (1L << bucket) - 1;
+    }
+
+    private static int bucketOf(long value) {
+        if (value <= 0) {
+            return 0;
+        }
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+    }
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts events and estimates their rate per second as an exponentially weighted moving average over about a minute,
+ * like the load average of unix systems. The average is only updated by callers marking or reading the meter, so an
+ * idle meter costs nothing.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class Meter {
+
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    /** Weight of a new tick for a one minute average with five second ticks. */
+    private static final double ALPHA = 1 - Math.exp(-5d / 60d);
+
+    private final Counter count = new Counter();
+    private final Counter uncounted = new Counter();
+    private final AtomicLong lastTick = new AtomicLong(System.nanoTime());
+
+    private volatile double rate;
+    private volatile boolean initialized;
+
+    /**
+     * Records one event.
+     */
+    public void mark() {
+        tickIfNecessary();
+        count.increment();
+        uncounted.increment();
+    }
+
+    /**
+     * <p>getCount.</p>
+     *
+     * @return number of events recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * <p>getRate.</p>
+     *
+     * @return events per second, averaged over about the last minute.
+     */
+    public double getRate() {
+        tickIfNecessary();
+        return rate;
+    }
+
+    /**
+     * Forgets all events.
+     */
+    public void reset() {
+        count.reset();
+        uncounted.reset();
+        rate = 0;
+        initialized = false;
+    }
+
+    private void tickIfNecessary() {
+        long last = lastTick.get();
+        long now = System.nanoTime();
+        long age = now - last;
+        if (age < TICK_INTERVAL) {
+            return;
+        }
+        long ticks = age / TICK_INTERVAL;
+        if (!lastTick.compareAndSet(last, last + ticks * TICK_INTERVAL)) {
+            // another thread ticks
+            return;
+        }
+        double instantRate = uncounted.getAndReset() / (double) TimeUnit.NANOSECONDS.toSeconds(TICK_INTERVAL);
+        double current = rate;
+        if (initialized) {
+            current += ALPHA * (instantRate - current);
+        } else {
+            current = instantRate;
+            initialized = true;
+        }
+        // further ticks without events
+        for (long i = 1; i < ticks && i < 100; i++) {
+            current -= ALPHA * current;
+        }
+        rate = current;
+    }
+
+}
@@ -0,0 +1,372 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.wicket.Application;
+import org.apache.wicket.MetaDataKey;
+
+/**
+ * Counters and latencies of the pax wicket internals of one application: component injections, lazy proxy target
+ * lookups, class resolution, filter chain builds, page factory lookups, bundle scans, services of request leases and,
+ * if enabled, the stages of requests. Everything is recorded with
+ * striped counters and lock free histograms, so the metrics are always on.
+ * <p>
+ * There is one instance per application name, which survives restarts of the application so components created
+ * independently of the application lifecycle (like the bundle class resolver) can hold on to it. Code without access
+ * to the application name uses {@link #current()}.
+ * </p>
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class RuntimeMetrics implements RuntimeMetricsMXBean {
+
+    /** Application metadata holding the metrics of the application, see {@link #current()}. */
+    public static final MetaDataKey<RuntimeMetrics> METRICS_KEY = new MetaDataKey<RuntimeMetrics>() {
+        private static final long serialVersionUID = 1L;
+    };
+
+    /** Further names are recorded as {@link #OTHER}. */
+    private static final int MAX_NAMES = 512;
+
+    /** Constant <code>OTHER="&lt;other&gt;"</code> */
+    public static final String OTHER = "<other>";
+
+    private static final ConcurrentMap<String, RuntimeMetrics> APPLICATIONS =
+        new ConcurrentHashMap<String, RuntimeMetrics>();
+
+    private static final Comparator<TimerStatistics> BY_TOTAL_TIME = new Comparator<TimerStatistics>() {
+        public int compare(TimerStatistics o1, TimerStatistics o2) {
+            long t1 = o1.getTotalMicros();
+            long t2 = o2.getTotalMicros();
+            return t1 < t2 ? 1 : (t1 == t2 ? 0 : -1);
+        }
+    };
+
+    private final String applicationName;
+    private final Meter injectionRate = new Meter();
+    private final Timer injections = new Timer();
+    private final ConcurrentMap<String, Timer> injectionsByClass = new ConcurrentHashMap<String, Timer>();
+    private final ConcurrentMap<String, Timer> proxyLookups = new ConcurrentHashMap<String, Timer>();
+    private final Counter classResolverHits = new Counter();
+    private final Counter classResolverMisses = new Counter();
+    private final Counter bundleClassResolverHits = new Counter();
+    private final Counter bundleClassResolverMisses = new Counter();
+    private final Timer filterChainBuilds = new Timer();
+    private final Counter pageFactoryLookups = new Counter();
+    private final Counter pageFactoryHits = new Counter();
+    private final ConcurrentMap<String, Timer> bundleScans = new ConcurrentHashMap<String, Timer>();
+    private final ConcurrentMap<String, Timer> requestStages = new ConcurrentHashMap<String, Timer>();
+    private final Counter leasedServices = new Counter();
+    private final Counter reusedLeasedServices = new Counter();
+
+    private RuntimeMetrics(String applicationName) {
+        this.applicationName = applicationName;
+    }
+
+    /**
+     * Returns the metrics of an application, creating them on first use.
+     *
+     * @param applicationName a {@link java.lang.String} object.
+     * @return a {@link org.ops4j.pax.wicket.util.metrics.RuntimeMetrics} object.
+     */
+    public static RuntimeMetrics forApplication(String applicationName) {
+        RuntimeMetrics metrics = APPLICATIONS.get(applicationName);
+        if (metrics == null) {
+            RuntimeMetrics created = new RuntimeMetrics(applicationName);
+            metrics = APPLICATIONS.putIfAbsent(applicationName, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Returns the metrics of the application bound to the current thread.
+     *
+     * @return the metrics or <code>null</code> if there is no application or its metrics were not installed.
+     */
+    public static RuntimeMetrics current() {
+        return Application.exists() ? Application.get().getMetaData(METRICS_KEY) : null;
+    }
+
+    /**
+     * <p>Getter for the field <code>applicationName</code>.</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+    /**
+     * <p>recordInjection.</p>
+     *
+     * @param componentClass the class of the injected object.
+     * @param nanos time spent.
+     * @param failed if the injection failed.
+     */
+    public void recordInjection(Class<?> componentClass, long nanos, boolean failed) {
+        injectionRate.mark();
+        record(injections, nanos, failed);
+        record(getTimer(injectionsByClass, stripEnhancement(componentClass.getName())), nanos, failed);
+    }
+
+    /**
+     * Returns the timer of the target lookups of a proxied type; a proxy keeps it, so recording its lookups neither
+     * needs the current application nor a map lookup.
+     *
+     * @param typeName the proxied type.
+     * @return a {@link org.ops4j.pax.wicket.util.metrics.Timer} object.
+     */
+    public Timer getProxyLookupTimer(String typeName) {
+        return getTimer(proxyLookups, typeName);
+    }
+
+    /**
+     * <p>recordClassResolution.</p>
+     *
+     * @param hit if the class was resolved.
+     */
+    public void recordClassResolution(boolean hit) {
+        (hit ? classResolverHits : classResolverMisses).increment();
+    }
+
+    /**
+     * <p>recordBundleClassResolution.</p>
+     *
+     * @param hit if the class was found in one of the bundles.
+     */
+    public void recordBundleClassResolution(boolean hit) {
+        (hit ? bundleClassResolverHits : bundleClassResolverMisses).increment();
+    }
+
+    /**
+     * <p>recordFilterChainBuild.</p>
+     *
+     * @param nanos time spent.
+     * @param complete <code>false</code> if a filter could not be created.
+     */
+    public void recordFilterChainBuild(long nanos, boolean complete) {
+        record(filterChainBuilds, nanos, !complete);
+    }
+
+    /**
+     * <p>recordPageFactoryLookup.</p>
+     *
+     * @param hit if a registered page factory was found for the page class.
+     */
+    public void recordPageFactoryLookup(boolean hit) {
+        pageFactoryLookups.increment();
+        if (hit) {
+            pageFactoryHits.increment();
+        }
+    }
+
+    /**
+     * <p>recordBundleScan.</p>
+     *
+     * @param bundleName the symbolic name of the scanned bundle.
+     * @param nanos time spent.
+     */
+    public void recordBundleScan(String bundleName, long nanos) {
+        getTimer(bundleScans, bundleName).record(nanos);
+    }
+
+    /**
+     * <p>recordRequestStage.</p>
+     *
+     * @param stage the name of the stage, see {@link #getRequestStages()}.
+     * @param nanos time spent in the stage itself.
+     * @param failed if the request failed with an exception.
+     */
+    public void recordRequestStage(String stage, long nanos, boolean failed) {
+        record(getTimer(requestStages, stage), nanos, failed);
+    }
+
+    /**
+     * <p>recordServiceLease.</p>
+     *
+     * @param reused if the service was already got within the lease of the request.
+     */
+    public void recordServiceLease(boolean reused) {
+        (reused ? reusedLeasedServices : leasedServices).increment();
+    }
+
+    /** {@inheritDoc} */
+    public double getInjectionRate() {
+        return injectionRate.getRate();
+    }
+
+    /** {@inheritDoc} */
+    public TimerStatistics getInjections() {
+        return injections.snapshot("injections");
+    }
+
+    /** {@inheritDoc} */
+    public List<TimerStatistics> getInjectionsByClass() {
+        return snapshot(injectionsByClass);
+    }
+
+    /** {@inheritDoc} */
+    public List<TimerStatistics> getProxyLookupsByType() {
+        return snapshot(proxyLookups);
+    }
+
+    /** {@inheritDoc} */
+    public long getClassResolverHits() {
+        return classResolverHits.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getClassResolverMisses() {
+        return classResolverMisses.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getBundleClassResolverHits() {
+        return bundleClassResolverHits.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getBundleClassResolverMisses() {
+        return bundleClassResolverMisses.get();
+    }
+
+    /** {@inheritDoc} */
+    public TimerStatistics getFilterChainBuilds() {
+        return filterChainBuilds.snapshot("filterChainBuilds");
+    }
+
+    /** {@inheritDoc} */
+    public long getPageFactoryLookups() {
+        return pageFactoryLookups.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getPageFactoryHits() {
+        return pageFactoryHits.get();
+    }
+
+    /** {@inheritDoc} */
+    public List<TimerStatistics> getBundleScans() {
+        return snapshot(bundleScans);
+    }
+
+    /** {@inheritDoc} */
+    public List<TimerStatistics> getRequestStages() {
+        return snapshot(requestStages);
+    }
+
+    /** {@inheritDoc} */
+    public long getLeasedServices() {
+        return leasedServices.get();
+    }
+
+    /** {@inheritDoc} */
+    public long getReusedLeasedServices() {
+        return reusedLeasedServices.get();
+    }
+
+    /** {@inheritDoc} */
+    public void reset() {
+        injectionRate.reset();
+        injections.reset();
+        injectionsByClass.clear();
+        // proxies keep their timers, so these are reset in place
+        for (Timer timer : proxyLookups.values()) {
+            timer.reset();
+        }
+        classResolverHits.reset();
+        classResolverMisses.reset();
+        bundleClassResolverHits.reset();
+        bundleClassResolverMisses.reset();
+        filterChainBuilds.reset();
+        pageFactoryLookups.reset();
+        pageFactoryHits.reset();
+        bundleScans.clear();
+        requestStages.clear();
+        leasedServices.reset();
+        reusedLeasedServices.reset();
+    }
+
+    private static void record(Timer timer, long nanos, boolean failed) {
+        if (failed) {
+            timer.recordFailure(nanos);
+        } else {
+            timer.record(nanos);
+        }
+    }
+
+    /**
+     * Returns the timer for a name; to bound the memory used, names beyond {@link #MAX_NAMES} share one timer.
+     *
+     * @param timers a {@link java.util.concurrent.ConcurrentMap} object.
+     * @param name a {@link java.lang.String} object.
+     * @return a {@link org.ops4j.pax.wicket.util.metrics.Timer} object.
+     */
+    static Timer getTimer(ConcurrentMap<String, Timer> timers, String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            if (timers.size() >= MAX_NAMES) {
+                name = OTHER;
+                timer = timers.get(OTHER);
+                if (timer != null) {
+                    return timer;
+                }
+            }
+            timer = new Timer();
+            Timer existing = timers.putIfAbsent(name, timer);
+            if (existing != null) {
+                timer = existing;
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * <p>snapshot.</p>
+     *
+     * @param timers a {@link java.util.concurrent.ConcurrentMap} object.
+     * @return the snapshots, the most time consuming first.
+     */
+    static List<TimerStatistics> snapshot(ConcurrentMap<String, Timer> timers) {
+        List<TimerStatistics> result = new ArrayList<TimerStatistics>(timers.size());
+        for (Map.Entry<String, Timer> entry : timers.entrySet()) {
+            result.add(entry.getValue().snapshot(entry.getKey()));
+        }
+        Collections.sort(result, BY_TOTAL_TIME);
+        return result;
+    }
+
+    /**
+     * Components created by the pax wicket page factory are cglib subclasses.
+     */
+    private static String stripEnhancement(String className) {
+        int enhanced = className.indexOf("$$");
+        return enhanced > 0 ? className.substring(0, enhanced) : className;
+    }
+
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.metrics;
+
+import java.util.List;
+
+/**
+ * Management interface of the {@link RuntimeMetrics} of an application; it is registered as OSGi service (with the
+ * {@link org.ops4j.pax.wicket.api.Constants#APPLICATION_NAME} property) and as MBean
+ * <code>org.ops4j.pax.wicket:type=Runtime,application=&lt;name&gt;</code>.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public interface RuntimeMetricsMXBean {
+
+    /**
+     * <p>getInjectionRate.</p>
+     *
+     * @return component injections per second, averaged over about the last minute.
+     */
+    double getInjectionRate();
+
+    /**
+     * <p>getInjections.</p>
+     *
+     * @return the injections of all component classes together.
+     */
+    TimerStatistics getInjections();
+
+    /**
+     * <p>getInjectionsByClass.</p>
+     *
+     * @return the injections per component class, the most time consuming first.
+     */
+    List<TimerStatistics> getInjectionsByClass();
+
+    /**
+     * <p>getProxyLookupsByType.</p>
+     *
+     * @return the target lookups of lazy init proxies per proxied type, the most time consuming first.
+     */
+    List<TimerStatistics> getProxyLookupsByType();
+
+    /**
+     * <p>getClassResolverHits.</p>
+     *
+     * @return classes resolved by the delegating class resolver of the application.
+     */
+    long getClassResolverHits();
+
+    /**
+     * <p>getClassResolverMisses.</p>
+     *
+     * @return classes the delegating class resolver of the application could not resolve.
+     */
+    long getClassResolverMisses();
+
+    /**
+     * <p>getBundleClassResolverHits.</p>
+     *
+     * @return classes resolved from the bundles of the application.
+     */
+    long getBundleClassResolverHits();
+
+    /**
+     * <p>getBundleClassResolverMisses.</p>
+     *
+     * @return classes not found in any of the bundles of the application.
+     */
+    long getBundleClassResolverMisses();
+
+    /**
+     * <p>getFilterChainBuilds.</p>
+     *
+     * @return the builds of the filter chain; failures are builds where a filter could not be created.
+     */
+    TimerStatistics getFilterChainBuilds();
+
+    /**
+     * <p>getPageFactoryLookups.</p>
+     *
+     * @return pages created by the page factory of the application.
+     */
+    long getPageFactoryLookups();
+
+    /**
+     * <p>getPageFactoryHits.</p>
+     *
+     * @return pages created by a registered {@link org.ops4j.pax.wicket.api.PageFactory} instead of the default
+     *         wicket page factory.
+     */
+    long getPageFactoryHits();
+
+    /**
+     * <p>getBundleScans.</p>
+     *
+     * @return the class scans of bundles added to the application, per bundle.
+     */
+    List<TimerStatistics> getBundleScans();
+
+    /**
+     * <p>getRequestStages.</p>
+     *
+     * @return the time requests spent in the stages of the filter chain of each mount point, if request timing is
+     *         enabled; the stages are named <code>&lt;mount point&gt;:superFilters</code>,
+     *         <code>&lt;mount point&gt;:filter:&lt;filter class&gt;</code>, <code>&lt;mount point&gt;:wicket</code> and
+     *         <code>&lt;mount point&gt;:total</code>.
+     */
+    List<TimerStatistics> getRequestStages();
+
+    /**
+     * <p>getLeasedServices.</p>
+     *
+     * @return services got from the service registry by the request leases of multi service models.
+     */
+    long getLeasedServices();
+
+    /**
+     * <p>getReusedLeasedServices.</p>
+     *
+     * @return times a service already got within the lease of a request was reused; each saved a lookup, a get and an
+     *         unget in the service registry.
+     */
+    long getReusedLeasedServices();
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    void reset();
+
+}
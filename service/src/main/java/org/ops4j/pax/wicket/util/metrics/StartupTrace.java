@@ -0,0 +1,358 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Timeline of what pax wicket does while the framework starts: activation, registration of applications and their
+ * servlets, the analysis and class scans of bundles and page mounts. Each step is recorded as a {@link TraceSpan}
+ * together with the bundle, application or mount point it was done for, so slow bundles and phases can be found
+ * without a profiler. The trace keeps recording after the startup (e.g. for bundles installed later) but is bounded
+ * to {@link #MAX_SPANS} spans.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class StartupTrace implements StartupTraceMXBean {
+
+    /** Constant <code>ACTIVATOR_START="activator.start"</code> */
+    public static final String ACTIVATOR_START = "activator.start";
+    /** Constant <code>APPLICATION_ADD="application.add"</code> */
+    public static final String APPLICATION_ADD = "application.add";
+    /** Constant <code>SERVLET_REGISTRATION="servlet.register"</code> */
+    public static final String SERVLET_REGISTRATION = "servlet.register";
+    /** Constant <code>BUNDLE_RELEVANCE="bundle.relevance"</code> */
+    public static final String BUNDLE_RELEVANCE = "bundle.relevance";
+    /** Constant <code>BUNDLE_SCAN="bundle.scan"</code> */
+    public static final String BUNDLE_SCAN = "bundle.scan";
+    /** Constant <code>INJECTION_ANALYSIS="injection.analysis"</code> */
+    public static final String INJECTION_ANALYSIS = "injection.analysis";
+    /** Constant <code>PAGE_MOUNT="page.mount"</code> */
+    public static final String PAGE_MOUNT = "page.mount";
+
+    /** Constant <code>MAX_SPANS=10000</code> */
+    public static final int MAX_SPANS = 10000;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StartupTrace.class);
+
+    /** Milliseconds {@link #scheduleReport()} waits for further changes before the report is written. */
+    private static final long REPORT_DELAY = 2000;
+
+    private static final StartupTrace INSTANCE = new StartupTrace();
+
+    private static final Comparator<TraceSpan> BY_START = new Comparator<TraceSpan>() {
+        public int compare(TraceSpan o1, TraceSpan o2) {
+            return o1.getStartMicros() < o2.getStartMicros() ? -1
+                    : o1.getStartMicros() == o2.getStartMicros() ? 0 : 1;
+        }
+    };
+
+    private static final Comparator<TraceSpan> BY_DURATION = new Comparator<TraceSpan>() {
+        public int compare(TraceSpan o1, TraceSpan o2) {
+            return o1.getDurationMicros() > o2.getDurationMicros() ? -1
+                    : o1.getDurationMicros() == o2.getDurationMicros() ? 0 : 1;
+        }
+    };
+
+    private final ConcurrentLinkedQueue<TraceSpan> spans = new ConcurrentLinkedQueue<TraceSpan>();
+    private final AtomicInteger spanCount = new AtomicInteger();
+    private final AtomicLong droppedSpans = new AtomicLong();
+    private final ConcurrentMap<String, Timer> phases = new ConcurrentHashMap<String, Timer>();
+
+    private volatile long startMillis;
+    private volatile long startNanos;
+    private volatile File reportFile;
+
+    /** Guarded by this, as is {@link #pendingReport}. */
+    private ScheduledThreadPoolExecutor reportWriter;
+    private ScheduledFuture<?> pendingReport;
+
+    private StartupTrace() {
+        startMillis = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * <p>get.</p>
+     *
+     * @return the trace of this framework.
+     */
+    public static StartupTrace get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records a span which started at <code>startNanos</code> and ends now.
+     *
+     * @param phase one of the phase constants.
+     * @param subject the bundle, application or mount point the span is recorded for.
+     * @param startNanos the {@link System#nanoTime()} the span started at.
+     */
+    public void record(String phase, String subject, long startNanos) {
+        record(phase, subject, startNanos, null);
+    }
+
+    /**
+     * Records a span which started at <code>startNanos</code> and ends now.
+     *
+     * @param phase one of the phase constants.
+     * @param subject the bundle, application or mount point the span is recorded for.
+     * @param startNanos the {@link System#nanoTime()} the span started at.
+     * @param detail additional information like the result of a check, might be <code>null</code>.
+     */
+    public void record(String phase, String subject, long startNanos, String detail) {
+        long nanos = System.nanoTime() - startNanos;
+        RuntimeMetrics.getTimer(phases, phase).record(nanos);
+        if (spanCount.incrementAndGet() > MAX_SPANS) {
+            spanCount.decrementAndGet();
+            droppedSpans.incrementAndGet();
+            return;
+        }
+        spans.add(new TraceSpan(phase, subject, detail, Thread.currentThread().getName(),
+            TimeUnit.NANOSECONDS.toMicros(startNanos - this.startNanos), TimeUnit.NANOSECONDS.toMicros(nanos)));
+    }
+
+    /**
+     * <p>Setter for the field <code>reportFile</code>.</p>
+     *
+     * @param reportFile the file {@link #writeReport()} writes to, might be <code>null</code>.
+     */
+    public void setReportFile(File reportFile) {
+        this.reportFile = reportFile;
+    }
+
+    /** {@inheritDoc} */
+    public long getStartTime() {
+        return startMillis;
+    }
+
+    /** {@inheritDoc} */
+    public List<TraceSpan> getSpans() {
+        List<TraceSpan> result = new ArrayList<TraceSpan>(spans);
+        Collections.sort(result, BY_START);
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    public List<TraceSpan> getSpansOfPhase(String phase) {
+        List<TraceSpan> result = new ArrayList<TraceSpan>();
+        for (TraceSpan span : getSpans()) {
+            if (span.getPhase().equals(phase)) {
+                result.add(span);
+            }
+        }
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    public List<TraceSpan> getSlowestSpans(int limit) {
+        List<TraceSpan> result = new ArrayList<TraceSpan>(spans);
+        Collections.sort(result, BY_DURATION);
+        return result.size() > limit ? new ArrayList<TraceSpan>(result.subList(0, Math.max(limit, 0))) : result;
+    }
+
+    /** {@inheritDoc} */
+    public List<TimerStatistics> getPhases() {
+        return RuntimeMetrics.snapshot(phases);
+    }
+
+    /** {@inheritDoc} */
+    public long getDroppedSpans() {
+        return droppedSpans.get();
+    }
+
+    /** {@inheritDoc} */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(4096);
+        json.append("{\n  \"startTime\": ").append(startMillis);
+        json.append(",\n  \"droppedSpans\": ").append(droppedSpans.get());
+        json.append(",\n  \"phases\": [");
+        boolean first = true;
+        for (TimerStatistics phase : getPhases()) {
+            json.append(first ? "\n    " : ",\n    ");
+            first = false;
+            json.append("{\"phase\": ");
+            appendString(json, phase.getName());
+            json.append(", \"count\": ").append(phase.getCount());
+            json.append(", \"totalMicros\": ").append(phase.getTotalMicros());
+            json.append(", \"maxMicros\": ").append(phase.getMaxMicros()).append('}');
+        }
+        json.append("\n  ],\n  \"spans\": [");
+        first = true;
+        for (TraceSpan span : getSpans()) {
+            json.append(first ? "\n    " : ",\n    ");
+            first = false;
+            json.append("{\"startMicros\": ").append(span.getStartMicros());
+            json.append(", \"durationMicros\": ").append(span.getDurationMicros());
+            json.append(", \"phase\": ");
+            appendString(json, span.getPhase());
+            json.append(", \"subject\": ");
+            appendString(json, span.getSubject());
+            if (span.getDetail() != null) {
+                json.append(", \"detail\": ");
+                appendString(json, span.getDetail());
+            }
+            json.append(", \"thread\": ");
+            appendString(json, span.getThread());
+            json.append('}');
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    /** {@inheritDoc} */
+    public String writeReport() {
+        File file = reportFile;
+        if (file == null) {
+            return null;
+        }
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write(toJson());
+            writer.close();
+            writer = null;
+            LOGGER.debug("Wrote startup trace to {}", file);
+            return file.getAbsolutePath();
+        } catch (IOException e) {
+            LOGGER.warn("Could not write startup trace to {}", file, e);
+            return null;
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    LOGGER.debug("Could not close startup trace {}", file, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the report in the background a moment from now, so applications and servlets registered after the start
+     * of pax wicket show up in it. Further calls until the report is written are covered by that same write.
+     */
+    public synchronized void scheduleReport() {
+        if (reportFile == null || pendingReport != null) {
+            return;
+        }
+        if (reportWriter == null) {
+            reportWriter = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "pax-wicket-startup-trace");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        pendingReport = reportWriter.schedule(new Runnable() {
+            public void run() {
+                synchronized (StartupTrace.this) {
+                    // changes from now on need another write
+                    pendingReport = null;
+                }
+                writeReport();
+            }
+        }, REPORT_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops writing scheduled reports; a report still pending is dropped, one being written is waited for.
+     */
+    public void stopScheduledReports() {
+        ScheduledThreadPoolExecutor writer;
+        synchronized (this) {
+            writer = reportWriter;
+            reportWriter = null;
+            pendingReport = null;
+        }
+        if (writer == null) {
+            return;
+        }
+        writer.shutdownNow();
+        try {
+            writer.awaitTermination(REPORT_DELAY, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void reset() {
+        spans.clear();
+        spanCount.set(0);
+        droppedSpans.set(0);
+        phases.clear();
+        startMillis = System.currentTimeMillis();
+        startNanos = System.nanoTime();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.metrics;
+
+import java.util.List;
+
+/**
+ * Management interface of the {@link StartupTrace}, registered as <code>org.ops4j.pax.wicket:type=StartupTrace</code>.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public interface StartupTraceMXBean {
+
+    /**
+     * <p>getStartTime.</p>
+     *
+     * @return the time in milliseconds since the epoch the trace was started at.
+     */
+    long getStartTime();
+
+    /**
+     * <p>getSpans.</p>
+     *
+     * @return all recorded spans ordered by their start.
+     */
+    List<TraceSpan> getSpans();
+
+    /**
+     * <p>getSpansOfPhase.</p>
+     *
+     * @param phase a {@link java.lang.String} object.
+     * @return the recorded spans of the phase ordered by their start.
+     */
+    List<TraceSpan> getSpansOfPhase(String phase);
+
+    /**
+     * <p>getSlowestSpans.</p>
+     *
+     * @param limit the maximum number of spans to return.
+     * @return the longest spans, the longest first.
+     */
+    List<TraceSpan> getSlowestSpans(int limit);
+
+    /**
+     * <p>getPhases.</p>
+     *
+     * @return the time spent per phase, the most time consuming first.
+     */
+    List<TimerStatistics> getPhases();
+
+    /**
+     * <p>getDroppedSpans.</p>
+     *
+     * @return the number of spans not kept as the trace was full.
+     */
+    long getDroppedSpans();
+
+    /**
+     * <p>toJson.</p>
+     *
+     * @return the trace as JSON document.
+     */
+    String toJson();
+
+    /**
+     * Writes {@link #toJson()} to the report file in the data area of the pax wicket bundle.
+     *
+     * @return the path of the written file or <code>null</code> if there is no report file or writing failed.
+     */
+    String writeReport();
+
+    /**
+     * Forgets all spans and starts the trace again.
+     */
+    void reset();
+
+}
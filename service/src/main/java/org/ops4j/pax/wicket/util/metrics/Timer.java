@@ -0,0 +1,85 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.metrics;
+
+/**
+ * Latencies (in microseconds) and failures of an operation.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class Timer {
+
+    private final Histogram latencies = new Histogram();
+    private final Counter failures = new Counter();
+
+    /**
+     * <p>record.</p>
+     *
+     * @param nanos time spent in a successful call.
+     */
+    public void record(long nanos) {
+        latencies.record(nanos / 1000);
+    }
+
+    /**
+     * <p>recordFailure.</p>
+     *
+     * @param nanos time spent in a failed call.
+     */
+    public void recordFailure(long nanos) {
+        latencies.record(nanos / 1000);
+        failures.increment();
+    }
+
+    /**
+     * <p>getCount.</p>
+     *
+     * @return number of calls, including failed ones.
+     */
+    public long getCount() {
+        return latencies.getCount();
+    }
+
+    /**
+     * <p>Getter for the field <code>latencies</code>.</p>
+     *
+     * @return the latencies in microseconds.
+     */
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * <p>snapshot.</p>
+     *
+     * @param name the name of the snapshot.
+     * @return a {@link org.ops4j.pax.wicket.util.metrics.TimerStatistics} object.
+     */
+    public TimerStatistics snapshot(String name) {
+        return new TimerStatistics(name, latencies.getCount(), failures.get(), latencies.getSum(), latencies.getMax(),
+            latencies.getPercentile(50), latencies.getPercentile(99), latencies.getBuckets());
+    }
+
+    /**
+     * Forgets all calls.
+     */
+    public void reset() {
+        latencies.reset();
+        failures.reset();
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of a {@link Timer}; times are in microseconds, percentiles are estimated from the power of two buckets of
+ * the histogram as described in {@link Histogram}.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class TimerStatistics {
+
+    private final String name;
+    private final long count;
+    private final long failures;
+    private final long totalMicros;
+    private final long maxMicros;
+    private final long medianMicros;
+    private final long p99Micros;
+    private final long[] histogram;
+
+    /**
+     * <p>Constructor for TimerStatistics.</p>
+     */
+    @ConstructorProperties({ "name", "count", "failures", "totalMicros", "maxMicros", "medianMicros", "p99Micros",
+        "histogram" })
+    public TimerStatistics(String name, long count, long failures, long totalMicros, long maxMicros,
+            long medianMicros, long p99Micros, long[] histogram) {
+        this.name = name;
+        this.count = count;
+        this.failures = failures;
+        this.totalMicros = totalMicros;
+        this.maxMicros = maxMicros;
+        this.medianMicros = medianMicros;
+        this.p99Micros = p99Micros;
+        this.histogram = histogram;
+    }
+
+    /**
+     * <p>Getter for the field <code>name</code>.</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * <p>Getter for the field <code>count</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * <p>Getter for the field <code>failures</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * <p>Getter for the field <code>totalMicros</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getTotalMicros() {
+        return totalMicros;
+    }
+
+    /**
+     * <p>Getter for the field <code>maxMicros</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * <p>Getter for the field <code>medianMicros</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getMedianMicros() {
+        return medianMicros;
+    }
+
+    /**
+     * <p>Getter for the field <code>p99Micros</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    /**
+     * <p>Getter for the field <code>histogram</code>.</p>
+     *
+     * @return an array of long.
+     */
+    public long[] getHistogram() {
+        return histogram.clone();
+    }
+
+    /**
+     * <p>getMeanMicros.</p>
+     *
+     * @return the mean time of a call, <code>0</code> if there were none.
+     */
+    public double getMeanMicros() {
+        return count == 0 ? 0d : (double) totalMicros / count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return name + " [count=" + count + ", failures=" + failures + ", median=" + medianMicros + "us, p99="
+                + p99Micros + "us, max=" + maxMicros + "us]";
+    }
+
+}
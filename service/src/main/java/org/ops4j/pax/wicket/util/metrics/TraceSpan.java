@@ -0,0 +1,111 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.metrics;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * One recorded span of the {@link StartupTrace}; times are in microseconds, the start relative to the start of the
+ * trace.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class TraceSpan {
+
+    private final String phase;
+    private final String subject;
+    private final String detail;
+    private final String thread;
+    private final long startMicros;
+    private final long durationMicros;
+
+    /**
+     * <p>Constructor for TraceSpan.</p>
+     */
+    @ConstructorProperties({ "phase", "subject", "detail", "thread", "startMicros", "durationMicros" })
+    public TraceSpan(String phase, String subject, String detail, String thread, long startMicros,
+            long durationMicros) {
+        this.phase = phase;
+        this.subject = subject;
+        this.detail = detail;
+        this.thread = thread;
+        this.startMicros = startMicros;
+        this.durationMicros = durationMicros;
+    }
+
+    /**
+     * <p>Getter for the field <code>phase</code>.</p>
+     *
+     * @return one of the phases of {@link StartupTrace}.
+     */
+    public String getPhase() {
+        return phase;
+    }
+
+    /**
+     * <p>Getter for the field <code>subject</code>.</p>
+     *
+     * @return the bundle, application or mount point the span was recorded for.
+     */
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * <p>Getter for the field <code>detail</code>.</p>
+     *
+     * @return additional information like the result of a check, might be <code>null</code>.
+     */
+    public String getDetail() {
+        return detail;
+    }
+
+    /**
+     * <p>Getter for the field <code>thread</code>.</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getThread() {
+        return thread;
+    }
+
+    /**
+     * <p>Getter for the field <code>startMicros</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getStartMicros() {
+        return startMicros;
+    }
+
+    /**
+     * <p>Getter for the field <code>durationMicros</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "+" + startMicros + "us " + phase + " " + subject + (detail != null ? " (" + detail + ")" : "") + " "
+                + durationMicros + "us [" + thread + "]";
+    }
+
+}
@@ -22,12 +22,18 @@ package org.ops4j.pax.wicket.util.proxy;
 import java.io.InvalidClassException;
 import java.io.ObjectStreamException;
 import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.sf.cglib.core.DefaultNamingPolicy;
 import net.sf.cglib.core.Predicate;
@@ -43,6 +49,8 @@ import org.apache.wicket.util.io.IClusterable;
 import org.ops4j.pax.wicket.spi.ProxyTarget;
 import org.ops4j.pax.wicket.spi.ProxyTargetLocator;
 import org.ops4j.pax.wicket.spi.ReleasableProxyTarget;
+import org.ops4j.pax.wicket.util.metrics.RuntimeMetrics;
+import org.ops4j.pax.wicket.util.metrics.Timer;
 public class LazyInitProxyFactory {
 
     private static final List<?> BUILTINS = Arrays.asList(new Class[]{ String.class,
@@ -50,6 +58,16 @@ public class LazyInitProxyFactory {
              Float.class, Double.class, Character.class,
              Boolean.class });
 
+    /**
+     * Locators currently in use by deserialized proxies; only weakly referenced to not pin the class loaders of the
+     * pages and beans they refer to. Each key refers to the shared locator itself.
+     */
+    private static final ConcurrentMap<LocatorKey, LocatorKey> LOCATORS =
+        new ConcurrentHashMap<LocatorKey, LocatorKey>();
+
+    private static final ReferenceQueue<ProxyTargetLocator> STALE_LOCATORS =
+        new ReferenceQueue<ProxyTargetLocator>();
+
     /**
      * <p>createProxy.</p>
      *
@@ -109,14 +127,18 @@ public class LazyInitProxyFactory {
         Object writeReplace() throws ObjectStreamException;
     }
 
-    static class ProxyReplacement implements IClusterable {
+    /**
+     * The serialized form of a lazy init proxy. Equal replacements (same type and equal locator) are written only once
+     * per stream by the pax wicket serializer, so all references to them share one proxy after deserialization.
+     */
+    static final class ProxyReplacement implements IClusterable {
         private static final long serialVersionUID = 1L;
 
         private final ProxyTargetLocator locator;
 
         private final String type;
 
-        public ProxyReplacement(String type, ProxyTargetLocator locator) {
+        ProxyReplacement(String type, ProxyTargetLocator locator) {
             this.type = type;
             this.locator = locator;
         }
@@ -132,26 +154,186 @@ public class LazyInitProxyFactory {
                 throw new InvalidClassException(type, "could not resolve class [" + type +
                         "] when deserializing proxy");
             }
+            ProxyTargetLocator sharedLocator = internLocator(locator);
             ClassLoader currentClassloader = Thread.currentThread().getContextClassLoader();
             try {
                 ClassLoader classLoader = clazz.getClassLoader();
-                if (locator != null && locator.getParent() != null) {
-                    classLoader = locator.getParent().getClassLoader();
+                if (sharedLocator != null && sharedLocator.getParent() != null) {
+                    classLoader = sharedLocator.getParent().getClassLoader();
                 }
                 if (classLoader != null) {
                     Thread.currentThread().setContextClassLoader(classLoader);
                 }
-                return LazyInitProxyFactory.createProxy(clazz, locator);
+                return LazyInitProxyFactory.createProxy(clazz, sharedLocator);
             } finally {
                 Thread.currentThread().setContextClassLoader(currentClassloader);
             }
         }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ProxyReplacement)) {
+                return false;
+            }
+            ProxyReplacement other = (ProxyReplacement) obj;
+            return type.equals(other.type) && (locator == null ? other.locator == null : locator.equals(other.locator));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + (locator == null ? 0 : locator.hashCode());
+        }
+    }
+
+    /**
+     * Returns the first of the equal proxy replacements written to a stream so far, so the stream only contains a back
+     * reference to it, or <code>null</code> if the object is no proxy replacement.
+     *
+     * @param object the object about to be written.
+     * @param written the replacements written to the stream so far, keyed by themselves.
+     * @return a {@link java.lang.Object} object.
+     */
+    public static Object internProxyReplacement(Object object, Map<Object, Object> written) {
+        if (!(object instanceof ProxyReplacement)) {
+            return null;
+        }
+        Object first = written.get(object);
+        if (first != null) {
+            return first;
+        }
+        written.put(object, object);
+        return object;
+    }
+
+    /**
+     * Returns an equal locator which is already in use, so pages deserialized over and over again don't keep their own
+     * copies of the same locator. Locators are immutable and stateless, proxies are not, so only the locators are
+     * shared between pages.
+     */
+    private static ProxyTargetLocator internLocator(ProxyTargetLocator locator) {
+        if (locator == null) {
+            return null;
+        }
+        expungeStaleLocators();
+        LocatorKey key = LOCATORS.get(new LocatorKey(locator, null));
+        ProxyTargetLocator shared = key == null ? null : key.get();
+        if (shared != null) {
+            return shared;
+        }
+        LocatorKey newKey = new LocatorKey(locator, STALE_LOCATORS);
+        while (true) {
+            LocatorKey existing = LOCATORS.putIfAbsent(newKey, newKey);
+            if (existing == null) {
+                return locator;
+            }
+            shared = existing.get();
+            if (shared != null) {
+                return shared;
+            }
+            // cleared but not yet expunged; a cleared key only equals itself
+            LOCATORS.remove(existing, existing);
+        }
+    }
+
+    private static void expungeStaleLocators() {
+        Reference<? extends ProxyTargetLocator> stale;
+        while ((stale = STALE_LOCATORS.poll()) != null) {
+            LOCATORS.remove(stale, stale);
+        }
+    }
+
+    /**
+     * Weak key of {@link #LOCATORS} comparing the locators it refers to.
+     */
+    private static final class LocatorKey extends WeakReference<ProxyTargetLocator> {
+        private final int hash;
+
+        LocatorKey(ProxyTargetLocator locator, ReferenceQueue<ProxyTargetLocator> queue) {
+            super(locator, queue);
+            hash = locator.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof LocatorKey)) {
+                return false;
+            }
+            ProxyTargetLocator locator = get();
+            return locator != null && locator.equals(((LocatorKey) obj).get());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The target a proxy located last and the timer its lookups are recorded with; both are transient and resolved
+     * again after deserialization.
+     */
+    private interface TargetHolder {
+
+        Object getTarget();
+
+        void setTarget(Object target);
+
+        Timer getLookupTimer();
+
+        void setLookupTimer(Timer lookupTimer);
+
+    }
+
+    /**
+     * Locates the target of a proxy if required and returns the real target; lookups are recorded in the
+     * {@link RuntimeMetrics} of the application the proxy is first used in.
+     */
+    private static Object lookupTarget(ProxyTargetLocator locator, TargetHolder holder, String typeName) {
+        Object target = holder.getTarget();
+        if (target != null && !(target instanceof ReleasableProxyTarget)) {
+            return getRealTarget(target);
+        }
+        Timer timer = holder.getLookupTimer();
+        if (timer == null) {
+            RuntimeMetrics metrics = RuntimeMetrics.current();
+            if (metrics != null) {
+                timer = metrics.getProxyLookupTimer(typeName);
+                holder.setLookupTimer(timer);
+            }
+        }
+        long start = timer == null ? 0 : System.nanoTime();
+        boolean located = false;
+        try {
+            if (target == null) {
+                target = locator.locateProxyTarget();
+                holder.setTarget(target);
+            }
+            Object realTarget = getRealTarget(target);
+            located = true;
+            return realTarget;
+        } finally {
+            if (timer != null) {
+                long nanos = System.nanoTime() - start;
+                if (located) {
+                    timer.record(nanos);
+                } else {
+                    timer.recordFailure(nanos);
+                }
+            }
+        }
     }
 
     private static class CGLibInterceptor
             implements
             MethodInterceptor,
             ILazyInitProxy,
+            TargetHolder,
             Serializable,
             IWriteReplace {
         private static final long serialVersionUID = 1L;
@@ -162,6 +344,8 @@ public class LazyInitProxyFactory {
 
         private transient Object target;
 
+        private transient Timer lookupTimer;
+
         public CGLibInterceptor(Class<?> type, ProxyTargetLocator locator) {
             super();
             typeName = type.getName();
@@ -184,12 +368,9 @@ public class LazyInitProxyFactory {
             } else if (method.getDeclaringClass().equals(ILazyInitProxy.class)) {
                 return getObjectLocator();
             }
-            if (target == null) {
-                target = locator.locateProxyTarget();
-            }
             Object invoke;
             try {
-                invoke = proxy.invoke(getRealTarget(target), args);
+                invoke = proxy.invoke(lookupTarget(locator, this, typeName), args);
             } finally {
                 if (target instanceof ReleasableProxyTarget) {
                     target = ((ReleasableProxyTarget) target).releaseTarget();
@@ -202,6 +383,22 @@ public class LazyInitProxyFactory {
             return locator;
         }
 
+        public Object getTarget() {
+            return target;
+        }
+
+        public void setTarget(Object target) {
+            this.target = target;
+        }
+
+        public Timer getLookupTimer() {
+            return lookupTimer;
+        }
+
+        public void setLookupTimer(Timer lookupTimer) {
+            this.lookupTimer = lookupTimer;
+        }
+
         public Object writeReplace() throws ObjectStreamException {
             return new ProxyReplacement(typeName, locator);
         }
@@ -217,6 +414,7 @@ public class LazyInitProxyFactory {
             implements
             InvocationHandler,
             ILazyInitProxy,
+            TargetHolder,
             Serializable,
             IWriteReplace {
         private static final long serialVersionUID = 1L;
@@ -227,6 +425,8 @@ public class LazyInitProxyFactory {
 
         private transient Object target;
 
+        private transient Timer lookupTimer;
+
         /**
          * Constructor
          * 
@@ -255,13 +455,10 @@ public class LazyInitProxyFactory {
                 return writeReplace();
             }
 
-            if (target == null) {
-                target = locator.locateProxyTarget();
-            }
             try {
                 Object invoke;
                 try {
-                    invoke = method.invoke(getRealTarget(target), args);
+                    invoke = method.invoke(lookupTarget(locator, this, typeName), args);
                 } finally {
                     if (target instanceof ReleasableProxyTarget) {
                         target = ((ReleasableProxyTarget) target).releaseTarget();
@@ -277,6 +474,22 @@ public class LazyInitProxyFactory {
             return locator;
         }
 
+        public Object getTarget() {
+            return target;
+        }
+
+        public void setTarget(Object target) {
+            this.target = target;
+        }
+
+        public Timer getLookupTimer() {
+            return lookupTimer;
+        }
+
+        public void setLookupTimer(Timer lookupTimer) {
+            this.lookupTimer = lookupTimer;
+        }
+
         public Object writeReplace() throws ObjectStreamException {
             return new ProxyReplacement(typeName, locator);
         }
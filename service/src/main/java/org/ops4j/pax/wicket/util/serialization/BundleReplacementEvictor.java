@@ -0,0 +1,55 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.serialization;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.ops4j.pax.wicket.internal.Activator;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.SynchronousBundleListener;
+
+/**
+ * Forgets the {@link ReplaceBundle} and {@link ReplaceBundleContext} of uninstalled bundles, so the replacement maps
+ * don't grow with every bundle ever installed. Registered once per start of pax wicket by the first
+ * {@link PaxWicketSerializer}; the framework removes it again when pax wicket stops.
+ */
+final class BundleReplacementEvictor implements SynchronousBundleListener {
+
+    private static final AtomicReference<BundleContext> REGISTERED_WITH = new AtomicReference<BundleContext>();
+
+    private BundleReplacementEvictor() {
+    }
+
+    static void register() {
+        BundleContext context = Activator.getBundleContext();
+        BundleContext registeredWith = REGISTERED_WITH.get();
+        if (context == null || context == registeredWith) {
+            return;
+        }
+        if (REGISTERED_WITH.compareAndSet(registeredWith, context)) {
+            context.addBundleListener(new BundleReplacementEvictor());
+        }
+    }
+
+    public void bundleChanged(BundleEvent event) {
+        if (event.getType() == BundleEvent.UNINSTALLED) {
+            long bundleId = event.getBundle().getBundleId();
+            ReplaceBundle.remove(bundleId);
+            ReplaceBundleContext.remove(bundleId);
+        }
+    }
+}
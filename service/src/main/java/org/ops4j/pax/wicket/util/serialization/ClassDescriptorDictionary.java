@@ -0,0 +1,370 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.serialization;
+
+import static org.ops4j.lang.NullArgumentException.validateNotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.Externalizable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A per application dictionary of serialized classes. Streams created with a dictionary write the id of a class
+ * instead of its full descriptor (name, serialVersionUID and fields), which shrinks pages in the page store
+ * considerably.
+ * <p>
+ * An entry identifies a class by name, serialVersionUID and a fingerprint of its serializable fields, so a bundle
+ * update which changes a class gets a new entry while pages written with the old one are still detected as
+ * incompatible instead of being read with the wrong layout. Entries are only appended and, if a file is given, are
+ * persisted next to the page store so stored pages stay readable across restarts.
+ * </p>
+ * <p>
+ * Ids are local to the node which assigned them: another node has a dictionary of its own and would resolve the same
+ * id to a different class or not at all. Data written with a dictionary must therefore never leave the node, so a
+ * dictionary must not be used for replicated sessions or a replicated page store (see
+ * {@link org.apache.wicket.pageStore.IDataStore#isReplicated()}); the application factory does not create one if the
+ * context parameter
+ * {@link org.ops4j.pax.wicket.api.Constants#SESSION_REPLICATED} is set.
+ * </p>
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class ClassDescriptorDictionary {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClassDescriptorDictionary.class);
+
+    private static final int FILE_MAGIC = 0x50574344;
+    private static final int FILE_VERSION = 1;
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private final File file;
+
+    /**
+     * Indexed by id; replaced (copy on write) for each new entry so readers never lock.
+     */
+    private volatile Entry[] entries = NO_ENTRIES;
+
+    /**
+     * Lookup of entries by {@link Entry#key}; guarded by this.
+     */
+    private final Map<String, Entry> entriesByKey = new HashMap<String, Entry>();
+
+    /**
+     * Entries per local class, the keys are weak to not pin class loaders of updated bundles; guarded by itself.
+     */
+    private final Map<Class<?>, Entry> entriesByClass = new WeakHashMap<Class<?>, Entry>();
+
+    private DataOutputStream fileOutput;
+
+    /**
+     * Creates a dictionary which only lives in memory.
+     */
+    public ClassDescriptorDictionary() {
+        file = null;
+    }
+
+    /**
+     * Creates a dictionary persisted in the given file; existing entries are loaded.
+     *
+     * @param file a {@link java.io.File} object.
+     */
+    public ClassDescriptorDictionary(File file) {
+        validateNotNull(file, "file");
+        this.file = file;
+        load();
+    }
+
+    /**
+     * Returns the id for the given class descriptor, creating a new entry if the class (in this version) is not yet
+     * part of the dictionary.
+     *
+     * @param descriptor a {@link java.io.ObjectStreamClass} object.
+     * @return the id of the class.
+     */
+    public int getId(ObjectStreamClass descriptor) {
+        Class<?> type = descriptor.forClass();
+        Entry entry;
+        synchronized (entriesByClass) {
+            entry = entriesByClass.get(type);
+        }
+        if (entry != null) {
+            return entry.id;
+        }
+        String key = createKey(descriptor.getName(), descriptor.getSerialVersionUID(), fingerprint(descriptor));
+        synchronized (this) {
+            entry = entriesByKey.get(key);
+            if (entry == null) {
+                entry = addEntry(descriptor.getName(), descriptor.getSerialVersionUID(), fingerprint(descriptor));
+                append(entry);
+            }
+        }
+        entry.setResolvedClass(type);
+        synchronized (entriesByClass) {
+            entriesByClass.put(type, entry);
+        }
+        return entry.id;
+    }
+
+    /**
+     * Returns the local class descriptor for an id written by {@link #getId(ObjectStreamClass)}.
+     *
+     * @param id the id read from the stream.
+     * @param resolver used to load the class if it was not resolved before (or the resolved class was invalidated).
+     * @return the {@link java.io.ObjectStreamClass} of the local class.
+     * @throws java.io.IOException if the id is unknown or the local class does no longer match the entry.
+     * @throws java.lang.ClassNotFoundException if the class can't be resolved.
+     */
+    public ObjectStreamClass getDescriptor(int id, ClassNameResolver resolver) throws IOException,
+        ClassNotFoundException {
+        Entry[] current = entries;
+        if (id < 0 || id >= current.length) {
+            throw new InvalidClassException("Unknown class dictionary id " + id);
+        }
+        Entry entry = current[id];
+        Class<?> type = entry.getResolvedClass();
+        if (type == null) {
+            type = resolver.resolveClass(entry.name);
+            ObjectStreamClass descriptor = ObjectStreamClass.lookup(type);
+            if (descriptor == null) {
+                throw new InvalidClassException(entry.name, "class is no longer serializable");
+            }
+            if (descriptor.getSerialVersionUID() != entry.serialVersionUID
+                    || fingerprint(descriptor) != entry.fingerprint) {
+                throw new InvalidClassException(entry.name,
+                    "local class is incompatible with the version in the class dictionary");
+            }
+            entry.setResolvedClass(type);
+            return descriptor;
+        }
+        return ObjectStreamClass.lookup(type);
+    }
+
+    /**
+     * Forgets all resolved classes, they will be resolved again on the next read; must be called if bundles are
+     * updated or refreshed, as the old classes might still be reachable.
+     */
+    public void clearResolvedClasses() {
+        for (Entry entry : entries) {
+            entry.setResolvedClass(null);
+        }
+        synchronized (entriesByClass) {
+            entriesByClass.clear();
+        }
+    }
+
+    /**
+     * Closes the backing file; the dictionary can still be used but new entries are no longer persisted.
+     */
+    public synchronized void close() {
+        if (fileOutput != null) {
+            try {
+                fileOutput.close();
+            } catch (IOException e) {
+                LOGGER.warn("Could not close class dictionary {}", file, e);
+            }
+            fileOutput = null;
+        }
+    }
+
+    /**
+     * <p>size.</p>
+     *
+     * @return the number of entries in the dictionary.
+     */
+    public int size() {
+        return entries.length;
+    }
+
+    private Entry addEntry(String name, long serialVersionUID, long fingerprint) {
+        Entry[] current = entries;
+        Entry entry = new Entry(current.length, name, serialVersionUID, fingerprint);
+        Entry[] extended = Arrays.copyOf(current, current.length + 1);
+        extended[entry.id] = entry;
+        entriesByKey.put(entry.key, entry);
+        entries = extended;
+        return entry;
+    }
+
+    private void append(Entry entry) {
+        if (fileOutput == null) {
+            return;
+        }
+        try {
+            fileOutput.writeUTF(entry.name);
+            fileOutput.writeLong(entry.serialVersionUID);
+            fileOutput.writeLong(entry.fingerprint);
+            fileOutput.flush();
+        } catch (IOException e) {
+            LOGGER.warn("Could not persist class dictionary {}, pages using new classes won't survive a restart",
+                file, e);
+            close();
+        }
+    }
+
+    private synchronized void load() {
+        if (file.isFile()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                if (in.readInt() == FILE_MAGIC && in.readInt() == FILE_VERSION) {
+                    while (true) {
+                        String name = in.readUTF();
+                        long serialVersionUID = in.readLong();
+                        long fingerprint = in.readLong();
+                        addEntry(name, serialVersionUID, fingerprint);
+                    }
+                }
+                LOGGER.warn("Class dictionary {} has an unknown format and is replaced", file);
+            } catch (EOFException e) {
+                // regular end of the file, a partially written last entry is dropped
+            } catch (IOException e) {
+                LOGGER.warn("Could not read class dictionary {}, keeping {} entries", new Object[]{ file,
+                    entries.length, e });
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException e) {
+                        LOGGER.debug("Could not close class dictionary {}", file, e);
+                    }
+                }
+            }
+        }
+        // (Re)write the file from what was loaded, so a broken tail never precedes new entries
+        try {
+            File parent = file.getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            fileOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            fileOutput.writeInt(FILE_MAGIC);
+            fileOutput.writeInt(FILE_VERSION);
+            Entry[] loaded = entries;
+            for (Entry entry : loaded) {
+                fileOutput.writeUTF(entry.name);
+                fileOutput.writeLong(entry.serialVersionUID);
+                fileOutput.writeLong(entry.fingerprint);
+            }
+            fileOutput.flush();
+            LOGGER.debug("Loaded {} entries from class dictionary {}", loaded.length, file);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write class dictionary {}, it is kept in memory only", file, e);
+            close();
+        }
+    }
+
+    private static String createKey(String name, long serialVersionUID, long fingerprint) {
+        return name + '/' + serialVersionUID + '/' + fingerprint;
+    }
+
+    /**
+     * A 64 bit FNV-1a hash over everything that defines the stream layout of a class besides its name and
+     * serialVersionUID.
+     */
+    private static long fingerprint(ObjectStreamClass descriptor) {
+        long hash = 0xcbf29ce484222325L;
+        Class<?> type = descriptor.forClass();
+        if (type != null) {
+            hash = hash(hash, Externalizable.class.isAssignableFrom(type) ? "E" : "S");
+            hash = hash(hash, type.isEnum() ? "e" : "c");
+        }
+        for (ObjectStreamField field : descriptor.getFields()) {
+            hash = hash(hash, field.getName());
+            hash = hash(hash, String.valueOf(field.getTypeCode()));
+            String typeString = field.getTypeString();
+            if (typeString != null) {
+                hash = hash(hash, typeString);
+            }
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= ';';
+        hash *= 0x100000001b3L;
+        return hash;
+    }
+
+    /**
+     * Resolves classes by name for {@link ClassDescriptorDictionary#getDescriptor(int, ClassNameResolver)}.
+     */
+    public interface ClassNameResolver {
+
+        /**
+         * <p>resolveClass.</p>
+         *
+         * @param className a {@link java.lang.String} object.
+         * @return the resolved {@link java.lang.Class}, never <code>null</code>.
+         * @throws java.lang.ClassNotFoundException if any.
+         */
+        Class<?> resolveClass(String className) throws ClassNotFoundException;
+
+    }
+
+    private static final class Entry {
+
+        private final int id;
+        private final String name;
+        private final long serialVersionUID;
+        private final long fingerprint;
+        private final String key;
+
+        private volatile WeakReference<Class<?>> resolvedClass;
+
+        private Entry(int id, String name, long serialVersionUID, long fingerprint) {
+            this.id = id;
+            this.name = name;
+            this.serialVersionUID = serialVersionUID;
+            this.fingerprint = fingerprint;
+            key = createKey(name, serialVersionUID, fingerprint);
+        }
+
+        private Class<?> getResolvedClass() {
+            WeakReference<Class<?>> reference = resolvedClass;
+            return reference == null ? null : reference.get();
+        }
+
+        private void setResolvedClass(Class<?> type) {
+            resolvedClass = type == null ? null : new WeakReference<Class<?>>(type);
+        }
+
+    }
+
+}
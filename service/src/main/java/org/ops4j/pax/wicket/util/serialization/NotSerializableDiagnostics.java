@@ -0,0 +1,239 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.serialization;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ops4j.pax.wicket.util.serialization.PaxWicketSerializableChecker.WicketNotSerializableException;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the {@link PaxWicketSerializableChecker} for objects which failed to serialize, without letting a page that
+ * fails over and over again pin the CPU: the detailed message found for a page class and not serializable class is
+ * remembered, and the object graph of a page class is analyzed at most once per {@link #getAnalysisInterval()}.
+ * <p>
+ * In asynchronous mode, which is meant for development only, the analysis runs on a background thread and its
+ * result is logged, while the request only sees the plain {@link java.io.NotSerializableException} (or the
+ * remembered message). Note that the graph can't be copied as it is not serializable, so the background thread walks
+ * the live objects; a graph changed meanwhile might give an incomplete trace, but never fails the request.
+ * </p>
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class NotSerializableDiagnostics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NotSerializableDiagnostics.class);
+
+    /** Constant <code>DEFAULT_ANALYSIS_INTERVAL=60000</code> */
+    public static final long DEFAULT_ANALYSIS_INTERVAL = 60000;
+
+    /** Distinct failures remembered; failures beyond are still analyzed (rate limited) but not remembered. */
+    private static final int MAX_VERDICTS = 1024;
+
+    /** Pending asynchronous analyses; further ones are dropped. */
+    private static final int MAX_PENDING = 16;
+
+    /** Detailed messages per page class and not serializable class. */
+    private final ConcurrentMap<String, String> verdicts = new ConcurrentHashMap<String, String>();
+
+    /** Time of the last analysis per page class. */
+    private final ConcurrentMap<String, AtomicLong> lastAnalysis = new ConcurrentHashMap<String, AtomicLong>();
+
+    private volatile long analysisInterval = DEFAULT_ANALYSIS_INTERVAL;
+    private volatile boolean asynchronous;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * <p>Getter for the field <code>analysisInterval</code>.</p>
+     *
+     * @return the minimum time in milliseconds between two analyses of the same page class.
+     */
+    public long getAnalysisInterval() {
+        return analysisInterval;
+    }
+
+    /**
+     * <p>Setter for the field <code>analysisInterval</code>.</p>
+     *
+     * @param analysisInterval the minimum time in milliseconds between two analyses of the same page class,
+     *            <code>0</code> analyzes every failure which is not remembered yet.
+     */
+    public void setAnalysisInterval(long analysisInterval) {
+        this.analysisInterval = Math.max(0, analysisInterval);
+    }
+
+    /**
+     * <p>isAsynchronous.</p>
+     *
+     * @return a boolean.
+     */
+    public boolean isAsynchronous() {
+        return asynchronous;
+    }
+
+    /**
+     * Lets the analysis run on a background thread; only meant for development.
+     *
+     * @param asynchronous a boolean.
+     */
+    public void setAsynchronous(boolean asynchronous) {
+        this.asynchronous = asynchronous;
+    }
+
+    /**
+     * Analyzes why <code>root</code> could not be serialized.
+     *
+     * @param root the object passed to the failed {@link java.io.ObjectOutputStream#writeObject(Object)}.
+     * @param exception the original failure.
+     * @throws org.ops4j.pax.wicket.util.serialization.PaxWicketSerializableChecker.WicketNotSerializableException
+     *             with the trace to the not serializable object, if known.
+     */
+    public void analyze(final Object root, final NotSerializableException exception) {
+        String rootClass = root.getClass().getName();
+        final String key = rootClass + '#' + exception.getMessage();
+        String verdict = verdicts.get(key);
+        if (verdict != null) {
+            throw new WicketNotSerializableException(verdict, exception);
+        }
+        if (!tryStartAnalysis(rootClass)) {
+            LOGGER.debug("Skipping analysis of {}, it was analyzed less than {} ms ago", rootClass, analysisInterval);
+            return;
+        }
+        if (!asynchronous) {
+            runAnalysis(root, exception, key);
+            return;
+        }
+        try {
+            getExecutor().execute(new Runnable() {
+                public void run() {
+                    try {
+                        runAnalysis(root, exception, key);
+                    } catch (WicketNotSerializableException e) {
+                        LOGGER.error(e.getMessage());
+                    } catch (RuntimeException e) {
+                        LOGGER.debug("Analysis of {} failed, the page was probably changed meanwhile", key, e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Too many pending analyses, dropped {}", key);
+        }
+    }
+
+    /**
+     * Forgets all remembered messages, e.g. after the classes of a bundle have been updated.
+     */
+    public void clear() {
+        verdicts.clear();
+        lastAnalysis.clear();
+    }
+
+    /**
+     * Stops the background thread (if any); pending analyses are dropped.
+     */
+    public synchronized void dispose() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private boolean tryStartAnalysis(String rootClass) {
+        long now = System.currentTimeMillis();
+        AtomicLong last = lastAnalysis.get(rootClass);
+        if (last == null) {
+            last = new AtomicLong(now);
+            AtomicLong existing = lastAnalysis.putIfAbsent(rootClass, last);
+            return existing == null || tryStartAnalysis(existing, now);
+        }
+        return tryStartAnalysis(last, now);
+    }
+
+    private boolean tryStartAnalysis(AtomicLong last, long now) {
+        long previous = last.get();
+        return now - previous >= analysisInterval && last.compareAndSet(previous, now);
+    }
+
+    private void runAnalysis(Object root, NotSerializableException exception, String key) {
+        try {
+            check(root, exception);
+        } catch (WicketNotSerializableException e) {
+            if (verdicts.size() < MAX_VERDICTS) {
+                verdicts.put(key, e.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_PENDING), new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "pax-wicket-serializable-checker");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        }
+        return executor;
+    }
+
+    /**
+     * Runs the {@link PaxWicketSerializableChecker} once over the whole graph of <code>root</code>.
+     *
+     * @throws WicketNotSerializableException if the checker found the not serializable object.
+     */
+    static void check(Object root, NotSerializableException exception) {
+        try {
+            new PaxWicketSerializableChecker(exception) {
+                @Override
+                protected boolean validateAdditionalSerializableConditions(Object obj) {
+                    return !(obj instanceof BundleContext) && !(obj instanceof Bundle);
+                }
+
+                @Override
+                protected Object additionalObjectReplacements(Object streamObj) {
+                    if (streamObj instanceof BundleContext) {
+                        BundleContext context = (BundleContext) streamObj;
+                        streamObj = ReplaceBundleContext.of(context);
+                    } else if (streamObj instanceof Bundle) {
+                        Bundle bundle = (Bundle) streamObj;
+                        streamObj = ReplaceBundle.of(bundle);
+                    }
+                    return streamObj;
+                }
+            }.writeObject(root);
+        } catch (IOException e) {
+            LOGGER.debug("Serializable checker failed for {}", root.getClass(), e);
+        }
+    }
+
+}
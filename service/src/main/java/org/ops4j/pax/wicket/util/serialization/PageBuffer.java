@@ -0,0 +1,165 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.serialization;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * An unsynchronized growable byte buffer which is recycled through a {@link Pool}, so serializing a page does not grow
+ * a fresh buffer from a few bytes each time.
+ */
+final class PageBuffer extends OutputStream {
+
+    /** Default for the largest buffer kept by a pool, in bytes. */
+    static final int DEFAULT_RETAINED_SIZE = 256 * 1024;
+
+    private static final int INITIAL_SIZE = 8 * 1024;
+
+    private byte[] buffer;
+    private int count;
+
+    PageBuffer() {
+        buffer = new byte[INITIAL_SIZE];
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buffer, count, len);
+        count += len;
+    }
+
+    /**
+     * Deflates directly into the free space of the buffer, growing it once it is full.
+     *
+     * @return the number of bytes written.
+     */
+    int deflate(Deflater deflater) {
+        if (count == buffer.length) {
+            ensureCapacity(count + 1);
+        }
+        int written = deflater.deflate(buffer, count, buffer.length - count);
+        count += written;
+        return written;
+    }
+
+    /**
+     * Gives direct access to the first {@link #size()} bytes, only valid until the next write or release.
+     */
+    byte[] array() {
+        return buffer;
+    }
+
+    int size() {
+        return count;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, count);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            if (capacity < 0) {
+                throw new OutOfMemoryError("Page exceeds the maximum array size");
+            }
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length << 1));
+        }
+    }
+
+    /**
+     * A bounded pool of buffers shared by all threads using one serializer. It keeps at most a fixed number of buffers,
+     * and only buffers which did not grow beyond {@link #getMaxBufferSize()}; once cleared it keeps none, so nothing
+     * outlives the serializer (and the class loader of its bundle).
+     */
+    static final class Pool {
+
+        /** Guarded by this. */
+        private final PageBuffer[] buffers;
+        /** Guarded by this. */
+        private int size;
+        /** Guarded by this. */
+        private boolean cleared;
+
+        private volatile int maxBufferSize = DEFAULT_RETAINED_SIZE;
+
+        /**
+         * @param capacity the number of buffers kept at most.
+         */
+        Pool(int capacity) {
+            buffers = new PageBuffer[capacity];
+        }
+
+        /**
+         * Returns an empty buffer, a recycled one if the pool has one.
+         */
+        PageBuffer acquire() {
+            synchronized (this) {
+                if (size > 0) {
+                    PageBuffer buffer = buffers[--size];
+                    buffers[size] = null;
+                    return buffer;
+                }
+            }
+            return new PageBuffer();
+        }
+
+        /**
+         * Hands the buffer back to the pool; it must not be used afterwards.
+         */
+        void release(PageBuffer buffer) {
+            buffer.count = 0;
+            if (buffer.buffer.length > maxBufferSize) {
+                return;
+            }
+            synchronized (this) {
+                if (!cleared && size < buffers.length) {
+                    buffers[size++] = buffer;
+                }
+            }
+        }
+
+        /**
+         * Drops all buffers; buffers released afterwards are not kept either.
+         */
+        synchronized void clear() {
+            Arrays.fill(buffers, 0, size, null);
+            size = 0;
+            cleared = true;
+        }
+
+        int getMaxBufferSize() {
+            return maxBufferSize;
+        }
+
+        /**
+         * @param maxBufferSize buffers with a larger capacity are dropped, <code>0</code> never retains a buffer.
+         */
+        void setMaxBufferSize(int maxBufferSize) {
+            this.maxBufferSize = Math.max(0, maxBufferSize);
+        }
+
+    }
+
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.serialization;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Snapshot of the (sampled) serialization statistics of one page class; sizes are in bytes as stored, times in
+ * microseconds. The histograms are power of two buckets as described in
+ * {@link org.ops4j.pax.wicket.util.metrics.Histogram}.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class PageClassStatistics {
+
+    private final String pageClass;
+    private final long serializedPages;
+    private final long serializedBytes;
+    private final long maxSerializedBytes;
+    private final long serializationMicros;
+    private final long deserializedPages;
+    private final long deserializationMicros;
+    private final long proxies;
+    private final long bundleReplacements;
+    private final long[] sizeHistogram;
+    private final long[] serializationTimeHistogram;
+    private final long[] deserializationTimeHistogram;
+
+    /**
+     * <p>Constructor for PageClassStatistics.</p>
+     */
+    @ConstructorProperties({ "pageClass", "serializedPages", "serializedBytes", "maxSerializedBytes",
+        "serializationMicros", "deserializedPages", "deserializationMicros", "proxies", "bundleReplacements",
+        "sizeHistogram", "serializationTimeHistogram", "deserializationTimeHistogram" })
+    public PageClassStatistics(String pageClass, long serializedPages, long serializedBytes, long maxSerializedBytes,
+            long serializationMicros, long deserializedPages, long deserializationMicros, long proxies,
+            long bundleReplacements, long[] sizeHistogram, long[] serializationTimeHistogram,
+            long[] deserializationTimeHistogram) {
+        this.pageClass = pageClass;
+        this.serializedPages = serializedPages;
+        this.serializedBytes = serializedBytes;
+        this.maxSerializedBytes = maxSerializedBytes;
+        this.serializationMicros = serializationMicros;
+        this.deserializedPages = deserializedPages;
+        this.deserializationMicros = deserializationMicros;
+        this.proxies = proxies;
+        this.bundleReplacements = bundleReplacements;
+        this.sizeHistogram = sizeHistogram;
+        this.serializationTimeHistogram = serializationTimeHistogram;
+        this.deserializationTimeHistogram = deserializationTimeHistogram;
+    }
+
+    /**
+     * <p>Getter for the field <code>pageClass</code>.</p>
+     *
+     * @return a {@link java.lang.String} object.
+     */
+    public String getPageClass() {
+        return pageClass;
+    }
+
+    /**
+     * <p>Getter for the field <code>serializedPages</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getSerializedPages() {
+        return serializedPages;
+    }
+
+    /**
+     * <p>Getter for the field <code>serializedBytes</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getSerializedBytes() {
+        return serializedBytes;
+    }
+
+    /**
+     * <p>Getter for the field <code>maxSerializedBytes</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getMaxSerializedBytes() {
+        return maxSerializedBytes;
+    }
+
+    /**
+     * <p>Getter for the field <code>serializationMicros</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getSerializationMicros() {
+        return serializationMicros;
+    }
+
+    /**
+     * <p>Getter for the field <code>deserializedPages</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getDeserializedPages() {
+        return deserializedPages;
+    }
+
+    /**
+     * <p>Getter for the field <code>deserializationMicros</code>.</p>
+     *
+     * @return a long.
+     */
+    public long getDeserializationMicros() {
+        return deserializationMicros;
+    }
+
+    /**
+     * <p>Getter for the field <code>proxies</code>.</p>
+     *
+     * @return number of lazy init proxies written.
+     */
+    public long getProxies() {
+        return proxies;
+    }
+
+    /**
+     * <p>Getter for the field <code>bundleReplacements</code>.</p>
+     *
+     * @return number of {@link org.osgi.framework.Bundle}s and {@link org.osgi.framework.BundleContext}s replaced.
+     */
+    public long getBundleReplacements() {
+        return bundleReplacements;
+    }
+
+    /**
+     * <p>Getter for the field <code>sizeHistogram</code>.</p>
+     *
+     * @return an array of long.
+     */
+    public long[] getSizeHistogram() {
+        return sizeHistogram.clone();
+    }
+
+    /**
+     * <p>Getter for the field <code>serializationTimeHistogram</code>.</p>
+     *
+     * @return an array of long.
+     */
+    public long[] getSerializationTimeHistogram() {
+        return serializationTimeHistogram.clone();
+    }
+
+    /**
+     * <p>Getter for the field <code>deserializationTimeHistogram</code>.</p>
+     *
+     * @return an array of long.
+     */
+    public long[] getDeserializationTimeHistogram() {
+        return deserializationTimeHistogram.clone();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return pageClass + " [serialized=" + serializedPages + ", bytes=" + serializedBytes + ", max="
+                + maxSerializedBytes + ", deserialized=" + deserializedPages + ", proxies=" + proxies + "]";
+    }
+
+}
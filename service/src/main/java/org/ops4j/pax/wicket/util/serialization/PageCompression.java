@@ -0,0 +1,406 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.serialization;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Optional compression stage of the {@link PaxWicketSerializer}. Serialized pages of at least {@link #getThreshold()}
+ * bytes are deflated and prefixed with a header byte; smaller pages, and pages that don't get smaller, are stored as
+ * they are. As a regular serialization stream never starts with the header byte, compressed and uncompressed pages
+ * can be mixed freely, e.g. after compression has been switched on or off.
+ * <p>
+ * Deflaters and inflaters hold native memory and are expensive to create, so each instance keeps a few of them for the
+ * next pages until {@link PaxWicketSerializer#dispose()} releases them.
+ * </p>
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class PageCompression {
+
+    /** Constant <code>DEFAULT_LEVEL=Deflater.BEST_SPEED</code> */
+    public static final int DEFAULT_LEVEL = Deflater.BEST_SPEED;
+
+    /** Constant <code>DEFAULT_THRESHOLD=1024</code> */
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    /**
+     * Regular streams start with 0xAC (stream magic) or 0x50 (class dictionary marker).
+     */
+    private static final byte DEFLATE_HEADER = 0x44;
+
+    /** Deflate does not expand data by more than this factor, anything larger is a corrupt length. */
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    /** The largest page which fits into an array. */
+    private static final int MAX_PAGE_SIZE = Integer.MAX_VALUE - 8;
+
+    /** A nowrap inflater might need one extra dummy byte after the compressed data. */
+    private static final byte[] PADDING = new byte[1];
+
+    private final int level;
+    private final int threshold;
+
+    private final AtomicLong compressedPages = new AtomicLong();
+    private final AtomicLong skippedPages = new AtomicLong();
+    private final AtomicLong uncompressedBytes = new AtomicLong();
+    private final AtomicLong compressedBytes = new AtomicLong();
+    private final AtomicLong compressionNanos = new AtomicLong();
+    private final AtomicLong decompressionNanos = new AtomicLong();
+
+    private final CodecPool<Deflater> deflaters;
+    private final CodecPool<Inflater> inflaters;
+
+    /**
+     * <p>Constructor for PageCompression.</p>
+     *
+     * @param level the deflate level, see {@link java.util.zip.Deflater}.
+     * @param threshold pages smaller than this number of bytes are not compressed.
+     */
+    public PageCompression(int level, int threshold) {
+        if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid deflate level " + level);
+        }
+        this.level = level;
+        this.threshold = Math.max(0, threshold);
+        int capacity = Runtime.getRuntime().availableProcessors();
+        deflaters = new CodecPool<Deflater>(capacity) {
+            @Override
+            Deflater create() {
+                return new Deflater(PageCompression.this.level, true);
+            }
+
+            @Override
+            void reset(Deflater deflater) {
+                deflater.reset();
+            }
+
+            @Override
+            void end(Deflater deflater) {
+                deflater.end();
+            }
+        };
+        inflaters = new CodecPool<Inflater>(capacity) {
+            @Override
+            Inflater create() {
+                return new Inflater(true);
+            }
+
+            @Override
+            void reset(Inflater inflater) {
+                inflater.reset();
+            }
+
+            @Override
+            void end(Inflater inflater) {
+                inflater.end();
+            }
+        };
+    }
+
+    /**
+     * Checks if the given data was written by {@link #compress(byte[])} and must be passed to {@link #decompress(byte[])}.
+     *
+     * @param data serialized page
+     * @return a boolean.
+     */
+    public static boolean isCompressed(byte[] data) {
+        return data != null && data.length > 0 && data[0] == DEFLATE_HEADER;
+    }
+
+    /**
+     * <p>compress.</p>
+     *
+     * @param data the serialized page
+     * @return the compressed page or data itself if compression is not worthwhile.
+     */
+    public byte[] compress(byte[] data) {
+        byte[] result = compress(data, data.length, null);
+        return result == null ? data : result;
+    }
+
+    /**
+     * Compresses the first <code>length</code> bytes of <code>data</code>.
+     *
+     * @param buffers the pool for the output buffer, <code>null</code> for a new one.
+     * @return the compressed page or <code>null</code> if compression is not worthwhile.
+     */
+    byte[] compress(byte[] data, int length, PageBuffer.Pool buffers) {
+        if (length < threshold) {
+            skippedPages.incrementAndGet();
+            return null;
+        }
+        long start = System.nanoTime();
+        Deflater deflater = deflaters.acquire();
+        PageBuffer out = buffers != null ? buffers.acquire() : new PageBuffer();
+        try {
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+            out.write(DEFLATE_HEADER);
+            writeLength(out, length);
+            while (!deflater.finished()) {
+                out.deflate(deflater);
+                if (out.size() >= length) {
+                    // no gain, keep the page as it is
+                    skippedPages.incrementAndGet();
+                    return null;
+                }
+            }
+            byte[] compressed = out.toByteArray();
+            compressedPages.incrementAndGet();
+            uncompressedBytes.addAndGet(length);
+            compressedBytes.addAndGet(compressed.length);
+            return compressed;
+        } finally {
+            if (buffers != null) {
+                buffers.release(out);
+            }
+            deflaters.release(deflater);
+            compressionNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * <p>decompress.</p>
+     *
+     * @param data a page for which {@link #isCompressed(byte[])} returned <code>true</code>
+     * @return the serialized page.
+     */
+    public byte[] decompress(byte[] data) {
+        long start = System.nanoTime();
+        Inflater inflater = inflaters.acquire();
+        try {
+            return inflate(data, inflater);
+        } finally {
+            inflaters.release(inflater);
+            decompressionNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Decompresses pages without any statistics, e.g. if compression has been switched off meanwhile.
+     *
+     * @param data a page for which {@link #isCompressed(byte[])} returned <code>true</code>
+     * @return the serialized page.
+     */
+    public static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater(true);
+        try {
+            return inflate(data, inflater);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, Inflater inflater) {
+        int offset = 1;
+        int length = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 28 || offset >= data.length) {
+                throw new IllegalStateException("Compressed page is corrupt, invalid length");
+            }
+            b = data[offset++] & 0xFF;
+            length |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        int compressedLength = data.length - offset;
+        if (length < 0 || length > MAX_PAGE_SIZE || length > (long) compressedLength * MAX_DEFLATE_RATIO + 64) {
+            throw new IllegalStateException("Compressed page is corrupt, invalid length " + length);
+        }
+        try {
+            inflater.setInput(data, offset, compressedLength);
+            boolean padded = false;
+            byte[] result = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int count = inflater.inflate(result, read, length - read);
+                if (count == 0) {
+                    if (!inflater.needsInput() || padded) {
+                        throw new IllegalStateException("Compressed page is truncated");
+                    }
+                    inflater.setInput(PADDING);
+                    padded = true;
+                }
+                read += count;
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Compressed page is corrupt", e);
+        }
+    }
+
+    private static void writeLength(PageBuffer out, int length) {
+        while ((length & ~0x7F) != 0) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+    }
+
+    /**
+     * <p>Getter for the field <code>level</code>.</p>
+     *
+     * @return a int.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * <p>Getter for the field <code>threshold</code>.</p>
+     *
+     * @return a int.
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * <p>getCompressedPages.</p>
+     *
+     * @return number of pages stored compressed.
+     */
+    public long getCompressedPages() {
+        return compressedPages.get();
+    }
+
+    /**
+     * <p>getSkippedPages.</p>
+     *
+     * @return number of pages stored uncompressed because they were too small or did not shrink.
+     */
+    public long getSkippedPages() {
+        return skippedPages.get();
+    }
+
+    /**
+     * <p>getCompressionRatio.</p>
+     *
+     * @return compressed size divided by original size of all compressed pages, <code>1</code> if none was compressed.
+     */
+    public double getCompressionRatio() {
+        long original = uncompressedBytes.get();
+        return original == 0 ? 1d : (double) compressedBytes.get() / original;
+    }
+
+    /**
+     * <p>getCompressionNanos.</p>
+     *
+     * @return CPU time spent compressing (including pages finally stored uncompressed).
+     */
+    public long getCompressionNanos() {
+        return compressionNanos.get();
+    }
+
+    /**
+     * Ends the pooled deflaters and inflaters; pages compressed afterwards use a new one each.
+     */
+    void dispose() {
+        deflaters.dispose();
+        inflaters.dispose();
+    }
+
+    /**
+     * Sets all counters back to zero.
+     */
+    void reset() {
+        compressedPages.set(0);
+        skippedPages.set(0);
+        uncompressedBytes.set(0);
+        compressedBytes.set(0);
+        compressionNanos.set(0);
+        decompressionNanos.set(0);
+    }
+
+    /**
+     * <p>getDecompressionNanos.</p>
+     *
+     * @return CPU time spent decompressing.
+     */
+    public long getDecompressionNanos() {
+        return decompressionNanos.get();
+    }
+
+    /**
+     * A bounded pool of deflaters or inflaters shared by all threads using one {@link PageCompression}, like the
+     * {@link PageBuffer.Pool}; codecs which don't fit into the pool, or come back after it was disposed, are ended.
+     */
+    private abstract static class CodecPool<C> {
+
+        /** Guarded by this. */
+        private final Object[] codecs;
+        /** Guarded by this. */
+        private int size;
+        /** Guarded by this. */
+        private boolean disposed;
+
+        private CodecPool(int capacity) {
+            codecs = new Object[capacity];
+        }
+
+        abstract C create();
+
+        abstract void reset(C codec);
+
+        abstract void end(C codec);
+
+        @SuppressWarnings("unchecked")
+        C acquire() {
+            synchronized (this) {
+                if (size > 0) {
+                    C codec = (C) codecs[--size];
+                    codecs[size] = null;
+                    return codec;
+                }
+            }
+            return create();
+        }
+
+        void release(C codec) {
+            reset(codec);
+            synchronized (this) {
+                if (!disposed && size < codecs.length) {
+                    codecs[size++] = codec;
+                    return;
+                }
+            }
+            end(codec);
+        }
+
+        @SuppressWarnings("unchecked")
+        void dispose() {
+            Object[] pooled;
+            synchronized (this) {
+                pooled = Arrays.copyOf(codecs, size);
+                Arrays.fill(codecs, 0, size, null);
+                size = 0;
+                disposed = true;
+            }
+            for (Object codec : pooled) {
+                end((C) codec);
+            }
+        }
+
+    }
+
+}
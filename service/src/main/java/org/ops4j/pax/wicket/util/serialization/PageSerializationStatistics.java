@@ -0,0 +1,214 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.serialization;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ops4j.pax.wicket.util.metrics.Histogram;
+
+/**
+ * Per page class size and time statistics of a {@link PaxWicketSerializer}. Recording is sampled: with a sampling
+ * rate of n only every n-th page is timed and recorded, the others cost a single counter increment; a rate of
+ * <code>0</code> (the default) disables recording completely. The counters of the {@link PageCompression} stage, if
+ * any, are always recorded and reported here as well.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class PageSerializationStatistics implements PageSerializationStatisticsMXBean {
+
+    /** Pages of further classes are recorded as {@link #OTHER_PAGES}. */
+    private static final int MAX_PAGE_CLASSES = 512;
+
+    /** Constant <code>OTHER_PAGES="&lt;other&gt;"</code> */
+    public static final String OTHER_PAGES = "<other>";
+
+    private static final Comparator<PageClassStatistics> BY_SERIALIZED_BYTES = new Comparator<PageClassStatistics>() {
+        public int compare(PageClassStatistics o1, PageClassStatistics o2) {
+            long b1 = o1.getSerializedBytes();
+            long b2 = o2.getSerializedBytes();
+            return b1 < b2 ? 1 : (b1 == b2 ? 0 : -1);
+        }
+    };
+
+    private final ConcurrentMap<String, Counters> pageClasses = new ConcurrentHashMap<String, Counters>();
+    private final AtomicLong ticks = new AtomicLong();
+
+    private volatile int samplingRate;
+    private volatile PageCompression compression;
+
+    /** {@inheritDoc} */
+    public int getSamplingRate() {
+        return samplingRate;
+    }
+
+    /** {@inheritDoc} */
+    public void setSamplingRate(int samplingRate) {
+        this.samplingRate = Math.max(0, samplingRate);
+    }
+
+    /**
+     * Decides if the current page is recorded.
+     *
+     * @return a boolean.
+     */
+    public boolean sample() {
+        int rate = samplingRate;
+        if (rate <= 1) {
+            return rate == 1;
+        }
+        return ticks.incrementAndGet() % rate == 0;
+    }
+
+    /**
+     * <p>recordSerialization.</p>
+     *
+     * @param pageClass the class of the serialized object.
+     * @param bytes size of the serialized page as stored.
+     * @param nanos time spent.
+     * @param proxies lazy init proxies written.
+     * @param bundleReplacements bundles and bundle contexts replaced.
+     */
+    public void recordSerialization(Class<?> pageClass, int bytes, long nanos, int proxies, int bundleReplacements) {
+        Counters counters = getCounters(pageClass);
+        counters.sizes.record(bytes);
+        counters.serializationTimes.record(nanos / 1000);
+        counters.proxies.addAndGet(proxies);
+        counters.bundleReplacements.addAndGet(bundleReplacements);
+    }
+
+    /**
+     * <p>recordDeserialization.</p>
+     *
+     * @param pageClass the class of the deserialized object.
+     * @param nanos time spent.
+     */
+    public void recordDeserialization(Class<?> pageClass, long nanos) {
+        getCounters(pageClass).deserializationTimes.record(nanos / 1000);
+    }
+
+    /** {@inheritDoc} */
+    public List<PageClassStatistics> getPageClasses() {
+        List<PageClassStatistics> result = new ArrayList<PageClassStatistics>(pageClasses.size());
+        for (Counters counters : pageClasses.values()) {
+            result.add(counters.snapshot());
+        }
+        Collections.sort(result, BY_SERIALIZED_BYTES);
+        return result;
+    }
+
+    /** {@inheritDoc} */
+    public PageClassStatistics getPageClass(String pageClass) {
+        Counters counters = pageClasses.get(pageClass);
+        return counters == null ? null : counters.snapshot();
+    }
+
+    /** {@inheritDoc} */
+    public long getCompressedPages() {
+        PageCompression current = compression;
+        return current == null ? 0 : current.getCompressedPages();
+    }
+
+    /** {@inheritDoc} */
+    public long getUncompressedPages() {
+        PageCompression current = compression;
+        return current == null ? 0 : current.getSkippedPages();
+    }
+
+    /** {@inheritDoc} */
+    public double getCompressionRatio() {
+        PageCompression current = compression;
+        return current == null ? 1d : current.getCompressionRatio();
+    }
+
+    /** {@inheritDoc} */
+    public long getCompressionMicros() {
+        PageCompression current = compression;
+        return current == null ? 0 : current.getCompressionNanos() / 1000;
+    }
+
+    /** {@inheritDoc} */
+    public long getDecompressionMicros() {
+        PageCompression current = compression;
+        return current == null ? 0 : current.getDecompressionNanos() / 1000;
+    }
+
+    /** {@inheritDoc} */
+    public void reset() {
+        pageClasses.clear();
+        PageCompression current = compression;
+        if (current != null) {
+            current.reset();
+        }
+    }
+
+    /**
+     * Sets the compression stage whose counters are reported along with the page classes.
+     */
+    void setCompression(PageCompression compression) {
+        this.compression = compression;
+    }
+
+    private Counters getCounters(Class<?> pageClass) {
+        String name = pageClass.getName();
+        // pages created by the pax wicket page factory are cglib subclasses
+        int enhanced = name.indexOf("$$");
+        if (enhanced > 0) {
+            name = name.substring(0, enhanced);
+        }
+        Counters counters = pageClasses.get(name);
+        if (counters == null) {
+            if (pageClasses.size() >= MAX_PAGE_CLASSES) {
+                name = OTHER_PAGES;
+            }
+            counters = new Counters(name);
+            Counters existing = pageClasses.putIfAbsent(name, counters);
+            if (existing != null) {
+                counters = existing;
+            }
+        }
+        return counters;
+    }
+
+    private static final class Counters {
+
+        private final String pageClass;
+        private final Histogram sizes = new Histogram();
+        private final Histogram serializationTimes = new Histogram();
+        private final Histogram deserializationTimes = new Histogram();
+        private final AtomicLong proxies = new AtomicLong();
+        private final AtomicLong bundleReplacements = new AtomicLong();
+
+        private Counters(String pageClass) {
+            this.pageClass = pageClass;
+        }
+
+        private PageClassStatistics snapshot() {
+            return new PageClassStatistics(pageClass, sizes.getCount(), sizes.getSum(), sizes.getMax(),
+                serializationTimes.getSum(), deserializationTimes.getCount(), deserializationTimes.getSum(),
+                proxies.get(), bundleReplacements.get(), sizes.getBuckets(), serializationTimes.getBuckets(),
+                deserializationTimes.getBuckets());
+        }
+
+    }
+
+}
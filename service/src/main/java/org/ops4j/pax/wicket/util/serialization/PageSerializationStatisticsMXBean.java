@@ -0,0 +1,99 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.serialization;
+
+import java.util.List;
+
+/**
+ * Management interface of the {@link PageSerializationStatistics} of an application; it is registered as OSGi service
+ * (with the {@link org.ops4j.pax.wicket.api.Constants#APPLICATION_NAME} property) and as MBean
+ * <code>org.ops4j.pax.wicket:type=PageSerialization,application=&lt;name&gt;</code>.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public interface PageSerializationStatisticsMXBean {
+
+    /**
+     * <p>getSamplingRate.</p>
+     *
+     * @return <code>0</code> if disabled, otherwise every n-th page is recorded.
+     */
+    int getSamplingRate();
+
+    /**
+     * <p>setSamplingRate.</p>
+     *
+     * @param samplingRate <code>0</code> disables recording, <code>1</code> records every page, n every n-th.
+     */
+    void setSamplingRate(int samplingRate);
+
+    /**
+     * <p>getPageClasses.</p>
+     *
+     * @return the statistics of all recorded page classes, the largest (by serialized bytes) first.
+     */
+    List<PageClassStatistics> getPageClasses();
+
+    /**
+     * <p>getPageClass.</p>
+     *
+     * @param pageClass the name of a page class.
+     * @return the statistics of the page class or <code>null</code> if it was not recorded.
+     */
+    PageClassStatistics getPageClass(String pageClass);
+
+    /**
+     * <p>getCompressedPages.</p>
+     *
+     * @return pages stored compressed, <code>0</code> if compression is disabled.
+     */
+    long getCompressedPages();
+
+    /**
+     * <p>getUncompressedPages.</p>
+     *
+     * @return pages stored uncompressed by the compression stage because they were too small or did not shrink.
+     */
+    long getUncompressedPages();
+
+    /**
+     * <p>getCompressionRatio.</p>
+     *
+     * @return compressed size divided by original size of all compressed pages, <code>1</code> if none was compressed.
+     */
+    double getCompressionRatio();
+
+    /**
+     * <p>getCompressionMicros.</p>
+     *
+     * @return CPU time spent compressing pages (including pages finally stored uncompressed).
+     */
+    long getCompressionMicros();
+
+    /**
+     * <p>getDecompressionMicros.</p>
+     *
+     * @return CPU time spent decompressing pages.
+     */
+    long getDecompressionMicros();
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    void reset();
+
+}
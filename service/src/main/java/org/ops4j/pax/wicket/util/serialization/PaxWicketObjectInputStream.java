@@ -17,8 +17,11 @@ package org.ops4j.pax.wicket.util.serialization;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectStreamClass;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Array;
 
 import org.apache.wicket.WicketRuntimeException;
 import org.apache.wicket.application.IClassResolver;
@@ -30,9 +33,17 @@ import org.apache.wicket.application.IClassResolver;
  * @since 0.5.4
  * @version $Id: $Id
  */
-public final class PaxWicketObjectInputStream extends ObjectInputStream {
+public final class PaxWicketObjectInputStream extends ObjectInputStream
+        implements ClassDescriptorDictionary.ClassNameResolver {
 
     private final IClassResolver classResolver;
+    private final ClassDescriptorDictionary dictionary;
+    private final ResolvedClassCache classCache;
+
+    /**
+     * Set by {@link #readStreamHeader()} which is called by the super constructor, hence no initializer.
+     */
+    private boolean compactClassDescriptors;
 
     /**
      * <p>Constructor for PaxWicketObjectInputStream.</p>
@@ -42,12 +53,85 @@ public final class PaxWicketObjectInputStream extends ObjectInputStream {
      * @throws java.io.IOException if any.
      */
     public PaxWicketObjectInputStream(InputStream inputStream, IClassResolver resolver) throws IOException {
+        this(inputStream, resolver, null);
+    }
+
+    /**
+     * <p>Constructor for PaxWicketObjectInputStream.</p>
+     *
+     * @param inputStream a {@link java.io.InputStream} object.
+     * @param resolver a {@link org.apache.wicket.application.IClassResolver} object.
+     * @param dictionary the {@link ClassDescriptorDictionary} to decode streams written with a dictionary, might be
+     *            <code>null</code> if only regular streams are expected.
+     * @throws java.io.IOException if any.
+     */
+    public PaxWicketObjectInputStream(InputStream inputStream, IClassResolver resolver,
+            ClassDescriptorDictionary dictionary) throws IOException {
+        this(inputStream, resolver, dictionary, null);
+    }
+
+    /**
+     * <p>Constructor for PaxWicketObjectInputStream.</p>
+     *
+     * @param inputStream a {@link java.io.InputStream} object.
+     * @param resolver a {@link org.apache.wicket.application.IClassResolver} object.
+     * @param dictionary the {@link ClassDescriptorDictionary} to decode streams written with a dictionary, might be
+     *            <code>null</code> if only regular streams are expected.
+     * @param classCache the {@link ResolvedClassCache} shared by all streams of an application, might be
+     *            <code>null</code>.
+     * @throws java.io.IOException if any.
+     */
+    public PaxWicketObjectInputStream(InputStream inputStream, IClassResolver resolver,
+            ClassDescriptorDictionary dictionary, ResolvedClassCache classCache) throws IOException {
         super(inputStream);
 
         classResolver = resolver;
+        this.dictionary = dictionary;
+        this.classCache = classCache;
         enableResolveObject(true);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    protected void readStreamHeader() throws IOException, StreamCorruptedException {
+        short magic = readShort();
+        if (magic == PaxWicketObjectOutputStream.CLASS_DICTIONARY_MAGIC) {
+            compactClassDescriptors = true;
+            magic = readShort();
+        }
+        short version = readShort();
+        if (magic != STREAM_MAGIC || version != STREAM_VERSION) {
+            throw new StreamCorruptedException(String.format("invalid stream header: %04X%04X", magic, version));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+        if (!compactClassDescriptors) {
+            return super.readClassDescriptor();
+        }
+        if (dictionary == null) {
+            throw new InvalidClassException("Stream was written with a class dictionary but none is available");
+        }
+        int id = 0;
+        int shift = 0;
+        int b;
+        do {
+            if (shift > 28) {
+                // an int takes at most five bytes
+                throw new StreamCorruptedException("invalid class dictionary id");
+            }
+            b = readUnsignedByte();
+            id |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        if (id < 0) {
+            throw new StreamCorruptedException("invalid class dictionary id: " + id);
+        }
+        return dictionary.getDescriptor(id, this);
+    }
+
     /** {@inheritDoc} */
     @Override
     protected final Object resolveObject(Object object) throws IOException {
@@ -66,14 +150,33 @@ public final class PaxWicketObjectInputStream extends ObjectInputStream {
     @Override
     protected final Class<?> resolveClass(ObjectStreamClass objectStreamClass) throws IOException,
         ClassNotFoundException {
+        Class<?> localClass = objectStreamClass.forClass();
+        if (localClass != null) {
+            // local descriptor from the class dictionary, already resolved
+            return localClass;
+        }
         String className = objectStreamClass.getName();
-
-        Class<?> candidate = resolveClassByClassResolver(className);
+        Class<?> candidate = getCachedClass(className);
         if (candidate != null) {
             return candidate;
         }
 
-        return super.resolveClass(objectStreamClass);
+        candidate = resolveClassByClassResolver(className);
+        if (candidate == null) {
+            candidate = super.resolveClass(objectStreamClass);
+        }
+        cacheClass(candidate);
+        return candidate;
+    }
+
+    private Class<?> getCachedClass(String className) {
+        return classCache == null ? null : classCache.get(className);
+    }
+
+    private void cacheClass(Class<?> resolvedClass) {
+        if (classCache != null) {
+            classCache.put(resolvedClass);
+        }
     }
 
     private Class<?> resolveClassByClassResolver(String className) {
@@ -89,4 +192,34 @@ public final class PaxWicketObjectInputStream extends ObjectInputStream {
 
         return resolvedClass;
     }
+
+    /**
+     * Resolves classes of the {@link ClassDescriptorDictionary}, using the same lookup order as
+     * {@link #resolveClass(ObjectStreamClass)}.
+     *
+     * @param className a {@link java.lang.String} object.
+     * @return the resolved class
+     * @throws java.lang.ClassNotFoundException if any.
+     */
+    public Class<?> resolveClass(String className) throws ClassNotFoundException {
+        if (className.startsWith("[")) {
+            int dimensions = className.lastIndexOf('[') + 1;
+            if (className.charAt(dimensions) != 'L') {
+                // array of primitives
+                return Class.forName(className);
+            }
+            Class<?> componentType = resolveClass(className.substring(dimensions + 1, className.length() - 1));
+            return Array.newInstance(componentType, new int[dimensions]).getClass();
+        }
+        Class<?> candidate = getCachedClass(className);
+        if (candidate != null) {
+            return candidate;
+        }
+        candidate = resolveClassByClassResolver(className);
+        if (candidate == null) {
+            candidate = Class.forName(className, false, PaxWicketObjectInputStream.class.getClassLoader());
+        }
+        cacheClass(candidate);
+        return candidate;
+    }
 }
@@ -20,9 +20,13 @@ import static org.ops4j.lang.NullArgumentException.validateNotNull;
 import java.io.IOException;
 import java.io.NotSerializableException;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
 import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.wicket.core.util.objects.checker.CheckingObjectOutputStream;
+import org.ops4j.pax.wicket.util.proxy.LazyInitProxyFactory;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.slf4j.Logger;
@@ -37,8 +41,15 @@ import org.slf4j.LoggerFactory;
  */
 public class PaxWicketObjectOutputStream extends ObjectOutputStream {
 
+    /**
+     * Written in front of the regular stream header if class descriptors are written as ids of a
+     * {@link ClassDescriptorDictionary}.
+     */
+    static final short CLASS_DICTIONARY_MAGIC = (short) 0x5043;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(PaxWicketObjectOutputStream.class);
     protected final ObjectOutputStream outputStream;
+    private final NotSerializableDiagnostics diagnostics;
 
     /**
      * <p>Constructor for PaxWicketObjectOutputStream.</p>
@@ -47,8 +58,37 @@ public class PaxWicketObjectOutputStream extends ObjectOutputStream {
      * @throws java.io.IOException if any.
      */
     public PaxWicketObjectOutputStream(OutputStream outputStream) throws IOException {
+        this(outputStream, null);
+    }
+
+    /**
+     * <p>Constructor for PaxWicketObjectOutputStream.</p>
+     *
+     * @param outputStream a {@link java.io.OutputStream} object.
+     * @param dictionary the {@link ClassDescriptorDictionary} to write class descriptors as ids, might be
+     *            <code>null</code> to write regular java serialization streams.
+     * @throws java.io.IOException if any.
+     */
+    public PaxWicketObjectOutputStream(OutputStream outputStream, ClassDescriptorDictionary dictionary)
+        throws IOException {
+        this(outputStream, dictionary, null);
+    }
+
+    /**
+     * <p>Constructor for PaxWicketObjectOutputStream.</p>
+     *
+     * @param outputStream a {@link java.io.OutputStream} object.
+     * @param dictionary the {@link ClassDescriptorDictionary} to write class descriptors as ids, might be
+     *            <code>null</code> to write regular java serialization streams.
+     * @param diagnostics analyzes objects which are not serializable, might be <code>null</code> to run the
+     *            {@link PaxWicketSerializableChecker} for every failure.
+     * @throws java.io.IOException if any.
+     */
+    public PaxWicketObjectOutputStream(OutputStream outputStream, ClassDescriptorDictionary dictionary,
+            NotSerializableDiagnostics diagnostics) throws IOException {
         validateNotNull(outputStream, "outputStream");
-        this.outputStream = new OSGiAwareOutputStream(outputStream);
+        this.outputStream = new OSGiAwareOutputStream(outputStream, dictionary);
+        this.diagnostics = diagnostics;
     }
 
     /** {@inheritDoc} */
@@ -59,26 +99,11 @@ public class PaxWicketObjectOutputStream extends ObjectOutputStream {
         } catch (NotSerializableException e) {
             if (CheckingObjectOutputStream.isAvailable()) {
                 // trigger serialization again, but this time gather some more info
-                new PaxWicketSerializableChecker(e) {
-                    @Override
-                    protected boolean validateAdditionalSerializableConditions(Object obj) {
-                        return !(obj instanceof BundleContext) && !(obj instanceof Bundle);
-                    }
-
-                    @Override
-                    protected Object additionalObjectReplacements(Object streamObj) {
-                        if (streamObj instanceof BundleContext) {
-                            BundleContext context = (BundleContext) streamObj;
-                            streamObj = new ReplaceBundleContext(context);
-                        } else if (streamObj instanceof Bundle) {
-                            Bundle bundle = (Bundle) streamObj;
-                            streamObj = new ReplaceBundle(bundle);
-                        }
-                        return streamObj;
-                    }
-                }.writeObject(object);
-                // if we get here, we didn't fail, while we should;
-                throw e;
+                if (diagnostics != null) {
+                    diagnostics.analyze(object, e);
+                } else {
+                    NotSerializableDiagnostics.check(object, e);
+                }
             }
             throw e;
         } catch (RuntimeException e) {
@@ -87,6 +112,25 @@ public class PaxWicketObjectOutputStream extends ObjectOutputStream {
         }
     }
 
+    /**
+     * <p>getProxyCount.</p>
+     *
+     * @return the number of lazy init proxies written so far.
+     */
+    int getProxyCount() {
+        return outputStream instanceof OSGiAwareOutputStream ? ((OSGiAwareOutputStream) outputStream).proxies : 0;
+    }
+
+    /**
+     * <p>getBundleReplacementCount.</p>
+     *
+     * @return the number of {@link Bundle}s and {@link BundleContext}s replaced so far.
+     */
+    int getBundleReplacementCount() {
+        return outputStream instanceof OSGiAwareOutputStream
+            ? ((OSGiAwareOutputStream) outputStream).bundleReplacements : 0;
+    }
+
     /** {@inheritDoc} */
     @Override
     public final void flush() throws IOException {
@@ -101,24 +145,68 @@ public class PaxWicketObjectOutputStream extends ObjectOutputStream {
 
     private static final class OSGiAwareOutputStream extends ObjectOutputStream {
 
-        private OSGiAwareOutputStream(OutputStream outputStream)
+        private final ClassDescriptorDictionary dictionary;
+
+        /**
+         * Proxy replacements written so far; an equal one is replaced by the first, so the stream only contains a back
+         * reference to it.
+         */
+        private final Map<Object, Object> proxyReplacements = new HashMap<Object, Object>();
+
+        private int proxies;
+        private int bundleReplacements;
+
+        private OSGiAwareOutputStream(OutputStream outputStream, ClassDescriptorDictionary dictionary)
             throws IOException {
-            super(outputStream);
+            super(writeDictionaryMarker(outputStream, dictionary));
+            this.dictionary = dictionary;
             enableReplaceObject(true);
         }
 
+        /**
+         * The marker has to precede the regular stream header written by the super constructor.
+         */
+        private static OutputStream writeDictionaryMarker(OutputStream outputStream,
+                ClassDescriptorDictionary dictionary) throws IOException {
+            if (dictionary != null) {
+                outputStream.write((CLASS_DICTIONARY_MAGIC >>> 8) & 0xFF);
+                outputStream.write(CLASS_DICTIONARY_MAGIC & 0xFF);
+            }
+            return outputStream;
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass descriptor) throws IOException {
+            if (dictionary == null) {
+                super.writeClassDescriptor(descriptor);
+                return;
+            }
+            int id = dictionary.getId(descriptor);
+            while ((id & ~0x7F) != 0) {
+                writeByte((id & 0x7F) | 0x80);
+                id >>>= 7;
+            }
+            writeByte(id);
+        }
+
         @Override
         protected Object replaceObject(Object object)
             throws IOException {
             if (object instanceof BundleContext) {
                 BundleContext context = (BundleContext) object;
-                return new ReplaceBundleContext(context);
+                bundleReplacements++;
+                return ReplaceBundleContext.of(context);
             } else if (object instanceof Bundle) {
                 Bundle bundle = (Bundle) object;
-                return new ReplaceBundle(bundle);
-            } else {
-                return super.replaceObject(object);
+                bundleReplacements++;
+                return ReplaceBundle.of(bundle);
+            }
+            Object proxyReplacement = LazyInitProxyFactory.internProxyReplacement(object, proxyReplacements);
+            if (proxyReplacement != null) {
+                proxies++;
+                return proxyReplacement;
             }
+            return super.replaceObject(object);
         }
     }
 
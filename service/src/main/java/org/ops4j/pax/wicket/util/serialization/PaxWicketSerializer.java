@@ -20,6 +20,9 @@ import org.apache.wicket.application.IClassResolver;
 import org.apache.wicket.protocol.http.WebApplication;
 import org.apache.wicket.serialize.java.JavaSerializer;
 import org.apache.wicket.settings.IApplicationSettings;
+import org.apache.wicket.util.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
 
@@ -31,25 +34,210 @@ import java.io.*;
  * @version $Id: $Id
  */
 public class PaxWicketSerializer extends JavaSerializer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PaxWicketSerializer.class);
+
+    private final String applicationKey;
+    private final ClassDescriptorDictionary classDictionary;
+    private final PageCompression compression;
+    private final ResolvedClassCache classCache = new ResolvedClassCache();
+    private final NotSerializableDiagnostics diagnostics = new NotSerializableDiagnostics();
+    private final PageSerializationStatistics statistics = new PageSerializationStatistics();
+
+    /** Serializing and compressing a page need one buffer each. */
+    private final PageBuffer.Pool buffers = new PageBuffer.Pool(2 * Runtime.getRuntime().availableProcessors());
+
     /**
      * <p>Constructor for PaxWicketSerializer.</p>
      *
      * @param applicationKey a {@link java.lang.String} object.
      */
     public PaxWicketSerializer(String applicationKey) {
+        this(applicationKey, null);
+    }
+
+    /**
+     * <p>Constructor for PaxWicketSerializer.</p>
+     *
+     * @param applicationKey a {@link java.lang.String} object.
+     * @param classDictionary if not <code>null</code> class descriptors are written as ids of this
+     *            {@link ClassDescriptorDictionary} instead of the full descriptor.
+     */
+    public PaxWicketSerializer(String applicationKey, ClassDescriptorDictionary classDictionary) {
+        this(applicationKey, classDictionary, null);
+    }
+
+    /**
+     * <p>Constructor for PaxWicketSerializer.</p>
+     *
+     * @param applicationKey a {@link java.lang.String} object.
+     * @param classDictionary if not <code>null</code> class descriptors are written as ids of this
+     *            {@link ClassDescriptorDictionary} instead of the full descriptor.
+     * @param compression if not <code>null</code> serialized pages are compressed by this {@link PageCompression}.
+     */
+    public PaxWicketSerializer(String applicationKey, ClassDescriptorDictionary classDictionary,
+            PageCompression compression) {
         super(applicationKey);
+        this.applicationKey = applicationKey;
+        this.classDictionary = classDictionary;
+        this.compression = compression;
+        statistics.setCompression(compression);
+        BundleReplacementEvictor.register();
+    }
+
+    /**
+     * <p>Getter for the field <code>classDictionary</code>.</p>
+     *
+     * @return the {@link ClassDescriptorDictionary} or <code>null</code> if full descriptors are written.
+     */
+    public ClassDescriptorDictionary getClassDictionary() {
+        return classDictionary;
+    }
+
+    /**
+     * <p>Getter for the field <code>compression</code>.</p>
+     *
+     * @return the {@link PageCompression} or <code>null</code> if pages are stored uncompressed.
+     */
+    public PageCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * <p>Getter for the field <code>diagnostics</code>.</p>
+     *
+     * @return the {@link NotSerializableDiagnostics} used if pages can't be serialized.
+     */
+    public NotSerializableDiagnostics getDiagnostics() {
+        return diagnostics;
+    }
+
+    /**
+     * <p>Getter for the field <code>statistics</code>.</p>
+     *
+     * @return the per page class {@link PageSerializationStatistics}, disabled unless a sampling rate is set.
+     */
+    public PageSerializationStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * <p>getRetainedBufferSize.</p>
+     *
+     * @return the largest serialization buffer in bytes which is kept for the next page.
+     */
+    public int getRetainedBufferSize() {
+        return buffers.getMaxBufferSize();
+    }
+
+    /**
+     * Sets the largest serialization buffer in bytes which is kept for the next page; larger buffers are left to the
+     * garbage collector, <code>0</code> disables recycling.
+     *
+     * @param retainedBufferSize a int.
+     */
+    public void setRetainedBufferSize(int retainedBufferSize) {
+        buffers.setMaxBufferSize(retainedBufferSize);
+    }
+
+    /**
+     * Forgets all classes resolved so far; has to be called whenever bundles are updated or refreshed.
+     */
+    public void clearResolvedClasses() {
+        classCache.clear();
+        diagnostics.clear();
+        if (classDictionary != null) {
+            classDictionary.clearResolvedClasses();
+        }
+    }
+
+    /**
+     * Releases the resources of this serializer when its application is destroyed: the recycled buffers, the codecs
+     * of the {@link PageCompression} and the {@link NotSerializableDiagnostics}.
+     */
+    public void dispose() {
+        buffers.clear();
+        if (compression != null) {
+            compression.dispose();
+        }
+        diagnostics.dispose();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Same as {@link JavaSerializer#serialize(Object)} but writes into a recycled buffer, which is copied only once
+     * into the returned array (compressed if configured).
+     */
+    @Override
+    public byte[] serialize(Object object) {
+        boolean sampled = statistics.sample();
+        long start = sampled ? System.nanoTime() : 0;
+        PageBuffer buffer = buffers.acquire();
+        try {
+            ObjectOutputStream out = newObjectOutputStream(buffer);
+            try {
+                out.writeObject(applicationKey);
+                out.writeObject(object);
+            } finally {
+                IOUtils.close(out);
+            }
+            byte[] result = null;
+            if (compression != null) {
+                result = compression.compress(buffer.array(), buffer.size(), buffers);
+            }
+            if (result == null) {
+                result = buffer.toByteArray();
+            }
+            if (sampled) {
+                recordSerialization(object, result.length, System.nanoTime() - start, out);
+            }
+            return result;
+        } catch (Exception e) {
+            LOGGER.error("Error serializing object " + object.getClass() + " [object=" + object + "]", e);
+            return null;
+        } finally {
+            buffers.release(buffer);
+        }
+    }
+
+    private void recordSerialization(Object object, int bytes, long nanos, ObjectOutputStream out) {
+        int proxies = 0;
+        int bundleReplacements = 0;
+        if (out instanceof PaxWicketObjectOutputStream) {
+            PaxWicketObjectOutputStream paxOut = (PaxWicketObjectOutputStream) out;
+            proxies = paxOut.getProxyCount();
+            bundleReplacements = paxOut.getBundleReplacementCount();
+        }
+        statistics.recordSerialization(object.getClass(), bytes, nanos, proxies, bundleReplacements);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Object deserialize(byte[] data) {
+        boolean sampled = statistics.sample();
+        long start = sampled ? System.nanoTime() : 0;
+        if (PageCompression.isCompressed(data)) {
+            // pages compressed before compression was switched off are still readable
+            data = compression != null ? compression.decompress(data) : PageCompression.inflate(data);
+        }
+        Object result = super.deserialize(data);
+        if (sampled && result != null) {
+            statistics.recordDeserialization(result.getClass(), System.nanoTime() - start);
+        }
+        return result;
     }
 
     /** {@inheritDoc} */
     @Override
     protected ObjectInputStream newObjectInputStream(InputStream in) throws IOException {
-        return new PaxWicketObjectInputStream(in, getClassResolver());
+        return new PaxWicketObjectInputStream(in, getClassResolver(), classDictionary, classCache);
     }
 
     /** {@inheritDoc} */
     @Override
     protected ObjectOutputStream newObjectOutputStream(OutputStream out) throws IOException {
-        return new PaxWicketObjectOutputStream(out);
+        return new PaxWicketObjectOutputStream(out, classDictionary, diagnostics);
     }
 
     private IClassResolver getClassResolver() {
@@ -18,6 +18,8 @@ package org.ops4j.pax.wicket.util.serialization;
 import static org.ops4j.lang.NullArgumentException.validateNotNull;
 
 import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.ops4j.pax.wicket.internal.Activator;
 import org.osgi.framework.Bundle;
@@ -27,11 +29,38 @@ final class ReplaceBundle implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
-    private long bundleId;
+    /**
+     * One (immutable) replacement per bundle id, so a bundle referenced all over a page is written once and then only
+     * as back reference. Entries are removed when their bundle is uninstalled, see {@link #remove(long)}.
+     */
+    private static final ConcurrentMap<Long, ReplaceBundle> REPLACEMENTS =
+        new ConcurrentHashMap<Long, ReplaceBundle>();
 
-    ReplaceBundle(Bundle bundle) {
+    private final long bundleId;
+
+    private ReplaceBundle(long bundleId) {
+        this.bundleId = bundleId;
+    }
+
+    static ReplaceBundle of(Bundle bundle) {
         validateNotNull(bundle, "bundle");
-        bundleId = bundle.getBundleId();
+        long bundleId = bundle.getBundleId();
+        ReplaceBundle replacement = REPLACEMENTS.get(bundleId);
+        if (replacement == null) {
+            replacement = new ReplaceBundle(bundleId);
+            ReplaceBundle existing = REPLACEMENTS.putIfAbsent(bundleId, replacement);
+            if (existing != null) {
+                replacement = existing;
+            }
+        }
+        return replacement;
+    }
+
+    /**
+     * Forgets the replacement of an uninstalled bundle; bundle ids are never reused.
+     */
+    static void remove(long bundleId) {
+        REPLACEMENTS.remove(bundleId);
     }
 
     final Bundle getBundle() {
@@ -18,6 +18,8 @@ package org.ops4j.pax.wicket.util.serialization;
 import static org.ops4j.lang.NullArgumentException.validateNotNull;
 
 import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.ops4j.pax.wicket.internal.Activator;
 import org.osgi.framework.Bundle;
@@ -27,22 +29,47 @@ final class ReplaceBundleContext implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * One (immutable) replacement per bundle id, see {@link ReplaceBundle}.
+     */
+    private static final ConcurrentMap<Long, ReplaceBundleContext> REPLACEMENTS =
+        new ConcurrentHashMap<Long, ReplaceBundleContext>();
+
     private final long bundleId;
 
+    private ReplaceBundleContext(long bundleId) {
+        this.bundleId = bundleId;
+    }
+
     /**
-     * Construct a new instance of {@code ReplaceBundleContext}.
+     * Returns the replacement of the given bundle context.
      *
      * @param bundleContext The bundle context. Must not be {@code null}.
      *
      * @throws IllegalArgumentException Thrown if the specified
      * {@code aBundleContext} is {@code null}.
-     * @since 0.5.4
      */
-    ReplaceBundleContext(BundleContext bundleContext) throws IllegalArgumentException {
+    static ReplaceBundleContext of(BundleContext bundleContext) throws IllegalArgumentException {
         validateNotNull(bundleContext, "bundleContext");
 
         Bundle bundle = bundleContext.getBundle();
-        bundleId = bundle.getBundleId();
+        long bundleId = bundle.getBundleId();
+        ReplaceBundleContext replacement = REPLACEMENTS.get(bundleId);
+        if (replacement == null) {
+            replacement = new ReplaceBundleContext(bundleId);
+            ReplaceBundleContext existing = REPLACEMENTS.putIfAbsent(bundleId, replacement);
+            if (existing != null) {
+                replacement = existing;
+            }
+        }
+        return replacement;
+    }
+
+    /**
+     * Forgets the replacement of an uninstalled bundle; bundle ids are never reused.
+     */
+    static void remove(long bundleId) {
+        REPLACEMENTS.remove(bundleId);
     }
 
     /**
@@ -0,0 +1,70 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.serialization;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Caches the classes resolved while deserializing pages of one application, so that a class name has to go through
+ * the {@link org.apache.wicket.application.IClassResolver}s only once. The classes are referenced weakly so the cache
+ * never keeps the class loader of an updated bundle alive; nevertheless {@link #clear()} has to be called if bundles
+ * are updated or refreshed, as the old classes might still be reachable from somewhere else.
+ *
+ * @author nmw
+ * @version $Id: $Id
+ */
+public final class ResolvedClassCache {
+
+    private final ConcurrentMap<String, WeakReference<Class<?>>> classes =
+        new ConcurrentHashMap<String, WeakReference<Class<?>>>();
+
+    /**
+     * <p>get.</p>
+     *
+     * @param className a {@link java.lang.String} object.
+     * @return the cached class or <code>null</code> if it has not been resolved (or was collected meanwhile).
+     */
+    public Class<?> get(String className) {
+        WeakReference<Class<?>> reference = classes.get(className);
+        if (reference == null) {
+            return null;
+        }
+        Class<?> resolved = reference.get();
+        if (resolved == null) {
+            classes.remove(className, reference);
+        }
+        return resolved;
+    }
+
+    /**
+     * <p>put.</p>
+     *
+     * @param resolved the resolved {@link java.lang.Class}.
+     */
+    public void put(Class<?> resolved) {
+        classes.put(resolved.getName(), new WeakReference<Class<?>>(resolved));
+    }
+
+    /**
+     * Forgets all classes.
+     */
+    public void clear() {
+        classes.clear();
+    }
+
+}
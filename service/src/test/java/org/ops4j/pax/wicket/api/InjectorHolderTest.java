@@ -51,6 +51,27 @@ public class InjectorHolderTest {
         });
         InjectorHolder.setInjector(wicketTester.getApplication().getApplicationKey(), paxWicketInjector);
         assertSame(paxWicketInjector, InjectorHolder.getInjector());
+        assertSame(paxWicketInjector, InjectorHolder.getInjector(wicketTester.getApplication()));
+    }
+
+    @Test
+    public void testReplaceInjector_shouldNotReturnCachedInjector() throws Exception {
+        WicketTester wicketTester = new WicketTester();
+        String applicationKey = wicketTester.getApplication().getApplicationKey();
+        PaxWicketInjector first = new PaxWicketInjector() {
+            public void inject(Object toInject, Class<?> toHandle) {
+                // not required for this test
+            }
+        };
+        PaxWicketInjector second = new PaxWicketInjector() {
+            public void inject(Object toInject, Class<?> toHandle) {
+                // not required for this test
+            }
+        };
+        InjectorHolder.setInjector(applicationKey, first);
+        assertSame(first, InjectorHolder.getInjector(wicketTester.getApplication()));
+        InjectorHolder.setInjector(applicationKey, second);
+        assertSame(second, InjectorHolder.getInjector(wicketTester.getApplication()));
     }
 
 }
@@ -0,0 +1,197 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.component.model;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.ServiceReference;
+
+public class AbstractDetachableListServiceModelTest {
+
+    public interface Source {
+        String load() throws Exception;
+    }
+
+    private ServiceRegistryFixture registry;
+    private Class<Source> sourceType;
+    private ExecutorService executor;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setup() throws Exception {
+        registry = new ServiceRegistryFixture();
+        sourceType = registry.defineInBundle(Source.class);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+        SharedServiceTracker.closeAll();
+    }
+
+    @Test
+    public void testLoadConcurrently_shouldKeepTheRankingOrder() throws Exception {
+        registry.register(1L, 0, answer("c", 0));
+        registry.register(2L, 10, answer("a", 100));
+        registry.register(3L, 5, answer("b", 50));
+        SourceModel model = new SourceModel(sourceType, executor);
+
+        assertEquals(asList("a", "b", "c"), model.getObject());
+        assertEquals(3, model.loaded.size());
+        for (Throwable failure : model.loaded.values()) {
+            assertNull(failure);
+        }
+    }
+
+    @Test
+    public void testLoadConcurrently_shouldLeaveOutServicesExceedingTheCallTimeout() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        ServiceReference<Source> fast = registry.register(1L, 10, answer("fast", 0));
+        ServiceReference<Source> slow = registry.register(2L, 5, blocking(interrupted));
+        SourceModel model = new SourceModel(sourceType, executor);
+        model.setTimeouts(100, 10000);
+
+        long start = System.nanoTime();
+        assertEquals(asList("fast"), model.getObject());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertNull(model.loaded.get(fast));
+        assertTrue(model.loaded.get(slow) instanceof TimeoutException);
+        // the late call is cancelled
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLoadConcurrently_shouldNotWaitLongerThanTheLoadTimeout() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(3);
+        registry.register(1L, 10, blocking(interrupted));
+        registry.register(2L, 5, blocking(interrupted));
+        registry.register(3L, 0, blocking(interrupted));
+        SourceModel model = new SourceModel(sourceType, executor);
+        model.setTimeouts(10000, 200);
+
+        long start = System.nanoTime();
+        assertEquals(Collections.emptyList(), model.getObject());
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(200));
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(5));
+        assertEquals(3, model.loaded.size());
+        for (Throwable failure : model.loaded.values()) {
+            assertTrue(failure instanceof TimeoutException);
+        }
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLoadConcurrently_shouldRunRejectedCallsOnTheRequestThread() throws Exception {
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        registry.register(1L, 10, recordingThread("a", threads));
+        registry.register(2L, 5, recordingThread("b", threads));
+        SourceModel model = new SourceModel(sourceType, new Executor() {
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException("saturated");
+            }
+        });
+
+        assertEquals(asList("a", "b"), model.getObject());
+        assertEquals(2, threads.size());
+        for (Thread thread : threads) {
+            assertSame(Thread.currentThread(), thread);
+        }
+    }
+
+    private static Source answer(final String value, final long delayMillis) {
+        return new Source() {
+            public String load() throws Exception {
+                Thread.sleep(delayMillis);
+                return value;
+            }
+        };
+    }
+
+    private Source blocking(final CountDownLatch interrupted) {
+        return new Source() {
+            public String load() throws Exception {
+                try {
+                    release.await();
+                    return "late";
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    private static Source recordingThread(final String value, final List<Thread> threads) {
+        return new Source() {
+            public String load() {
+                threads.add(Thread.currentThread());
+                return value;
+            }
+        };
+    }
+
+    private static final class SourceModel extends AbstractDetachableListServiceModel<Source, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient Executor executor;
+        private final transient Map<ServiceReference<?>, Throwable> loaded =
+            new HashMap<ServiceReference<?>, Throwable>();
+
+        private SourceModel(Class<Source> sourceType, Executor executor) {
+            super(sourceType, SourceModel.class);
+            this.executor = executor;
+        }
+
+        @Override
+        protected String doLoad(Source source) throws Exception {
+            return source.load();
+        }
+
+        @Override
+        protected Executor getExecutor() {
+            return executor;
+        }
+
+        @Override
+        protected void serviceLoaded(ServiceReference<Source> reference, long nanos, Throwable failure) {
+            loaded.put(reference, failure);
+        }
+    }
+}
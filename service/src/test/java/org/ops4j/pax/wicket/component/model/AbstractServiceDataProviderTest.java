@@ -0,0 +1,154 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.component.model;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.wicket.model.IModel;
+import org.apache.wicket.model.Model;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+
+public class AbstractServiceDataProviderTest {
+
+    public interface Source {
+        String getName();
+    }
+
+    private ServiceRegistryFixture registry;
+    private Class<Source> sourceType;
+
+    @Before
+    public void setup() throws Exception {
+        registry = new ServiceRegistryFixture();
+        sourceType = registry.defineInBundle(Source.class);
+    }
+
+    @After
+    public void tearDown() {
+        SharedServiceTracker.closeAll();
+    }
+
+    @Test
+    public void testIterator_shouldOnlyGetTheServicesOfTheWindow() throws Exception {
+        ServiceReference<Source> first = registry.register(1L, 30, source("first"));
+        ServiceReference<Source> second = registry.register(2L, 20, source("second"));
+        ServiceReference<Source> third = registry.register(3L, 10, source("third"));
+        ServiceReference<Source> fourth = registry.register(4L, 0, source("fourth"));
+        SourceProvider provider = new SourceProvider(sourceType);
+
+        assertEquals(4, provider.size());
+        assertEquals(asList("second", "third"), toList(provider.iterator(1, 2)));
+
+        BundleContext context = registry.getContext();
+        verify(context).getService(second);
+        verify(context).ungetService(second);
+        verify(context).getService(third);
+        verify(context).ungetService(third);
+        verify(context, never()).getService(first);
+        verify(context, never()).getService(fourth);
+        provider.detach();
+    }
+
+    @Test
+    public void testIterator_shouldUseTheSnapshotUntilDetached() throws Exception {
+        registry.register(1L, 10, source("first"));
+        registry.register(2L, 0, source("second"));
+        SourceProvider provider = new SourceProvider(sourceType);
+        assertEquals(2, provider.size());
+
+        registry.register(3L, 5, source("new"));
+        assertEquals(2, provider.size());
+        assertEquals(asList("first", "second"), toList(provider.iterator(0, 10)));
+
+        provider.detach();
+        assertEquals(3, provider.size());
+        assertEquals(asList("first", "new", "second"), toList(provider.iterator(0, 10)));
+        provider.detach();
+    }
+
+    @Test
+    public void testIterator_shouldLeaveOutUnavailableServicesUnlessReplaced() throws Exception {
+        registry.register(1L, 10, source("first"));
+        ServiceReference<Source> gone = registry.register(2L, 5, source("gone"));
+        registry.register(3L, 0, source(null));
+        when(registry.getContext().getService(gone)).thenReturn(null);
+
+        SourceProvider provider = new SourceProvider(sourceType);
+        assertEquals(3, provider.size());
+        assertEquals(asList("first"), toList(provider.iterator(0, 3)));
+        provider.detach();
+
+        provider = new SourceProvider(sourceType) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected String unavailable(ServiceReference<Source> reference, Exception failure) {
+                return failure == null ? "gone" : "failed";
+            }
+        };
+        assertEquals(asList("first", "gone", "failed"), toList(provider.iterator(0, 3)));
+        provider.detach();
+    }
+
+    private static Source source(final String name) {
+        return new Source() {
+            public String getName() {
+                if (name == null) {
+                    throw new IllegalStateException("broken service");
+                }
+                return name;
+            }
+        };
+    }
+
+    private static List<String> toList(Iterator<? extends String> iterator) {
+        List<String> list = new ArrayList<String>();
+        while (iterator.hasNext()) {
+            list.add(iterator.next());
+        }
+        return list;
+    }
+
+    private static class SourceProvider extends AbstractServiceDataProvider<Source, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private SourceProvider(Class<Source> sourceType) {
+            super(sourceType, sourceType);
+        }
+
+        @Override
+        protected String doLoad(ServiceReference<Source> reference, Source source) {
+            return source.getName();
+        }
+
+        public IModel<String> model(String object) {
+            return new Model<String>(object);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.component.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.apache.wicket.util.tester.WicketTester;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+
+public class ServiceLeaseTest {
+
+    public interface Source {
+        String getName();
+    }
+
+    private ServiceRegistryFixture registry;
+    private WicketTester tester;
+
+    @Before
+    public void setup() throws Exception {
+        registry = new ServiceRegistryFixture();
+        tester = new WicketTester();
+    }
+
+    @After
+    public void tearDown() {
+        tester.destroy();
+    }
+
+    @Test
+    public void testModelsOfOneRequest_shouldShareTheService() throws Exception {
+        Class<?> owningBundleClass = registry.defineInBundle(ServiceLeaseTest.class);
+        BundleContext context = registry.getContext();
+        ServiceReference<Source> reference = registry.register(1L, 0, (Source) new Source() {
+            public String getName() {
+                return "shared";
+            }
+        });
+        when(context.getServiceReference(Source.class)).thenReturn(reference);
+
+        NameModel first = new NameModel(owningBundleClass);
+        NameModel second = new NameModel(owningBundleClass);
+        assertEquals("shared", first.getObject());
+        assertEquals("shared", second.getObject());
+        verify(context).getService(reference);
+        verify(context, never()).ungetService(reference);
+
+        first.detach();
+        second.detach();
+        tester.getRequestCycle().detach();
+        verify(context).getService(reference);
+        verify(context).ungetService(reference);
+    }
+
+    private static final class NameModel extends AbstractDetachableMultiServiceModel<String> {
+
+        private static final long serialVersionUID = 1L;
+
+        private NameModel(Class<?> owningBundleClass) {
+            super(owningBundleClass);
+        }
+
+        @Override
+        protected String doLoad() {
+            return getService(Source.class).getName();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.component.model;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleReference;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * A mocked service registry for the service models; they find its {@link BundleContext} through the class loader of
+ * their service type or owning class, so these classes have to be defined by {@link #defineInBundle(Class)}.
+ */
+final class ServiceRegistryFixture {
+
+    private final BundleContext context = mock(BundleContext.class);
+    private final Bundle bundle = mock(Bundle.class);
+    private final List<ServiceReference<?>> references = new ArrayList<ServiceReference<?>>();
+    private final List<ServiceListener> listeners = new ArrayList<ServiceListener>();
+    private final BundleClassLoader classLoader = new BundleClassLoader();
+
+    ServiceRegistryFixture() throws Exception {
+        when(bundle.getBundleContext()).thenReturn(context);
+        when(bundle.getSymbolicName()).thenReturn("test.bundle");
+        when(context.getBundle()).thenReturn(bundle);
+        when(context.createFilter(anyString())).thenAnswer(new Answer<Filter>() {
+            public Filter answer(InvocationOnMock invocation) throws Throwable {
+                return FrameworkUtil.createFilter((String) invocation.getArguments()[0]);
+            }
+        });
+        doAnswer(new Answer<ServiceReference<?>[]>() {
+            public ServiceReference<?>[] answer(InvocationOnMock invocation) {
+                synchronized (references) {
+                    return references.isEmpty() ? null : references.toArray(new ServiceReference<?>[references.size()]);
+                }
+            }
+        }).when(context).getServiceReferences(anyString(), anyString());
+        doAnswer(new Answer<Void>() {
+            public Void answer(InvocationOnMock invocation) {
+                synchronized (listeners) {
+                    listeners.add((ServiceListener) invocation.getArguments()[0]);
+                }
+                return null;
+            }
+        }).when(context).addServiceListener(any(ServiceListener.class), anyString());
+    }
+
+    BundleContext getContext() {
+        return context;
+    }
+
+    /**
+     * Registers a service; services are ordered by ranking, then by id like in the framework.
+     */
+    @SuppressWarnings("unchecked")
+    <S> ServiceReference<S> register(final long id, final int ranking, S service) {
+        final ServiceReference<S> reference = mock(ServiceReference.class);
+        when(reference.getProperty(Constants.SERVICE_ID)).thenReturn(id);
+        when(reference.getProperty(Constants.SERVICE_RANKING)).thenReturn(ranking);
+        when(reference.getBundle()).thenReturn(bundle);
+        when(reference.compareTo(any())).thenAnswer(new Answer<Integer>() {
+            public Integer answer(InvocationOnMock invocation) {
+                ServiceReference<?> other = (ServiceReference<?>) invocation.getArguments()[0];
+                int otherRanking = (Integer) other.getProperty(Constants.SERVICE_RANKING);
+                if (ranking != otherRanking) {
+                    return ranking < otherRanking ? -1 : 1;
+                }
+                long otherId = (Long) other.getProperty(Constants.SERVICE_ID);
+                return id == otherId ? 0 : id < otherId ? 1 : -1;
+            }
+        });
+        when(context.getService(reference)).thenReturn(service);
+        synchronized (references) {
+            references.add(reference);
+        }
+        List<ServiceListener> current;
+        synchronized (listeners) {
+            current = new ArrayList<ServiceListener>(listeners);
+        }
+        for (ServiceListener listener : current) {
+            listener.serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, reference));
+        }
+        return reference;
+    }
+
+    /**
+     * Defines the class once more as if a bundle with the context of this registry contained it.
+     */
+    @SuppressWarnings("unchecked")
+    <T> Class<T> defineInBundle(Class<T> type) throws IOException {
+        return (Class<T>) classLoader.define(type.getName());
+    }
+
+    private final class BundleClassLoader extends ClassLoader implements BundleReference {
+
+        private final Map<String, Class<?>> defined = new HashMap<String, Class<?>>();
+
+        private BundleClassLoader() {
+            super(ServiceRegistryFixture.class.getClassLoader());
+        }
+
+        public Bundle getBundle() {
+            return bundle;
+        }
+
+        private synchronized Class<?> define(String name) throws IOException {
+            Class<?> type = defined.get(name);
+            if (type != null) {
+                return type;
+            }
+            InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    bytes.write(buffer, 0, read);
+                }
+                type = defineClass(name, bytes.toByteArray(), 0, bytes.size());
+            } finally {
+                in.close();
+            }
+            defined.put(name, type);
+            return type;
+        }
+    }
+}
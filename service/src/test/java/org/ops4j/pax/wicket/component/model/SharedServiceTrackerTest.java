@@ -0,0 +1,83 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.component.model;
+
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.FrameworkUtil;
+import org.osgi.framework.ServiceReference;
+
+public class SharedServiceTrackerTest {
+
+    @After
+    public void closeTrackers() {
+        SharedServiceTracker.closeAll();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testAcquire_shouldOnlyGetTheHighestRankedService() throws Exception {
+        BundleContext context = mock(BundleContext.class);
+        when(context.createFilter(anyString())).thenAnswer(new Answer<Filter>() {
+            public Filter answer(InvocationOnMock invocation) throws Throwable {
+                return FrameworkUtil.createFilter((String) invocation.getArguments()[0]);
+            }
+        });
+        ServiceReference<Runnable> low = mockReference(1L, 0);
+        ServiceReference<Runnable> high = mockReference(2L, 10);
+        when(high.compareTo(low)).thenReturn(1);
+        when(low.compareTo(high)).thenReturn(-1);
+        Runnable lowService = mock(Runnable.class);
+        Runnable highService = mock(Runnable.class);
+        when(context.getService(low)).thenReturn(lowService);
+        when(context.getService(high)).thenReturn(highService);
+        doReturn(new ServiceReference<?>[]{ low, high }).when(context).getServiceReferences(anyString(), anyString());
+
+        SharedServiceTracker<Runnable> tracker = SharedServiceTracker.acquire(context, Runnable.class, null);
+        assertSame(highService, tracker.getService());
+        verify(context, never()).getService(low);
+
+        // other services are got when they are asked for
+        assertSame(lowService, tracker.getService(low));
+        tracker.release();
+
+        SharedServiceTracker.closeAll();
+        verify(context).ungetService(low);
+        verify(context).ungetService(high);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ServiceReference<Runnable> mockReference(long id, int ranking) {
+        ServiceReference<Runnable> reference = mock(ServiceReference.class);
+        when(reference.getProperty(Constants.SERVICE_ID)).thenReturn(id);
+        when(reference.getProperty(Constants.SERVICE_RANKING)).thenReturn(ranking);
+        return reference;
+    }
+
+}
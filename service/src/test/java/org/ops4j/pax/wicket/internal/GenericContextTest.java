@@ -0,0 +1,83 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URL;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+
+public class GenericContextTest {
+
+    private Bundle bundle;
+    private GenericContext context;
+
+    @Before
+    public void setup() throws Exception {
+        bundle = mock(Bundle.class);
+        when(bundle.getBundleId()).thenReturn(42L);
+        when(bundle.getResource("/style.css")).thenReturn(new URL("file:/bundle/style.css"));
+        context = new GenericContext(bundle, "app");
+    }
+
+    @Test
+    public void testGetResource_shouldLookUpEachResourceOnce() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(new URL("file:/bundle/style.css"), context.getResource("/app/style.css"));
+            assertEquals("text/css", context.getMimeType("/app/style.css"));
+            assertNull(context.getResource("/app/missing.js"));
+            assertNull(context.getMimeType("/app/missing.js"));
+        }
+        verify(bundle).getResource("/style.css");
+        verify(bundle).getResource("/missing.js");
+    }
+
+    @Test
+    public void testBundleResolved_shouldForgetMissingResources() throws Exception {
+        BundleContext bundleContext = mock(BundleContext.class);
+        context.startListening(bundleContext);
+        ArgumentCaptor<BundleListener> listener = ArgumentCaptor.forClass(BundleListener.class);
+        verify(bundleContext).addBundleListener(listener.capture());
+
+        assertNull(context.getResource("/app/missing.js"));
+        Bundle other = mock(Bundle.class);
+        when(other.getBundleId()).thenReturn(7L);
+        listener.getValue().bundleChanged(new BundleEvent(BundleEvent.RESOLVED, other));
+        assertNull(context.getResource("/app/missing.js"));
+        verify(bundle).getResource("/missing.js");
+
+        // a fragment attached on the refresh provides it now
+        when(bundle.getResource("/missing.js")).thenReturn(new URL("file:/fragment/missing.js"));
+        listener.getValue().bundleChanged(new BundleEvent(BundleEvent.RESOLVED, bundle));
+        assertEquals(new URL("file:/fragment/missing.js"), context.getResource("/app/missing.js"));
+        verify(bundle, times(2)).getResource("/missing.js");
+
+        context.stopListening();
+        verify(bundleContext).removeBundleListener(listener.getValue());
+    }
+}
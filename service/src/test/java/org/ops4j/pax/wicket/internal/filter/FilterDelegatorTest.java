@@ -0,0 +1,63 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.servlet.Filter;
+import javax.servlet.Servlet;
+import javax.servlet.ServletConfig;
+
+import org.junit.Test;
+import org.ops4j.pax.wicket.api.ConfigurableFilterConfig;
+import org.ops4j.pax.wicket.api.FilterFactory;
+import org.osgi.framework.BundleContext;
+
+public class FilterDelegatorTest {
+
+    @Test
+    public void testFailingFactory_shouldOnlyBeRetriedOnTrackerEvents() throws Exception {
+        BundleContext context = mock(BundleContext.class);
+        when(context.createFilter(anyString())).thenReturn(mock(org.osgi.framework.Filter.class));
+        Servlet servlet = mock(Servlet.class);
+        when(servlet.getServletConfig()).thenReturn(mock(ServletConfig.class));
+        FilterFactory factory = mock(FilterFactory.class);
+        when(factory.createFilter(any(ConfigurableFilterConfig.class))).thenThrow(
+            new IllegalStateException("broken"));
+
+        FilterDelegator delegator = new FilterDelegator(context, "app");
+        delegator.setServlet(servlet);
+        delegator.addFilterFactory(new FilterFactoryReference(factory));
+
+        // the incomplete chain is used by the following requests instead of being built again each time
+        Filter[] filters = delegator.getFilters(null);
+        assertEquals(0, filters.length);
+        assertSame(filters, delegator.getFilters(null));
+        assertSame(filters, delegator.getFilters(null));
+        verify(factory, times(1)).createFilter(any(ConfigurableFilterConfig.class));
+
+        delegator.filterFactoryModified();
+        verify(factory, times(2)).createFilter(any(ConfigurableFilterConfig.class));
+    }
+
+}
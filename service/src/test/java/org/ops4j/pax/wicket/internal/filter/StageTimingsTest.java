@@ -0,0 +1,62 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class StageTimingsTest {
+
+    private static final long MICRO = 1000;
+
+    @Test
+    public void testGetExclusiveNanos_shouldOnlyCountTheInnermostRunningStage() throws Exception {
+        StageTimings timings = new StageTimings(3);
+        timings.enter(0);
+        timings.enter(1);
+        timings.enter(2);
+
+        long now = System.nanoTime();
+        assertEquals(timings.getExclusiveNanos(0, now), timings.getExclusiveNanos(0, now + MICRO));
+        assertEquals(timings.getExclusiveNanos(1, now), timings.getExclusiveNanos(1, now + MICRO));
+        assertEquals(timings.getExclusiveNanos(2, now) + MICRO, timings.getExclusiveNanos(2, now + MICRO));
+
+        Thread.sleep(5);
+        timings.exit(2);
+        // the servlet is done, the filter around it is still running
+        now = System.nanoTime();
+        long servlet = timings.getExclusiveNanos(2, now);
+        assertTrue(servlet >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(servlet, timings.getExclusiveNanos(2, now + MICRO));
+        assertEquals(timings.getExclusiveNanos(1, now) + MICRO, timings.getExclusiveNanos(1, now + MICRO));
+        assertEquals(timings.getExclusiveNanos(0, now), timings.getExclusiveNanos(0, now + MICRO));
+
+        timings.exit(1);
+        timings.exit(0);
+        now = System.nanoTime();
+        long outer = timings.getExclusiveNanos(0, now);
+        long middle = timings.getExclusiveNanos(1, now);
+        assertTrue(outer >= 0);
+        assertTrue(middle >= 0);
+        assertEquals(outer, timings.getExclusiveNanos(0, now + MICRO));
+        assertEquals(middle, timings.getExclusiveNanos(1, now + MICRO));
+        assertEquals(servlet, timings.getExclusiveNanos(2, now + MICRO));
+    }
+}
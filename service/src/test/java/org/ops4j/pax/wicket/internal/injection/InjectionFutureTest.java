@@ -0,0 +1,122 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal.injection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.ops4j.pax.wicket.api.ServiceFuture;
+import org.ops4j.pax.wicket.spi.NotifyingProxyTargetLocator;
+import org.ops4j.pax.wicket.spi.ProxyTarget;
+
+public class InjectionFutureTest {
+
+    @Test
+    public void testFutureCompletesOnTargetEvent_shouldRunCallbacks() throws Exception {
+        TestLocator locator = new TestLocator();
+        InjectionFuture<String> future = InjectionFuture.create(String.class, locator);
+        final List<String> received = new ArrayList<String>();
+        ServiceFuture<Integer> length = future.thenApply(new ServiceFuture.Function<String, Integer>() {
+            public Integer apply(String value) {
+                return value.length();
+            }
+        });
+        future.onComplete(new ServiceFuture.Callback<String>() {
+            public void onSuccess(String value) {
+                received.add(value);
+            }
+
+            public void onFailure(Throwable failure) {
+                received.add("failed");
+            }
+        });
+        assertFalse(future.isDone());
+        assertNull(future.get());
+        assertEquals(1, locator.listeners.size());
+
+        locator.publish("service");
+        assertTrue(future.isDone());
+        assertEquals("service", future.get());
+        assertEquals(Integer.valueOf(7), length.getNow(null));
+        assertEquals(1, received.size());
+        assertEquals("service", received.get(0));
+
+        // the service is not kept by the future
+        locator.publish(null);
+        assertTrue(future.isDone());
+        assertNull(future.get());
+    }
+
+    @Test
+    public void testCancel_shouldStopWatching() {
+        TestLocator locator = new TestLocator();
+        InjectionFuture<String> future = InjectionFuture.create(String.class, locator);
+        assertFalse(future.isDone());
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+        assertTrue(locator.listeners.isEmpty());
+    }
+
+    private static final class TestLocator implements NotifyingProxyTargetLocator {
+
+        private static final long serialVersionUID = 1L;
+
+        private volatile String target;
+        private final List<Runnable> listeners = new ArrayList<Runnable>();
+
+        private void publish(String service) {
+            target = service;
+            List<Runnable> notified = new ArrayList<Runnable>(listeners);
+            listeners.clear();
+            for (Runnable listener : notified) {
+                listener.run();
+            }
+        }
+
+        public ProxyTarget locateProxyTarget() {
+            final String current = target;
+            if (current == null) {
+                throw new IllegalStateException("no target");
+            }
+            return new ProxyTarget() {
+                public Object getTarget() {
+                    return current;
+                }
+            };
+        }
+
+        public Class<?> getParent() {
+            return InjectionFutureTest.class;
+        }
+
+        public Watch watchTarget(final Runnable listener) {
+            listeners.add(listener);
+            return new Watch() {
+                public void cancel() {
+                    listeners.remove(listener);
+                }
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal.injection.registry;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Test;
+import org.ops4j.pax.wicket.spi.NotifyingProxyTargetLocator.Watch;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceListener;
+
+public class SharedServiceWatchTest {
+
+    @Test
+    public void testWatchesOfSameFilter_shouldShareOneListener() throws Exception {
+        BundleContext context = mock(BundleContext.class);
+        Runnable listener = mock(Runnable.class);
+        Watch first = SharedServiceWatch.watch(context, "(objectClass=foo)", listener);
+        Watch second = SharedServiceWatch.watch(context, "(objectClass=foo)", listener);
+        verify(context, times(1)).addServiceListener(any(ServiceListener.class), anyString());
+
+        first.cancel();
+        verify(context, times(0)).removeServiceListener(any(ServiceListener.class));
+        second.cancel();
+        verify(context, times(1)).removeServiceListener(any(ServiceListener.class));
+
+        // a new watch registers a new listener
+        SharedServiceWatch.watch(context, "(objectClass=foo)", listener).cancel();
+        verify(context, times(2)).addServiceListener(any(ServiceListener.class), anyString());
+    }
+
+}
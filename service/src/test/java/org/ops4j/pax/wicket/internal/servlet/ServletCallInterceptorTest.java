@@ -0,0 +1,83 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.junit.Test;
+import org.ops4j.pax.wicket.api.ConfigurableFilterConfig;
+import org.ops4j.pax.wicket.api.FilterFactory;
+import org.ops4j.pax.wicket.internal.filter.FilterFactoryReference;
+
+public class ServletCallInterceptorTest {
+
+    @Test
+    public void testStagesOfFactoryFilters_shouldBeNamedAfterTheirFilters() throws Exception {
+        ServletConfig servletConfig = mock(ServletConfig.class);
+        Filter first = createFactoryFilter(new FirstFilter(), servletConfig);
+        Filter second = createFactoryFilter(new SecondFilter(), servletConfig);
+
+        ServletCallInterceptor.StageNames names =
+            new ServletCallInterceptor.StageNames(new Filter[]{ first, second }, "/app:");
+        assertEquals("FirstFilter", names.names[0]);
+        assertEquals("SecondFilter", names.names[1]);
+        assertEquals("/app:filter:" + FirstFilter.class.getName(), names.stages[0]);
+        assertEquals("/app:filter:" + SecondFilter.class.getName(), names.stages[1]);
+        assertEquals("/app:wicket", names.stages[2]);
+        assertEquals("/app:total", names.total);
+    }
+
+    @Test
+    public void testStagePrefix_shouldNormalizeTheMountPoint() {
+        assertEquals("/app:", ServletCallInterceptor.stagePrefix("app"));
+        assertEquals("/app:", ServletCallInterceptor.stagePrefix("/app"));
+        assertEquals("/:", ServletCallInterceptor.stagePrefix(""));
+        assertEquals("/:", ServletCallInterceptor.stagePrefix("/"));
+    }
+
+    private static Filter createFactoryFilter(Filter filter, ServletConfig servletConfig) throws Exception {
+        FilterFactory factory = mock(FilterFactory.class);
+        when(factory.createFilter(any(ConfigurableFilterConfig.class))).thenReturn(filter);
+        return new FilterFactoryReference(factory).getFilter(servletConfig);
+    }
+
+    private static class FirstFilter implements Filter {
+
+        public void init(FilterConfig filterConfig) {
+        }
+
+        public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) {
+        }
+
+        public void destroy() {
+        }
+
+    }
+
+    private static class SecondFilter extends FirstFilter {
+    }
+
+}
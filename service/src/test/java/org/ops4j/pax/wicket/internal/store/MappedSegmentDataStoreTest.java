@@ -0,0 +1,113 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.internal.store;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class MappedSegmentDataStoreTest {
+
+    private File folder;
+    private MappedSegmentDataStore store;
+
+    @Before
+    public final void setup() throws IOException {
+        folder = File.createTempFile("pax-wicket", "-segments");
+        folder.delete();
+        store = new MappedSegmentDataStore(folder, 3, 4096, 2048);
+    }
+
+    @After
+    public final void tearDown() {
+        store.destroy();
+        folder.delete();
+    }
+
+    @Test
+    public final void testStoreAndRemove() {
+        store.storeData("s1", 1, page(1, 100));
+        store.storeData("s1", 2, page(2, 200));
+        store.storeData("s2", 1, page(3, 300));
+        assertArrayEquals(page(1, 100), store.getData("s1", 1));
+        assertArrayEquals(page(2, 200), store.getData("s1", 2));
+        assertArrayEquals(page(3, 300), store.getData("s2", 1));
+
+        store.storeData("s1", 1, page(4, 50));
+        assertArrayEquals(page(4, 50), store.getData("s1", 1));
+
+        store.removeData("s1", 2);
+        assertNull(store.getData("s1", 2));
+        store.removeData("s2");
+        assertNull(store.getData("s2", 1));
+        assertNull(store.getData("unknown", 1));
+    }
+
+    @Test
+    public final void testSessionLimitDropsOldestPages() {
+        for (int id = 0; id < 10; id++) {
+            store.storeData("s1", id, page(id, 500));
+        }
+        // 2048 bytes per session leave room for the last four pages
+        for (int id = 0; id < 6; id++) {
+            assertNull(store.getData("s1", id));
+        }
+        for (int id = 6; id < 10; id++) {
+            assertArrayEquals(page(id, 500), store.getData("s1", id));
+        }
+    }
+
+    @Test
+    public final void testCompactionKeepsLivePages() {
+        // four pages of 1000 bytes fill a segment of 4096 bytes; one page per session stays below the session limit
+        for (int session = 0; session < 12; session++) {
+            store.storeData("s" + session, 1, page(session, 1000));
+        }
+        // segment 0 holds s0-s3, segment 1 s4-s7 and segment 2 s8-s11
+        store.removeData("s1", 1);
+        store.removeData("s2", 1);
+
+        // wraps to segment 0: compacting moves s3 next to s0, which frees enough without dropping a page
+        store.storeData("s12", 1, page(12, 1000));
+        store.storeData("s13", 1, page(13, 1000));
+        // segment 0 is full again; compacting segment 1 has to drop its oldest page s4
+        store.storeData("s14", 1, page(14, 1000));
+
+        assertNull(store.getData("s1", 1));
+        assertNull(store.getData("s2", 1));
+        assertNull(store.getData("s4", 1));
+        for (int session = 0; session < 15; session++) {
+            if (session != 1 && session != 2 && session != 4) {
+                assertArrayEquals("s" + session, page(session, 1000), store.getData("s" + session, 1));
+            }
+        }
+    }
+
+    private static byte[] page(int seed, int length) {
+        byte[] data = new byte[length];
+        Arrays.fill(data, (byte) seed);
+        data[0] = (byte) (seed >> 8);
+        return data;
+    }
+
+}
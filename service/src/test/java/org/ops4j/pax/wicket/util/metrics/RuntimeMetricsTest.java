@@ -0,0 +1,117 @@
+/**
+ * Copyright OPS4J
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.pax.wicket.util.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+public class RuntimeMetricsTest {
+
+    private static final int THREADS = 8;
+    private static final int RECORDS = 20000;
+
+    @Test
+    public void testConcurrentRecording_shouldNotLoseUpdates() throws Exception {
+        final Counter counter = new Counter();
+        final Meter meter = new Meter();
+        final Timer timer = new Timer();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 1; i <= RECORDS; i++) {
+                        counter.increment();
+                        meter.mark();
+                        if (i % 10 == 0) {
+                            timer.recordFailure(i * 1000L);
+                        } else {
+                            timer.record(i * 1000L);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long total = (long) THREADS * RECORDS;
+        assertEquals(total, counter.get());
+        assertEquals(total, meter.getCount());
+        assertEquals(total, timer.getCount());
+        Histogram latencies = timer.getLatencies();
+        assertEquals(THREADS * ((long) RECORDS * (RECORDS + 1) / 2), latencies.getSum());
+        assertEquals(RECORDS, latencies.getMax());
+        long bucketed = 0;
+        for (long bucket : latencies.getBuckets()) {
+            bucketed += bucket;
+        }
+        assertEquals(total, bucketed);
+        TimerStatistics statistics = timer.snapshot("test");
+        assertEquals(total / 10, statistics.getFailures());
+
+        timer.reset();
+        assertEquals(0, timer.getCount());
+        assertEquals(0, latencies.getSum());
+        assertEquals(total, counter.getAndReset());
+        assertEquals(0, counter.get());
+    }
+
+    @Test
+    public void testGetTimer_shouldRecordFurtherNamesAsOther() {
+        ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<String, Timer>();
+        Timer first = RuntimeMetrics.getTimer(timers, "name0");
+        for (int i = 1; i < 512; i++) {
+            RuntimeMetrics.getTimer(timers, "name" + i);
+        }
+        assertEquals(512, timers.size());
+
+        Timer other = RuntimeMetrics.getTimer(timers, "further");
+        assertSame(timers.get(RuntimeMetrics.OTHER), other);
+        assertSame(other, RuntimeMetrics.getTimer(timers, "another"));
+        assertNotSame(other, first);
+        assertSame(first, RuntimeMetrics.getTimer(timers, "name0"));
+        assertEquals(513, timers.size());
+    }
+
+    @Test
+    public void testReset_shouldKeepTheProxyLookupTimers() {
+        RuntimeMetrics metrics = RuntimeMetrics.forApplication(RuntimeMetricsTest.class.getName());
+        Timer timer = metrics.getProxyLookupTimer("org.example.Service");
+        timer.record(5000);
+        assertEquals(1, metrics.getProxyLookupsByType().get(0).getCount());
+
+        metrics.reset();
+        assertSame(timer, metrics.getProxyLookupTimer("org.example.Service"));
+        assertEquals(0, metrics.getProxyLookupsByType().get(0).getCount());
+    }
+}
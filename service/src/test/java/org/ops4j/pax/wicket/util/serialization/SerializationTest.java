@@ -17,12 +17,16 @@ package org.ops4j.pax.wicket.util.serialization;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.io.StreamCorruptedException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Random;
@@ -38,7 +42,134 @@ public final class SerializationTest {
 
     @Test
     public final void testSerialization() throws Throwable {
-        IClassResolver resolver = new IClassResolver()
+        IClassResolver resolver = createClassResolver();
+
+        testSerializeObject("pax-wicket", resolver);
+        testSerializeObject(1, resolver);
+
+        // Test serialialize a more complex object
+        SomeObject someObject = createSomeObject();
+        testSerializeObject(someObject, resolver);
+    }
+
+    @Test
+    public final void testSerializationWithClassDictionary() throws Throwable {
+        IClassResolver resolver = createClassResolver();
+        File file = File.createTempFile("pax-wicket", "-class-dictionary");
+        try {
+            ClassDescriptorDictionary dictionary = new ClassDescriptorDictionary(file);
+            SomeObject[] someObjects = new SomeObject[]{ createSomeObject(), createSomeObject() };
+            byte[] compact = serialize(someObjects, dictionary);
+            assertTrue(compact.length < serialize(someObjects, null).length);
+            assertTrue(Arrays.equals(someObjects, (Object[]) deserialize(compact, resolver, dictionary)));
+            dictionary.close();
+
+            // a restarted application still reads what was written before
+            ClassDescriptorDictionary reloaded = new ClassDescriptorDictionary(file);
+            assertEquals(dictionary.size(), reloaded.size());
+            assertTrue(Arrays.equals(someObjects, (Object[]) deserialize(compact, resolver, reloaded)));
+            reloaded.close();
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public final void testCorruptClassDictionaryId() throws Throwable {
+        File file = File.createTempFile("pax-wicket", "-class-dictionary");
+        ClassDescriptorDictionary dictionary = new ClassDescriptorDictionary(file);
+        try {
+            // dictionary marker, stream header, TC_OBJECT, TC_CLASSDESC and an id of more than five bytes
+            byte[] corrupt = new byte[]{ 0x50, 0x43, (byte) 0xAC, (byte) 0xED, 0x00, 0x05, 0x73, 0x72, (byte) 0xFF,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01 };
+            deserialize(corrupt, createClassResolver(), dictionary);
+        } finally {
+            dictionary.close();
+            file.delete();
+        }
+    }
+
+    @Test
+    public final void testPageCompression() throws Throwable {
+        IClassResolver resolver = createClassResolver();
+        SomeObject[] someObjects = new SomeObject[64];
+        for (int i = 0; i < someObjects.length; i++) {
+            someObjects[i] = createSomeObject();
+        }
+        byte[] serialized = serialize(someObjects, null);
+        PageCompression compression = new PageCompression(PageCompression.DEFAULT_LEVEL, 16);
+        byte[] compressed = compression.compress(serialized);
+        assertTrue(PageCompression.isCompressed(compressed));
+        assertTrue(compressed.length < serialized.length);
+        assertEquals(1, compression.getCompressedPages());
+        assertTrue(compression.getCompressionRatio() < 1d);
+        assertTrue(Arrays.equals(serialized, compression.decompress(compressed)));
+        assertTrue(Arrays.equals(serialized, PageCompression.inflate(compressed)));
+        assertTrue(Arrays.equals(someObjects,
+            (Object[]) deserialize(PageCompression.inflate(compressed), resolver, null)));
+
+        // small pages stay as they are
+        byte[] small = serialize("pax-wicket", null);
+        assertTrue(small == compression.compress(small));
+        assertTrue(!PageCompression.isCompressed(small));
+        assertEquals(1, compression.getSkippedPages());
+    }
+
+    @Test
+    public final void testPageCompressionReusesCodecs() throws Throwable {
+        byte[] serialized = serialize(new SomeObject[]{ createSomeObject(), createSomeObject() }, null);
+        PageCompression compression = new PageCompression(PageCompression.DEFAULT_LEVEL, 16);
+        byte[] first = compression.compress(serialized);
+        byte[] second = compression.compress(serialized);
+        assertTrue(Arrays.equals(first, second));
+        assertTrue(Arrays.equals(serialized, compression.decompress(first)));
+        assertTrue(Arrays.equals(serialized, compression.decompress(second)));
+        compression.dispose();
+        assertTrue(Arrays.equals(first, compression.compress(serialized)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public final void testCorruptCompressedLength() {
+        // header and a length varint of six bytes
+        PageCompression.inflate(new byte[]{ 0x44, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+            0x01, 0x00 });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public final void testImplausibleCompressedLength() {
+        // 2^28 bytes can't be the result of deflating two bytes
+        PageCompression.inflate(new byte[]{ 0x44, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x01, 0x00,
+            0x00 });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public final void testTruncatedCompressedPage() throws Throwable {
+        byte[] serialized = serialize(new SomeObject[]{ createSomeObject(), createSomeObject() }, null);
+        byte[] compressed = new PageCompression(PageCompression.DEFAULT_LEVEL, 16).compress(serialized);
+        PageCompression.inflate(Arrays.copyOf(compressed, compressed.length / 2));
+    }
+
+    @Test
+    public final void testBufferPool() throws Throwable {
+        PageBuffer.Pool pool = new PageBuffer.Pool(1);
+        PageBuffer buffer = pool.acquire();
+        buffer.write(new byte[]{ 1, 2, 3 }, 0, 3);
+        pool.release(buffer);
+        PageBuffer recycled = pool.acquire();
+        assertTrue(buffer == recycled);
+        assertEquals(0, recycled.size());
+
+        // a cleared pool keeps nothing, also not buffers released afterwards
+        pool.release(recycled);
+        pool.clear();
+        PageBuffer fresh = pool.acquire();
+        assertTrue(fresh != recycled);
+        pool.release(fresh);
+        assertTrue(pool.acquire() != fresh);
+    }
+
+    private IClassResolver createClassResolver() {
+        return new IClassResolver()
         {
 
             public Class<?> resolveClass(String classname)
@@ -70,13 +201,6 @@ public final class SerializationTest {
                 throw new UnsupportedOperationException("This method should NOT BE CALLED!");
             }
         };
-
-        testSerializeObject("pax-wicket", resolver);
-        testSerializeObject(1, resolver);
-
-        // Test serialialize a more complex object
-        SomeObject someObject = createSomeObject();
-        testSerializeObject(someObject, resolver);
     }
 
     private SomeObject createSomeObject() {
@@ -108,6 +232,21 @@ public final class SerializationTest {
         assertEquals(objectToSerialize, object);
     }
 
+    private byte[] serialize(Object objectToSerialize, ClassDescriptorDictionary dictionary) throws IOException {
+        ByteArrayOutputStream byteArrayOS = new ByteArrayOutputStream();
+        PaxWicketObjectOutputStream outputStream = new PaxWicketObjectOutputStream(byteArrayOS, dictionary);
+        outputStream.writeObject(objectToSerialize);
+        outputStream.close();
+        return byteArrayOS.toByteArray();
+    }
+
+    private Object deserialize(byte[] serialized, IClassResolver resolver, ClassDescriptorDictionary dictionary)
+        throws IOException, ClassNotFoundException {
+        PaxWicketObjectInputStream inputStream =
+            new PaxWicketObjectInputStream(new ByteArrayInputStream(serialized), resolver, dictionary);
+        return inputStream.readObject();
+    }
+
     public static class SomeObject
             implements Serializable {
         private static final long serialVersionUID = 1L;